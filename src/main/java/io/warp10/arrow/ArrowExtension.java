@@ -16,8 +16,18 @@
 
 package io.warp10.arrow;
 
+import io.warp10.WarpConfig;
+import io.warp10.arrow.warpscriptFunctions.ARROWCACHESTATS;
+import io.warp10.arrow.warpscriptFunctions.ARROWCONCAT;
+import io.warp10.arrow.warpscriptFunctions.ARROWDATASET;
+import io.warp10.arrow.warpscriptFunctions.ARROWFETCH;
+import io.warp10.arrow.warpscriptFunctions.ARROWFOREACH;
+import io.warp10.arrow.warpscriptFunctions.ARROWJOIN;
+import io.warp10.arrow.warpscriptFunctions.ARROWSLICE;
 import io.warp10.arrow.warpscriptFunctions.ARROWTO;
+import io.warp10.arrow.warpscriptFunctions.PARQUETTO;
 import io.warp10.arrow.warpscriptFunctions.TOARROW;
+import io.warp10.arrow.warpscriptFunctions.TOPARQUET;
 import io.warp10.script.NamedWarpScriptFunction;
 import io.warp10.script.WarpScriptException;
 import io.warp10.script.WarpScriptStack;
@@ -27,6 +37,13 @@ import org.apache.arrow.memory.RootAllocator;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.warp10.arrow.warpscriptFunctions.ARROWDATASET.CONF_READERS;
+import static io.warp10.arrow.warpscriptFunctions.ARROWDATASET.DEFAULT_READERS;
 
 public class ArrowExtension extends WarpScriptExtension {
 
@@ -34,6 +51,15 @@ public class ArrowExtension extends WarpScriptExtension {
 
   public static final String TOARROW = "->ARROW";
   public static final String ARROWTO = "ARROW->";
+  public static final String ARROWCONCAT = "ARROW.CONCAT";
+  public static final String ARROWSLICE = "ARROW.SLICE";
+  public static final String ARROWJOIN = "ARROW.JOIN";
+  public static final String ARROWCACHESTATS = "ARROW.CACHESTATS";
+  public static final String ARROWFOREACH = "ARROW.FOREACH";
+  public static final String ARROWFETCH = "ARROW.FETCH";
+  public static final String TOPARQUET = "->PARQUET";
+  public static final String PARQUETTO = "PARQUET->";
+  public static final String ARROWDATASET = "ARROW.DATASET";
 
   /**
    * The allocator used to allocate arrow buffers
@@ -61,11 +87,45 @@ public class ArrowExtension extends WarpScriptExtension {
     return (BufferAllocator) stack.getAttribute(ATTRIBUTE_ARROW_ALLOCATOR);
   }
 
+  /**
+   * The threads reading the files of datasets, shared by all the calls to ARROW.DATASET so that at most
+   * arrow.dataset.readers files are read at the same time
+   */
+
+  private static ExecutorService datasetReaders = null;
+  public static synchronized ExecutorService getDatasetReaders() {
+    if (null == datasetReaders) {
+      int readers = Integer.parseInt(WarpConfig.getProperty(CONF_READERS, String.valueOf(DEFAULT_READERS)));
+
+      datasetReaders = Executors.newFixedThreadPool(Math.max(1, readers), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "[" + ARROWDATASET + " reader #" + count.incrementAndGet() + "]");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    return datasetReaders;
+  }
+
   static {
     functions = new HashMap<String, Object>();
 
     addFunction(new TOARROW(TOARROW));
     addFunction(new ARROWTO(ARROWTO));
+    addFunction(new ARROWCONCAT(ARROWCONCAT));
+    addFunction(new ARROWSLICE(ARROWSLICE));
+    addFunction(new ARROWJOIN(ARROWJOIN));
+    addFunction(new ARROWCACHESTATS(ARROWCACHESTATS));
+    addFunction(new ARROWFOREACH(ARROWFOREACH));
+    addFunction(new ARROWFETCH(ARROWFETCH));
+    addFunction(new TOPARQUET(TOPARQUET));
+    addFunction(new PARQUETTO(PARQUETTO));
+    addFunction(new ARROWDATASET(ARROWDATASET));
   }
 
   private static void addFunction(NamedWarpScriptFunction fun) {
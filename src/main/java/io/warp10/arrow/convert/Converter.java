@@ -22,6 +22,7 @@ import org.apache.arrow.vector.ipc.ArrowReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
 
 public interface Converter<T> {
 
@@ -31,6 +32,17 @@ public interface Converter<T> {
 
     void write(T object, OutputStream out) throws WarpScriptException;
 
+    /**
+     * Same as write, with the conversion options given to ->ARROW. Options that do not apply to this mode are ignored.
+     * @param object
+     * @param options
+     * @param out
+     * @throws WarpScriptException
+     */
+    default void write(T object, Map<String, Object> options, OutputStream out) throws WarpScriptException {
+        write(object, out);
+    }
+
     T read(ArrowReader reader) throws IOException, WarpScriptException;
 
     /**
@@ -40,4 +52,12 @@ public interface Converter<T> {
     default int getPriorityLevel(){
         return 0;
     }
+
+    /**
+     * Used if the input may also be convertible by another mode, in which case this mode is used only if explicitly requested.
+     * @return true if this mode is never chosen automatically
+     */
+    default boolean requiresExplicitMode(){
+        return false;
+    }
 }
@@ -19,6 +19,7 @@ package io.warp10.arrow.convert;
 import io.warp10.arrow.direct.ArrowReaders;
 import io.warp10.arrow.direct.ArrowWriters;
 import io.warp10.arrow.pojo.WarpSchema;
+import io.warp10.arrow.warpscriptFunctions.TOARROW;
 import io.warp10.continuum.gts.GTSEncoder;
 import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.script.WarpScriptException;
@@ -60,6 +61,8 @@ public class Register {
     public final static String ENCODERS = "ENCODERS";
     public final static String GTS = "GTS";
     public final static String PAIR = "PAIR";
+    public final static String WIDE = "WIDE";
+    public final static String SERIES = "SERIES";
 
     static {
 
@@ -90,7 +93,7 @@ public class Register {
 
             @Override
             public void write(List list, OutputStream out) throws WarpScriptException {
-                WarpSchema.GtsOrEncoderListSchema(list).writeListToStream(out, list);
+                WarpSchema.cachedGtsOrEncoderListSchema(list).writeListToStream(out, list);
             }
 
             @Override
@@ -152,6 +155,11 @@ public class Register {
 
             @Override
             public void write(List list, OutputStream out) throws WarpScriptException {
+                write(list, new HashMap<String, Object>(), out);
+            }
+
+            @Override
+            public void write(List list, Map<String, Object> options, OutputStream out) throws WarpScriptException {
 
                 Map<String, List> columns = (Map<String, List>) list.get(1);
 
@@ -170,7 +178,12 @@ public class Register {
                     }
                 }
 
-                ArrowWriters.columnsToArrowStream(list, commonSize, out);
+                // all columns are empty
+                if (null == commonSize) {
+                    commonSize = 0;
+                }
+
+                ArrowWriters.columnsToArrowStream(list, commonSize, Boolean.TRUE.equals(options.get(TOARROW.FIXED_SIZE_BINARY)), out);
             }
 
             @Override
@@ -178,5 +191,87 @@ public class Register {
                 return ArrowReaders.arrowStreamToPair(reader);
             }
         });
+
+        //
+        // WIDE
+        //
+
+        addConverter(new Converter<List>() {
+            @Override
+            public String getWarpScriptConversionMode() {
+                return WIDE;
+            }
+
+            @Override
+            public boolean isConvertible(Object o) {
+                if (!(o instanceof List)) {
+                    return false;
+                }
+
+                for (Object oo: (List) o) {
+                    if (!(oo instanceof GeoTimeSerie)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            @Override
+            public boolean requiresExplicitMode() {
+                return true;
+            }
+
+            @Override
+            public void write(List list, OutputStream out) throws WarpScriptException {
+                WarpSchema.wideGtsListSchema(list).writeWideListToStream(out, list);
+            }
+
+            @Override
+            public List read(ArrowReader reader) throws IOException, WarpScriptException {
+                return ArrowReaders.arrowStreamToWideGtsList(reader);
+            }
+        });
+
+        //
+        // SERIES
+        //
+
+        addConverter(new Converter<List>() {
+            @Override
+            public String getWarpScriptConversionMode() {
+                return SERIES;
+            }
+
+            @Override
+            public boolean isConvertible(Object o) {
+                if (!(o instanceof List)) {
+                    return false;
+                }
+
+                for (Object oo: (List) o) {
+                    if (!(oo instanceof GeoTimeSerie) && !(oo instanceof GTSEncoder)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            @Override
+            public boolean requiresExplicitMode() {
+                return true;
+            }
+
+            @Override
+            public void write(List list, OutputStream out) throws WarpScriptException {
+                WarpSchema.seriesListSchema(list).writeSeriesListToStream(out, list);
+            }
+
+            @Override
+            public List read(ArrowReader reader) throws IOException, WarpScriptException {
+                return ArrowReaders.arrowStreamToSeriesList(reader);
+            }
+        });
     }
 }
@@ -0,0 +1,297 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.direct;
+
+import io.warp10.arrow.ArrowExtension;
+import io.warp10.arrow.convert.Register;
+import io.warp10.continuum.store.Constants;
+import io.warp10.script.WarpScriptException;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static io.warp10.arrow.direct.ArrowHelper.FIRSTTICK;
+import static io.warp10.arrow.direct.ArrowHelper.LASTTICK;
+import static io.warp10.arrow.direct.ArrowHelper.MODE;
+import static io.warp10.arrow.direct.ArrowHelper.STU;
+
+/**
+ * A directory of Arrow stream files and Parquet files, partitioned by subdirectories named key=value.
+ *
+ * Files are pruned using the partitions day=YYYY-MM-DD (UTC) and classname=name, then using the bounds of the
+ * timestamps stored in their metadata by ->ARROW for GTS, or the statistics of the row groups of Parquet files.
+ * The record batches of the remaining files are filtered by ArrowStreams.select and decoded by the converter of their
+ * conversion mode.
+ */
+public class ArrowDataset {
+
+  public static final String DAY_PARTITION = "day";
+  public static final String CLASSNAME_PARTITION = "classname";
+  public static final String PARQUET_EXTENSION = ".parquet";
+  public static final String[] EXTENSIONS = {".arrow", ".arrows", PARQUET_EXTENSION};
+
+  private final File root;
+
+  public ArrowDataset(File root) {
+    this.root = root;
+  }
+
+  /**
+   * List the files of the dataset whose partitions may hold data points in [start, end] of one of the classnames
+   * @param start first timestamp of the range, in platform time units
+   * @param end last timestamp of the range, in platform time units
+   * @param classnames classnames to keep, or an empty set for all of them
+   * @return the files, sorted by path
+   * @throws WarpScriptException
+   */
+  public List<File> listFiles(long start, long end, Set<String> classnames) throws WarpScriptException {
+    if (!root.isDirectory()) {
+      throw new WarpScriptException("Dataset " + root.getPath() + " is not a directory.");
+    }
+
+    List<File> files = new ArrayList<File>();
+    listFiles(root, start, end, classnames, files);
+    return files;
+  }
+
+  private static void listFiles(File directory, long start, long end, Set<String> classnames, List<File> files) throws WarpScriptException {
+    File[] children = directory.listFiles();
+    if (null == children) {
+      throw new WarpScriptException("Unable to list " + directory.getPath() + ".");
+    }
+
+    Arrays.sort(children);
+
+    for (File child: children) {
+      if (child.isDirectory()) {
+        if (partitionMatches(child.getName(), start, end, classnames)) {
+          listFiles(child, start, end, classnames, files);
+        }
+      } else if (isArrowFile(child.getName())) {
+        files.add(child);
+      }
+    }
+  }
+
+  private static boolean isArrowFile(String name) {
+    for (String extension: EXTENSIONS) {
+      if (name.endsWith(extension)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return false if the directory is a partition that can not hold data points in [start, end] of one of the classnames
+   */
+  static boolean partitionMatches(String name, long start, long end, Set<String> classnames) throws WarpScriptException {
+    int eq = name.indexOf('=');
+    if (eq < 0) {
+      return true;
+    }
+
+    String key = name.substring(0, eq);
+    String value = name.substring(eq + 1);
+
+    if (DAY_PARTITION.equals(key)) {
+      long dayStart;
+      try {
+        dayStart = LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() * Constants.TIME_UNITS_PER_MS;
+      } catch (DateTimeParseException dtpe) {
+        throw new WarpScriptException("Invalid day partition " + name + ", expected " + DAY_PARTITION + "=YYYY-MM-DD.");
+      }
+
+      long dayEnd = dayStart + 86400L * Constants.TIME_UNITS_PER_S - 1;
+      return dayEnd >= start && dayStart <= end;
+    }
+
+    if (CLASSNAME_PARTITION.equals(key)) {
+      return classnames.isEmpty() || classnames.contains(value);
+    }
+
+    return true;
+  }
+
+  /**
+   * Decode the data points of the files in [start, end], read by the threads of readers
+   *
+   * @param files
+   * @param columns columns to decode, or an empty list for all of them
+   * @param start first timestamp of the range, in platform time units
+   * @param end last timestamp of the range, in platform time units
+   * @param mode conversion mode, or an empty string to use the one of each file, PAIR by default
+   * @param readers
+   * @return the decoded content of each file whose timestamps may be in the range, in the order of files
+   * @throws WarpScriptException
+   */
+  public static List<Object> read(List<File> files, final List<String> columns, final long start, final long end, final String mode, ExecutorService readers) throws WarpScriptException {
+
+    List<Object> res = new ArrayList<Object>(files.size());
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(files.size());
+
+    try {
+      for (final File file: files) {
+        futures.add(readers.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            return readFile(file, columns, start, end, mode);
+          }
+        }));
+      }
+
+      for (Future<Object> future: futures) {
+        Object decoded = future.get();
+        if (null != decoded) {
+          res.add(decoded);
+        }
+      }
+
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new WarpScriptException(ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof WarpScriptException) {
+        throw (WarpScriptException) ee.getCause();
+      }
+      throw new WarpScriptException(ee.getCause());
+    } finally {
+      // the readers are shared, only the files of this call that are still pending are dropped
+      for (Future<Object> future: futures) {
+        future.cancel(true);
+      }
+    }
+
+    return res;
+  }
+
+  /**
+   * Read a file once: its schema is read first to check the bounds of its timestamps, then its record batches are
+   * decoded, through ArrowStreams.select if only some of their rows or columns are needed.
+   *
+   * @return the decoded content of a file, or null if the bounds of its timestamps are outside of [start, end]
+   */
+  private static Object readFile(File file, List<String> columns, long start, long end, String mode) throws IOException, WarpScriptException {
+
+    if (file.getName().endsWith(PARQUET_EXTENSION)) {
+      return readParquetFile(file, columns, start, end, mode);
+    }
+
+    ByteArrayOutputStream selected = new ByteArrayOutputStream();
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("dataset", 0, Long.MAX_VALUE);
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+         ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+
+      Map<String, String> metadata = reader.getVectorSchemaRoot().getSchema().getCustomMetadata();
+      String conversionMode = conversionMode(file, metadata, mode);
+
+      //
+      // Bounds of the timestamps, only stored by ->ARROW for GTS
+      //
+
+      boolean within = Long.MIN_VALUE == start && Long.MAX_VALUE == end;
+      if (null != metadata && null != metadata.get(FIRSTTICK) && null != metadata.get(LASTTICK)) {
+        double factor = null == metadata.get(STU) ? 1.0D : Constants.TIME_UNITS_PER_S / Double.parseDouble(metadata.get(STU));
+        double firstTick = Long.parseLong(metadata.get(FIRSTTICK)) * factor;
+        double lastTick = Long.parseLong(metadata.get(LASTTICK)) * factor;
+
+        if (lastTick < start || firstTick > end) {
+          return null;
+        }
+
+        within = within || (firstTick >= start && lastTick <= end);
+      }
+
+      if (within && columns.isEmpty()) {
+        return Register.getConverter(conversionMode).read(reader);
+      }
+
+      ArrowStreams.select(reader, columns, start, end, selected);
+
+    } finally {
+      allocator.close();
+    }
+
+    return decode(file, new ByteArrayInputStream(selected.toByteArray()), mode);
+  }
+
+  /**
+   * @return the decoded content of a Parquet file, or null if the statistics of all its row groups are outside of [start, end]
+   */
+  private static Object readParquetFile(File file, List<String> columns, long start, long end, String mode) throws IOException, WarpScriptException {
+    ByteArrayOutputStream selected = new ByteArrayOutputStream();
+
+    if (!ArrowParquet.read(new ArrowParquet.LocalInputFile(file), columns, start, end, selected)) {
+      return null;
+    }
+
+    return decode(file, new ByteArrayInputStream(selected.toByteArray()), mode);
+  }
+
+  private static Object decode(File file, InputStream in, String mode) throws IOException, WarpScriptException {
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("dataset", 0, Long.MAX_VALUE);
+
+    try (ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+      String conversionMode = conversionMode(file, reader.getVectorSchemaRoot().getSchema().getCustomMetadata(), mode);
+      return Register.getConverter(conversionMode).read(reader);
+    } finally {
+      allocator.close();
+    }
+  }
+
+  /**
+   * @return the conversion mode to decode a file with, given the custom metadata of its schema
+   */
+  private static String conversionMode(File file, Map<String, String> metadata, String mode) throws WarpScriptException {
+    String conversionMode = mode;
+
+    if ("".equals(conversionMode)) {
+      conversionMode = null == metadata || null == metadata.get(MODE) ? Register.PAIR : metadata.get(MODE);
+
+      if (Register.ENCODERS.equals(conversionMode)) {
+        throw new WarpScriptException("File " + file.getPath() + " is in conversion mode " + Register.ENCODERS + ", which can not be decoded: set another WarpScriptConversionMode such as " + Register.PAIR + ".");
+      }
+    }
+
+    if (!Register.isSupportedMode(conversionMode)) {
+      throw new WarpScriptException("WarpScriptConversionMode " + conversionMode + " is not supported.");
+    }
+
+    return conversionMode;
+  }
+}
@@ -17,11 +17,30 @@
 package io.warp10.arrow.direct;
 
 import io.warp10.arrow.warpscriptFunctions.ARROWTO;
+import io.warp10.continuum.gts.GTSEncoder;
+import io.warp10.continuum.gts.GTSHelper;
+import io.warp10.continuum.gts.GeoTimeSerie;
+import io.warp10.script.WarpScriptException;
 import io.warp10.script.functions.TYPEOF;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseLargeVariableWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
 import org.apache.arrow.vector.types.FloatingPointPrecision;
 import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Utilities and converters
@@ -33,8 +52,7 @@ public class ArrowHelper {
   public final static String TIMESTAMPS_KEY = "timestamp";
   public final static String LONG_VALUES_KEY = TYPEOF.typeof(Long.class);
   public final static String DOUBLE_VALUES_KEY = TYPEOF.typeof(Double.class);
-  //public final static String BIGDECIMAL_VALUES_KEY = "BIGDECIMAL.CONTENT";
-  //public final static String BIGDECIMAL_SCALES_KEY = "BIGDECIMAL.SCALE";
+  public final static String DECIMAL_VALUES_KEY = "DECIMAL";
   public final static String BOOLEAN_VALUES_KEY = TYPEOF.typeof(Boolean.class);
   public final static String STRING_VALUES_KEY = TYPEOF.typeof(String.class);
   public final static String BYTES_VALUES_KEY = TYPEOF.typeof(byte[].class);
@@ -49,6 +67,11 @@ public class ArrowHelper {
   public final static String MODE = ARROWTO.MODE;
   public final static String REV = "WarpScriptVersion";
   public final static String STU = "WarpScriptTimeUnitsPerSecond";
+  public final static String SERIES_METADATA = "WarpScriptSeriesMetadata";
+
+  // bounds of the timestamps of a stream, in its time units, used to skip it without reading its batches
+  public final static String FIRSTTICK = "WarpScriptFirstTick";
+  public final static String LASTTICK = "WarpScriptLastTick";
 
   //
   // Fields of arrow schemas
@@ -72,4 +95,251 @@ public class ArrowHelper {
   // additional fields for GTSEncoders
   final static Field BYTES_VALUES_FIELD = Field.nullable(BYTES_VALUES_KEY, new ArrowType.Binary());
 
+  // BigDecimal values of GTSEncoders, in a Decimal column whose scale is chosen by the writer
+  public final static int DECIMAL_PRECISION = 38;
+  static Field decimalValuesField(int scale) {
+    return Field.nullable(DECIMAL_VALUES_KEY, new ArrowType.Decimal(DECIMAL_PRECISION, scale));
+  }
+
+  // variants with 64-bit offsets
+  final static Field LARGE_STRING_VALUES_FIELD = Field.nullable(STRING_VALUES_KEY, new ArrowType.LargeUtf8());
+  final static Field LARGE_BYTES_VALUES_FIELD = Field.nullable(BYTES_VALUES_KEY, new ArrowType.LargeBinary());
+
+  //
+  // Utf8 and Binary vectors use 32-bit offsets, so the data of a batch can not exceed this capacity.
+  // Above it, the LargeUtf8 and LargeBinary types (64-bit offsets) must be used.
+  //
+
+  public final static long VARIABLE_WIDTH_CAPACITY = Integer.MAX_VALUE;
+
+  /**
+   * Number of bytes of the UTF-8 encoding of a String, computed without encoding it
+   * @param s
+   * @return
+   */
+  public static long utf8Length(String s) {
+    long len = 0;
+
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+
+      if (c < 0x80) {
+        len += 1;
+      } else if (c < 0x800) {
+        len += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        len += 4;
+        i++;
+      } else {
+        len += 3;
+      }
+    }
+
+    return len;
+  }
+
+  /**
+   * Check if the string values of a GTS, written in a single batch, exceed the capacity of a Utf8 vector
+   * @param gts
+   * @return
+   */
+  public static boolean exceedsVariableWidthCapacity(GeoTimeSerie gts) {
+    if (GeoTimeSerie.TYPE.STRING != gts.getType()) {
+      return false;
+    }
+
+    //
+    // A char is at most 3 bytes in UTF-8 (surrogate pairs are 4 bytes for 2 chars), so only count exactly if needed
+    //
+
+    long upperBound = 0;
+    for (int i = 0; i < gts.size(); i++) {
+      upperBound += 3L * ((String) GTSHelper.valueAtIndex(gts, i)).length();
+    }
+
+    if (upperBound <= VARIABLE_WIDTH_CAPACITY) {
+      return false;
+    }
+
+    long size = 0;
+    for (int i = 0; i < gts.size(); i++) {
+      size += utf8Length((String) GTSHelper.valueAtIndex(gts, i));
+
+      if (size > VARIABLE_WIDTH_CAPACITY) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Check if the string or bytes values of a GTSEncoder, written in a single batch, may exceed the capacity of a Utf8 or Binary vector
+   * @param encoder
+   * @return
+   */
+  public static boolean exceedsVariableWidthCapacity(GTSEncoder encoder) {
+
+    // the encoded size is an upper bound of the size of the string and bytes values it contains
+    return encoder.size() > VARIABLE_WIDTH_CAPACITY;
+  }
+
+  /**
+   * Rescale a BigDecimal to the scale of a Decimal value column
+   * @param value
+   * @param scale
+   * @return the rescaled value, or null if it can not be stored exactly in the Decimal value column
+   */
+  public static BigDecimal toDecimalScale(BigDecimal value, int scale) {
+    if (value.scale() > scale) {
+      value = value.stripTrailingZeros();
+
+      if (value.scale() > scale) {
+        return null;
+      }
+    }
+
+    BigDecimal scaled = value.setScale(scale);
+    return scaled.precision() > DECIMAL_PRECISION ? null : scaled;
+  }
+
+  /**
+   * Read a value of a Decimal vector straight from its data buffer, with the scale of the vector. The 128-bit integer
+   * is only built if the unscaled value does not fit in 64 bits, which happens for |value| >= 9.22 at scale 18 but only
+   * above 9.22E16 at scale 2.
+   * @param data data buffer of the vector
+   * @param index
+   * @param scale scale of the vector
+   * @return
+   */
+  public static BigDecimal getDecimal(ArrowBuf data, int index, int scale) {
+    long offset = (long) index * DecimalVector.TYPE_WIDTH;
+
+    // little-endian two's complement
+    long low = data.getLong(offset);
+    long high = data.getLong(offset + 8);
+
+    if (high == (low >> 63)) {
+      return BigDecimal.valueOf(low, scale);
+    }
+
+    byte[] bytes = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      bytes[i] = (byte) (high >>> (56 - 8 * i));
+      bytes[8 + i] = (byte) (low >>> (56 - 8 * i));
+    }
+
+    return new BigDecimal(new BigInteger(bytes), scale);
+  }
+
+  /**
+   * Number of bytes of the UTF-8 encoding of a range of the string values of a GTS
+   * @param gts
+   * @param from
+   * @param count
+   * @return
+   */
+  public static long utf8Length(GeoTimeSerie gts, int from, int count) {
+    if (GeoTimeSerie.TYPE.STRING != gts.getType()) {
+      return 0L;
+    }
+
+    long size = 0;
+    for (int i = from; i < from + count; i++) {
+      size += utf8Length((String) GTSHelper.valueAtIndex(gts, i));
+    }
+
+    return size;
+  }
+
+  /**
+   * Allocate the buffers of a vector for valueCount values and, for variable width vectors, dataBytes bytes of data,
+   * so that filling it does not reallocate. Previous buffers are released and all values are null.
+   * @param vector
+   * @param valueCount
+   * @param dataBytes
+   */
+  public static void allocateNew(FieldVector vector, int valueCount, long dataBytes) {
+    if (vector instanceof BaseFixedWidthVector) {
+      ((BaseFixedWidthVector) vector).allocateNew(valueCount);
+
+    } else if (vector instanceof BaseVariableWidthVector) {
+      ((BaseVariableWidthVector) vector).allocateNew(Math.max(1L, dataBytes), valueCount);
+
+    } else if (vector instanceof BaseLargeVariableWidthVector) {
+      ((BaseLargeVariableWidthVector) vector).allocateNew(Math.max(1L, dataBytes), valueCount);
+
+    } else {
+      vector.clear();
+      vector.setInitialCapacity(valueCount);
+      vector.allocateNew();
+    }
+  }
+
+  /**
+   * Estimate the memory held by a decoded object, in bytes. Used to bound caches, it only needs to be of the right
+   * order of magnitude.
+   * @param o a list, map, GTS, GTS encoder, byte array, vector, string or boxed primitive value
+   * @return
+   */
+  public static long estimateSize(Object o) {
+    if (o instanceof List) {
+      long size = 32L + 8L * ((List) o).size();
+      for (Object element: (List) o) {
+        size += estimateSize(element);
+      }
+      return size;
+
+    } else if (o instanceof Map) {
+      long size = 48L + 32L * ((Map) o).size();
+      for (Map.Entry entry: ((Map<?, ?>) o).entrySet()) {
+        size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+      }
+      return size;
+
+    } else if (o instanceof GeoTimeSerie) {
+      GeoTimeSerie gts = (GeoTimeSerie) o;
+      long size = 256L + 32L * gts.size();
+      if (GeoTimeSerie.TYPE.STRING == gts.getType()) {
+        size += utf8Length(gts, 0, gts.size());
+      }
+      return size;
+
+    } else if (o instanceof GTSEncoder) {
+      return 256L + ((GTSEncoder) o).size();
+
+    } else if (o instanceof byte[]) {
+      return 16L + ((byte[]) o).length;
+
+    } else if (o instanceof RealVector) {
+      return 32L + 8L * ((RealVector) o).getDimension();
+
+    } else if (o instanceof String) {
+      return 40L + 2L * ((String) o).length();
+
+    } else {
+      return 16L;
+    }
+  }
+
+  /**
+   * Decode the values of a dictionary of Strings
+   * @param dictionary
+   * @return the values, in the order of their index
+   * @throws WarpScriptException
+   */
+  public static String[] decodeDictionary(Dictionary dictionary) throws WarpScriptException {
+    if (!(dictionary.getVector() instanceof VarCharVector)) {
+      throw new WarpScriptException("Dictionary encoding only support String values.");
+    }
+
+    VarCharVector vector = (VarCharVector) dictionary.getVector();
+    String[] values = new String[vector.getValueCount()];
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = vector.isNull(i) ? null : new String(vector.get(i), StandardCharsets.UTF_8);
+    }
+
+    return values;
+  }
 }
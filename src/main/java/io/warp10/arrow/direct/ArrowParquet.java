@@ -0,0 +1,1142 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.direct;
+
+import io.warp10.arrow.ArrowExtension;
+import io.warp10.continuum.store.Constants;
+import io.warp10.script.WarpScriptException;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BaseLargeVariableWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.DurationVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.LargeVarBinaryVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeNanoVector;
+import org.apache.arrow.vector.TimeSecVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.hadoop.CodecFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.warp10.arrow.direct.ArrowHelper.STU;
+import static io.warp10.arrow.direct.ArrowHelper.TIMESTAMPS_KEY;
+
+/**
+ * Conversions between Arrow streams and Parquet files.
+ *
+ * A Parquet file written from an Arrow stream has one optional column per column of the stream, and stores the fields
+ * and the custom metadata of the stream in its key-value metadata: it is read back with the same schema and conversion
+ * mode, except for dictionary-encoded columns which are read back as Utf8 columns. The schema of other Parquet files is
+ * derived from the types of their columns. When reading, row groups whose timestamp statistics are outside of the
+ * time range are skipped and only the requested columns are read.
+ */
+public class ArrowParquet {
+
+  // key of the Parquet key-value metadata holding the fields of the Arrow schema, as JSON
+  public final static String ARROW_FIELDS = "WarpScriptArrowFields";
+
+  // maximum number of rows of the record batches read from a Parquet file
+  public final static int BATCH_SIZE = 65536;
+
+  //
+  // Write
+  //
+
+  /**
+   * Write the record batches of an Arrow stream as a Parquet file.
+   * Columns of nested types (List, Struct, FixedSizeList) and intervals can not be written.
+   *
+   * @param in the Arrow stream
+   * @param out
+   * @param codec compression of the pages of the Parquet file
+   * @param rowGroupSize size in bytes above which a row group is closed
+   * @throws WarpScriptException
+   */
+  public static void write(InputStream in, OutputStream out, CompressionCodecName codec, int rowGroupSize) throws WarpScriptException {
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("parquet", 0, Long.MAX_VALUE);
+
+    try (ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      Schema schema = root.getSchema();
+      ArrowStreams.checkBatchIndependence(schema);
+
+      Map<String, String> metadata = new HashMap<String, String>();
+      if (null != schema.getCustomMetadata()) {
+        metadata.putAll(schema.getCustomMetadata());
+      }
+      metadata.put(ARROW_FIELDS, new Schema(schema.getFields()).toJson());
+
+      RowWriteSupport writeSupport = new RowWriteSupport(root, reader, parquetSchema(schema), metadata);
+
+      try (ParquetWriter<Integer> writer = new RowWriterBuilder(new StreamOutputFile(out), writeSupport)
+        .withCompressionCodec(codec)
+        .withRowGroupSize(rowGroupSize)
+        .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+        .withConf(new Configuration(false))
+        .build()) {
+
+        while (reader.loadNextBatch()) {
+          writeSupport.bind();
+
+          int rowCount = root.getRowCount();
+          for (int i = 0; i < rowCount; i++) {
+            writer.write(i);
+          }
+        }
+      }
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      allocator.close();
+    }
+  }
+
+  /**
+   * Parquet schema of an Arrow schema: one optional column per field, dictionary-encoded fields being written as strings
+   */
+  static MessageType parquetSchema(Schema schema) throws WarpScriptException {
+    Types.MessageTypeBuilder builder = Types.buildMessage();
+
+    for (Field field: schema.getFields()) {
+      builder.addField(parquetType(field));
+    }
+
+    return builder.named("arrow");
+  }
+
+  private static Type parquetType(Field field) throws WarpScriptException {
+    String name = field.getName();
+
+    if (null != field.getDictionary()) {
+      return Types.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(name);
+    }
+
+    ArrowType type = field.getType();
+    switch (type.getTypeID()) {
+      case Int:
+        ArrowType.Int intType = (ArrowType.Int) type;
+        return Types.optional(64 == intType.getBitWidth() ? PrimitiveTypeName.INT64 : PrimitiveTypeName.INT32)
+          .as(LogicalTypeAnnotation.intType(intType.getBitWidth(), intType.getIsSigned())).named(name);
+      case FloatingPoint:
+        FloatingPointPrecision precision = ((ArrowType.FloatingPoint) type).getPrecision();
+        if (FloatingPointPrecision.SINGLE == precision) {
+          return Types.optional(PrimitiveTypeName.FLOAT).named(name);
+        } else if (FloatingPointPrecision.DOUBLE == precision) {
+          return Types.optional(PrimitiveTypeName.DOUBLE).named(name);
+        }
+        break;
+      case Bool:
+        return Types.optional(PrimitiveTypeName.BOOLEAN).named(name);
+      case Utf8:
+      case LargeUtf8:
+        return Types.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(name);
+      case Binary:
+      case LargeBinary:
+        return Types.optional(PrimitiveTypeName.BINARY).named(name);
+      case FixedSizeBinary:
+        return Types.optional(PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY).length(((ArrowType.FixedSizeBinary) type).getByteWidth()).named(name);
+      case Decimal:
+        ArrowType.Decimal decimal = (ArrowType.Decimal) type;
+        return Types.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.decimalType(decimal.getScale(), decimal.getPrecision())).named(name);
+      case Date:
+        if (DateUnit.DAY == ((ArrowType.Date) type).getUnit()) {
+          return Types.optional(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.dateType()).named(name);
+        }
+        return Types.optional(PrimitiveTypeName.INT64).named(name);
+      case Time:
+        ArrowType.Time time = (ArrowType.Time) type;
+        PrimitiveTypeName timeType = 64 == time.getBitWidth() ? PrimitiveTypeName.INT64 : PrimitiveTypeName.INT32;
+        if (TimeUnit.SECOND == time.getUnit()) {
+          return Types.optional(timeType).named(name);
+        }
+        return Types.optional(timeType).as(LogicalTypeAnnotation.timeType(false, parquetUnit(time.getUnit()))).named(name);
+      case Timestamp:
+        ArrowType.Timestamp timestamp = (ArrowType.Timestamp) type;
+        if (TimeUnit.SECOND == timestamp.getUnit()) {
+          return Types.optional(PrimitiveTypeName.INT64).named(name);
+        }
+        return Types.optional(PrimitiveTypeName.INT64).as(LogicalTypeAnnotation.timestampType(null != timestamp.getTimezone(), parquetUnit(timestamp.getUnit()))).named(name);
+      case Duration:
+        return Types.optional(PrimitiveTypeName.INT64).named(name);
+      default:
+        break;
+    }
+
+    throw new WarpScriptException("Column " + name + " of type " + type + " can not be written to Parquet.");
+  }
+
+  private static LogicalTypeAnnotation.TimeUnit parquetUnit(TimeUnit unit) {
+    switch (unit) {
+      case MILLISECOND:
+        return LogicalTypeAnnotation.TimeUnit.MILLIS;
+      case MICROSECOND:
+        return LogicalTypeAnnotation.TimeUnit.MICROS;
+      default:
+        return LogicalTypeAnnotation.TimeUnit.NANOS;
+    }
+  }
+
+  /**
+   * How to write a non-null value of a column
+   */
+  private interface ValueWriter {
+    void add(RecordConsumer consumer, int row);
+  }
+
+  /**
+   * Writes the rows of the current record batch of an Arrow stream, a record being the index of a row of the batch
+   */
+  private static class RowWriteSupport extends WriteSupport<Integer> {
+
+    private final VectorSchemaRoot root;
+    private final DictionaryProvider provider;
+    private final MessageType schema;
+    private final Map<String, String> metadata;
+
+    private RecordConsumer consumer;
+    private String[] names;
+    private FieldVector[] vectors;
+    private ValueWriter[] writers;
+
+    RowWriteSupport(VectorSchemaRoot root, DictionaryProvider provider, MessageType schema, Map<String, String> metadata) {
+      this.root = root;
+      this.provider = provider;
+      this.schema = schema;
+      this.metadata = metadata;
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+      return new WriteContext(schema, metadata);
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+      this.consumer = recordConsumer;
+    }
+
+    /**
+     * Bind the value writers to the vectors and dictionaries of the batch that has just been loaded
+     */
+    void bind() throws WarpScriptException {
+      List<FieldVector> fieldVectors = root.getFieldVectors();
+
+      names = new String[fieldVectors.size()];
+      vectors = new FieldVector[fieldVectors.size()];
+      writers = new ValueWriter[fieldVectors.size()];
+
+      for (int f = 0; f < fieldVectors.size(); f++) {
+        vectors[f] = fieldVectors.get(f);
+        names[f] = vectors[f].getField().getName();
+        writers[f] = valueWriter(vectors[f], provider);
+      }
+    }
+
+    @Override
+    public void write(Integer row) {
+      consumer.startMessage();
+
+      for (int f = 0; f < vectors.length; f++) {
+        if (vectors[f].isNull(row)) {
+          continue;
+        }
+
+        consumer.startField(names[f], f);
+        writers[f].add(consumer, row);
+        consumer.endField(names[f], f);
+      }
+
+      consumer.endMessage();
+    }
+  }
+
+  private static ValueWriter valueWriter(final FieldVector vector, DictionaryProvider provider) throws WarpScriptException {
+    Field field = vector.getField();
+
+    if (null != field.getDictionary()) {
+      Dictionary dictionary = provider.lookup(field.getDictionary().getId());
+      if (null == dictionary || !(dictionary.getVector() instanceof VarCharVector)) {
+        throw new WarpScriptException("Dictionary-encoded column " + field.getName() + " can not be written to Parquet, only dictionaries of strings can.");
+      }
+
+      final BaseIntVector indices = (BaseIntVector) vector;
+      final VarCharVector values = (VarCharVector) dictionary.getVector();
+      return new ValueWriter() {
+        @Override
+        public void add(RecordConsumer consumer, int row) {
+          consumer.addBinary(Binary.fromConstantByteArray(values.get((int) indices.getValueAsLong(row))));
+        }
+      };
+    }
+
+    switch (field.getType().getTypeID()) {
+      case Int:
+        final BaseIntVector ints = (BaseIntVector) vector;
+        if (64 == ((ArrowType.Int) field.getType()).getBitWidth()) {
+          return new ValueWriter() {
+            @Override
+            public void add(RecordConsumer consumer, int row) {
+              consumer.addLong(ints.getValueAsLong(row));
+            }
+          };
+        }
+
+        // unsigned 32-bit values are written as the bits of an INT32 annotated as unsigned
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addInteger((int) ints.getValueAsLong(row));
+          }
+        };
+
+      case FloatingPoint:
+        if (vector instanceof Float4Vector) {
+          return new ValueWriter() {
+            @Override
+            public void add(RecordConsumer consumer, int row) {
+              consumer.addFloat(((Float4Vector) vector).get(row));
+            }
+          };
+        }
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addDouble(((Float8Vector) vector).get(row));
+          }
+        };
+
+      case Bool:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBoolean(1 == ((BitVector) vector).get(row));
+          }
+        };
+
+      case Utf8:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBinary(Binary.fromConstantByteArray(((VarCharVector) vector).get(row)));
+          }
+        };
+
+      case LargeUtf8:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBinary(Binary.fromConstantByteArray(((LargeVarCharVector) vector).get(row)));
+          }
+        };
+
+      case Binary:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBinary(Binary.fromConstantByteArray(((VarBinaryVector) vector).get(row)));
+          }
+        };
+
+      case LargeBinary:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBinary(Binary.fromConstantByteArray(((LargeVarBinaryVector) vector).get(row)));
+          }
+        };
+
+      case FixedSizeBinary:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBinary(Binary.fromConstantByteArray(((FixedSizeBinaryVector) vector).get(row)));
+          }
+        };
+
+      case Decimal:
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addBinary(Binary.fromConstantByteArray(((DecimalVector) vector).getObject(row).unscaledValue().toByteArray()));
+          }
+        };
+
+      case Date:
+      case Time:
+      case Timestamp:
+      case Duration:
+
+        //
+        // Temporal values are written as they are stored, 32 or 64-bit integers
+        //
+
+        if (4 == temporalWidth(field.getType())) {
+          return new ValueWriter() {
+            @Override
+            public void add(RecordConsumer consumer, int row) {
+              consumer.addInteger(vector.getDataBuffer().getInt((long) row * 4L));
+            }
+          };
+        }
+        return new ValueWriter() {
+          @Override
+          public void add(RecordConsumer consumer, int row) {
+            consumer.addLong(vector.getDataBuffer().getLong((long) row * 8L));
+          }
+        };
+
+      default:
+        throw new WarpScriptException("Column " + field.getName() + " of type " + field.getType() + " can not be written to Parquet.");
+    }
+  }
+
+  /**
+   * @return the width in bytes of the values of a Date, Time, Timestamp or Duration column
+   */
+  private static int temporalWidth(ArrowType type) {
+    if (type instanceof ArrowType.Date) {
+      return DateUnit.DAY == ((ArrowType.Date) type).getUnit() ? 4 : 8;
+    } else if (type instanceof ArrowType.Time) {
+      return ((ArrowType.Time) type).getBitWidth() / 8;
+    }
+
+    return 8;
+  }
+
+  private static class RowWriterBuilder extends ParquetWriter.Builder<Integer, RowWriterBuilder> {
+
+    private final RowWriteSupport writeSupport;
+
+    RowWriterBuilder(OutputFile file, RowWriteSupport writeSupport) {
+      super(file);
+      this.writeSupport = writeSupport;
+    }
+
+    @Override
+    protected RowWriterBuilder self() {
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<Integer> getWriteSupport(Configuration conf) {
+      return writeSupport;
+    }
+  }
+
+  /**
+   * A Parquet OutputFile writing to an OutputStream, which is left open
+   */
+  public static class StreamOutputFile implements OutputFile {
+
+    private final OutputStream out;
+
+    public StreamOutputFile(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) {
+      return createOrOverwrite(blockSizeHint);
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+      return new PositionOutputStream() {
+        private long pos = 0L;
+
+        @Override
+        public long getPos() {
+          return pos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          pos++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+          pos += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+          out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          out.flush();
+        }
+      };
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+      return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+      return 0L;
+    }
+  }
+
+  //
+  // Read
+  //
+
+  /**
+   * A Parquet InputFile over a byte array
+   */
+  public static class BytesInputFile implements InputFile {
+
+    private final byte[] bytes;
+
+    public BytesInputFile(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public long getLength() {
+      return bytes.length;
+    }
+
+    @Override
+    public SeekableInputStream newStream() {
+      final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+
+      return new DelegatingSeekableInputStream(in) {
+        @Override
+        public long getPos() {
+          return bytes.length - in.available();
+        }
+
+        @Override
+        public void seek(long newPos) {
+          in.reset();
+          in.skip(newPos);
+        }
+      };
+    }
+  }
+
+  /**
+   * A Parquet InputFile over a local file
+   */
+  public static class LocalInputFile implements InputFile {
+
+    private final File file;
+
+    public LocalInputFile(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public long getLength() {
+      return file.length();
+    }
+
+    @Override
+    public SeekableInputStream newStream() throws IOException {
+      final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+      return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+        @Override
+        public long getPos() throws IOException {
+          return channel.position();
+        }
+
+        @Override
+        public void seek(long newPos) throws IOException {
+          channel.position(newPos);
+        }
+      };
+    }
+  }
+
+  /**
+   * Read some columns of the rows of a Parquet file whose timestamp is in [start, end] into an Arrow stream.
+   * Row groups are skipped using the statistics of the timestamp column, then the rows of the other row groups are
+   * filtered as with ArrowStreams.select.
+   *
+   * @param file
+   * @param columns names of the columns to read, in this order, or an empty list for all of them
+   * @param start first timestamp of the range, in platform time units
+   * @param end last timestamp of the range, in platform time units
+   * @param out
+   * @return false if all the row groups were skipped
+   * @throws WarpScriptException
+   */
+  public static boolean read(InputFile file, List<String> columns, long start, long end, OutputStream out) throws WarpScriptException {
+
+    if (start > end) {
+      throw new WarpScriptException("The start of the time range must not be after its end.");
+    }
+
+    boolean timeRange = Long.MIN_VALUE != start || Long.MAX_VALUE != end;
+
+    try {
+
+      //
+      // Schemas, from the footer of the file
+      //
+
+      FileMetaData footer;
+      try (ParquetFileReader reader = ParquetFileReader.open(file, readOptions(null))) {
+        footer = reader.getFooter().getFileMetaData();
+      }
+
+      MessageType fileSchema = footer.getSchema();
+      Map<String, String> metadata = new HashMap<String, String>();
+      Map<String, Field> fields = arrowFields(footer, metadata);
+
+      List<String> names = new ArrayList<String>(columns);
+      if (names.isEmpty()) {
+        for (Type type: fileSchema.getFields()) {
+          names.add(type.getName());
+        }
+      } else if (timeRange && !names.contains(TIMESTAMPS_KEY)) {
+        names.add(TIMESTAMPS_KEY);
+      }
+
+      List<Type> requestedTypes = new ArrayList<Type>(names.size());
+      List<Field> requestedFields = new ArrayList<Field>(names.size());
+      for (String name: names) {
+        if (!fileSchema.containsField(name) || !fields.containsKey(name)) {
+          throw new WarpScriptException("Parquet file has no column " + name + ".");
+        }
+        requestedTypes.add(fileSchema.getType(name));
+        requestedFields.add(fields.get(name));
+      }
+      MessageType requested = new MessageType(fileSchema.getName(), requestedTypes);
+
+      //
+      // Row groups are pruned on the statistics of the timestamp column, in the time units of the file
+      //
+
+      FilterCompat.Filter filter = FilterCompat.NOOP;
+      if (timeRange) {
+        Type timestamps = fileSchema.getType(TIMESTAMPS_KEY);
+        if (!timestamps.isPrimitive() || PrimitiveTypeName.INT64 != timestamps.asPrimitiveType().getPrimitiveTypeName()) {
+          throw new WarpScriptException("Selecting a time range requires a 64-bit integer " + TIMESTAMPS_KEY + " column.");
+        }
+
+        long first = start;
+        long last = end;
+        if (null != metadata.get(STU) && Long.parseLong(metadata.get(STU)) != Constants.TIME_UNITS_PER_S) {
+          double factor = Long.parseLong(metadata.get(STU)) / (double) Constants.TIME_UNITS_PER_S;
+          first = Long.MIN_VALUE == start ? start : (long) Math.ceil(start * factor);
+          last = Long.MAX_VALUE == end ? end : (long) Math.floor(end * factor);
+        }
+
+        Operators.LongColumn column = FilterApi.longColumn(TIMESTAMPS_KEY);
+        filter = FilterCompat.get(FilterApi.and(FilterApi.gtEq(column, first), FilterApi.ltEq(column, last)));
+      }
+
+      //
+      // Rows of the remaining row groups, decoded straight into the vectors of the record batches
+      //
+
+      OutputStream arrow = timeRange || !columns.isEmpty() ? new ByteArrayOutputStream() : out;
+      boolean read = readRowGroups(file, filter, fileSchema, requested, new Schema(requestedFields, metadata), arrow);
+
+      if (arrow != out) {
+        ArrowStreams.select(new ByteArrayInputStream(((ByteArrayOutputStream) arrow).toByteArray()), columns, start, end, out);
+      }
+
+      return read;
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    }
+  }
+
+  private static ParquetReadOptions readOptions(FilterCompat.Filter filter) {
+    ParquetReadOptions.Builder options = ParquetReadOptions.builder()
+      .withCodecFactory(new CodecFactory(new Configuration(false), 0));
+
+    if (null != filter) {
+      options.withRecordFilter(filter);
+    }
+
+    return options.build();
+  }
+
+  private static boolean readRowGroups(InputFile file, FilterCompat.Filter filter, MessageType fileSchema, MessageType requested, Schema schema, OutputStream out) throws IOException, WarpScriptException {
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("parquet", 0, Long.MAX_VALUE);
+    VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+
+    try (ParquetFileReader reader = ParquetFileReader.open(file, readOptions(filter));
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      reader.setRequestedSchema(requested);
+      MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(requested, fileSchema);
+      ArrowMaterializer materializer = new ArrowMaterializer(root);
+
+      writer.start();
+      root.allocateNew();
+
+      boolean read = false;
+      PageReadStore pages;
+      while (null != (pages = reader.readNextRowGroup())) {
+        read = true;
+        RecordReader<Object> records = columnIO.getRecordReader(pages, materializer, FilterCompat.NOOP);
+        long rowCount = pages.getRowCount();
+
+        for (long r = 0; r < rowCount; r++) {
+          records.read();
+
+          if (BATCH_SIZE == materializer.row) {
+            root.setRowCount(materializer.row);
+            writer.writeBatch();
+            root.allocateNew();
+            materializer.row = 0;
+          }
+        }
+      }
+
+      if (materializer.row > 0) {
+        root.setRowCount(materializer.row);
+        writer.writeBatch();
+      }
+
+      writer.end();
+
+      return read;
+
+    } finally {
+      root.close();
+      allocator.close();
+    }
+  }
+
+  /**
+   * Arrow fields of the columns of a Parquet file, by name, and custom metadata of the Arrow schema
+   */
+  private static Map<String, Field> arrowFields(FileMetaData footer, Map<String, String> metadata) throws IOException, WarpScriptException {
+    Map<String, Field> fields = new HashMap<String, Field>();
+    Map<String, String> keyValue = footer.getKeyValueMetaData();
+
+    //
+    // Files written from an Arrow stream hold its fields and custom metadata
+    //
+
+    if (null != keyValue && null != keyValue.get(ARROW_FIELDS)) {
+      metadata.putAll(keyValue);
+      metadata.remove(ARROW_FIELDS);
+
+      for (Field field: Schema.fromJSON(keyValue.get(ARROW_FIELDS)).getFields()) {
+        if (null != field.getDictionary()) {
+          field = new Field(field.getName(), new FieldType(true, new ArrowType.Utf8(), null, field.getMetadata()), null);
+        }
+        fields.put(field.getName(), field);
+      }
+
+      return fields;
+    }
+
+    //
+    // Fields of other files are derived from their column types. An annotated timestamp column gives the time units.
+    //
+
+    for (Type type: footer.getSchema().getFields()) {
+      fields.put(type.getName(), arrowField(type));
+
+      if (TIMESTAMPS_KEY.equals(type.getName()) && type.isPrimitive()
+        && type.asPrimitiveType().getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.TimestampLogicalTypeAnnotation) {
+        LogicalTypeAnnotation.TimeUnit unit = ((LogicalTypeAnnotation.TimestampLogicalTypeAnnotation) type.asPrimitiveType().getLogicalTypeAnnotation()).getUnit();
+        metadata.put(STU, String.valueOf(unitsPerSecond(unit)));
+      }
+    }
+
+    return fields;
+  }
+
+  private static Field arrowField(Type type) throws WarpScriptException {
+    String name = type.getName();
+
+    if (!type.isPrimitive() || type.isRepetition(Type.Repetition.REPEATED)) {
+      throw new WarpScriptException("Parquet column " + name + " is not supported, only columns of primitive values are.");
+    }
+
+    PrimitiveType primitive = type.asPrimitiveType();
+    LogicalTypeAnnotation annotation = primitive.getLogicalTypeAnnotation();
+    ArrowType arrowType = null;
+
+    if (annotation instanceof LogicalTypeAnnotation.DecimalLogicalTypeAnnotation) {
+      LogicalTypeAnnotation.DecimalLogicalTypeAnnotation decimal = (LogicalTypeAnnotation.DecimalLogicalTypeAnnotation) annotation;
+      arrowType = new ArrowType.Decimal(decimal.getPrecision(), decimal.getScale());
+
+    } else {
+      switch (primitive.getPrimitiveTypeName()) {
+        case BOOLEAN:
+          arrowType = new ArrowType.Bool();
+          break;
+        case INT32:
+          if (annotation instanceof LogicalTypeAnnotation.IntLogicalTypeAnnotation) {
+            LogicalTypeAnnotation.IntLogicalTypeAnnotation intType = (LogicalTypeAnnotation.IntLogicalTypeAnnotation) annotation;
+            arrowType = new ArrowType.Int(intType.getBitWidth(), intType.isSigned());
+          } else if (annotation instanceof LogicalTypeAnnotation.DateLogicalTypeAnnotation) {
+            arrowType = new ArrowType.Date(DateUnit.DAY);
+          } else if (annotation instanceof LogicalTypeAnnotation.TimeLogicalTypeAnnotation) {
+            arrowType = new ArrowType.Time(TimeUnit.MILLISECOND, 32);
+          } else {
+            arrowType = new ArrowType.Int(32, true);
+          }
+          break;
+        case INT64:
+          if (annotation instanceof LogicalTypeAnnotation.IntLogicalTypeAnnotation) {
+            arrowType = new ArrowType.Int(64, ((LogicalTypeAnnotation.IntLogicalTypeAnnotation) annotation).isSigned());
+          } else if (annotation instanceof LogicalTypeAnnotation.TimestampLogicalTypeAnnotation && !TIMESTAMPS_KEY.equals(name)) {
+            LogicalTypeAnnotation.TimestampLogicalTypeAnnotation timestamp = (LogicalTypeAnnotation.TimestampLogicalTypeAnnotation) annotation;
+            arrowType = new ArrowType.Timestamp(arrowUnit(timestamp.getUnit()), timestamp.isAdjustedToUTC() ? "UTC" : null);
+          } else if (annotation instanceof LogicalTypeAnnotation.TimeLogicalTypeAnnotation) {
+            arrowType = new ArrowType.Time(arrowUnit(((LogicalTypeAnnotation.TimeLogicalTypeAnnotation) annotation).getUnit()), 64);
+          } else {
+            // including the timestamp column, whose ticks are read as they are
+            arrowType = new ArrowType.Int(64, true);
+          }
+          break;
+        case FLOAT:
+          arrowType = new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+          break;
+        case DOUBLE:
+          arrowType = new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+          break;
+        case BINARY:
+          if (annotation instanceof LogicalTypeAnnotation.StringLogicalTypeAnnotation
+            || annotation instanceof LogicalTypeAnnotation.EnumLogicalTypeAnnotation
+            || annotation instanceof LogicalTypeAnnotation.JsonLogicalTypeAnnotation) {
+            arrowType = new ArrowType.Utf8();
+          } else {
+            arrowType = new ArrowType.Binary();
+          }
+          break;
+        case FIXED_LEN_BYTE_ARRAY:
+          arrowType = new ArrowType.FixedSizeBinary(primitive.getTypeLength());
+          break;
+        default:
+          throw new WarpScriptException("Parquet column " + name + " of type " + primitive.getPrimitiveTypeName() + " is not supported.");
+      }
+    }
+
+    return new Field(name, new FieldType(!type.isRepetition(Type.Repetition.REQUIRED), arrowType, null), null);
+  }
+
+  private static TimeUnit arrowUnit(LogicalTypeAnnotation.TimeUnit unit) {
+    switch (unit) {
+      case MILLIS:
+        return TimeUnit.MILLISECOND;
+      case MICROS:
+        return TimeUnit.MICROSECOND;
+      default:
+        return TimeUnit.NANOSECOND;
+    }
+  }
+
+  private static long unitsPerSecond(LogicalTypeAnnotation.TimeUnit unit) {
+    switch (unit) {
+      case MILLIS:
+        return 1000L;
+      case MICROS:
+        return 1000000L;
+      default:
+        return 1000000000L;
+    }
+  }
+
+  /**
+   * Materializes the records of a row group into the vectors of a VectorSchemaRoot, at the current row of the batch
+   */
+  private static class ArrowMaterializer extends RecordMaterializer<Object> {
+
+    private int row = 0;
+    private final GroupConverter rootConverter;
+
+    ArrowMaterializer(VectorSchemaRoot root) throws WarpScriptException {
+      final Converter[] converters = new Converter[root.getFieldVectors().size()];
+      for (int f = 0; f < converters.length; f++) {
+        converters[f] = converter(root.getFieldVectors().get(f));
+      }
+
+      rootConverter = new GroupConverter() {
+        @Override
+        public Converter getConverter(int fieldIndex) {
+          return converters[fieldIndex];
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void end() {
+          row++;
+        }
+      };
+    }
+
+    @Override
+    public Object getCurrentRecord() {
+      return row;
+    }
+
+    @Override
+    public GroupConverter getRootConverter() {
+      return rootConverter;
+    }
+
+    private PrimitiveConverter converter(final FieldVector vector) throws WarpScriptException {
+
+      if (vector instanceof BaseIntVector) {
+        final BaseIntVector ints = (BaseIntVector) vector;
+        return new PrimitiveConverter() {
+          @Override
+          public void addInt(int value) {
+            ints.setWithPossibleTruncate(row, value);
+          }
+
+          @Override
+          public void addLong(long value) {
+            ints.setWithPossibleTruncate(row, value);
+          }
+        };
+
+      } else if (vector instanceof Float4Vector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addFloat(float value) {
+            ((Float4Vector) vector).setSafe(row, value);
+          }
+
+          @Override
+          public void addDouble(double value) {
+            ((Float4Vector) vector).setSafe(row, (float) value);
+          }
+        };
+
+      } else if (vector instanceof Float8Vector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addFloat(float value) {
+            ((Float8Vector) vector).setSafe(row, value);
+          }
+
+          @Override
+          public void addDouble(double value) {
+            ((Float8Vector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof BitVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addBoolean(boolean value) {
+            ((BitVector) vector).setSafe(row, value ? 1 : 0);
+          }
+        };
+
+      } else if (vector instanceof VarCharVector || vector instanceof VarBinaryVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addBinary(Binary value) {
+            ((BaseVariableWidthVector) vector).setSafe(row, value.getBytes());
+          }
+        };
+
+      } else if (vector instanceof LargeVarCharVector || vector instanceof LargeVarBinaryVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addBinary(Binary value) {
+            ((BaseLargeVariableWidthVector) vector).setSafe(row, value.getBytes());
+          }
+        };
+
+      } else if (vector instanceof FixedSizeBinaryVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addBinary(Binary value) {
+            ((FixedSizeBinaryVector) vector).setSafe(row, value.getBytes());
+          }
+        };
+
+      } else if (vector instanceof DecimalVector) {
+        final int scale = ((DecimalVector) vector).getScale();
+        return new PrimitiveConverter() {
+          @Override
+          public void addInt(int value) {
+            ((DecimalVector) vector).setSafe(row, BigDecimal.valueOf(value, scale));
+          }
+
+          @Override
+          public void addLong(long value) {
+            ((DecimalVector) vector).setSafe(row, BigDecimal.valueOf(value, scale));
+          }
+
+          @Override
+          public void addBinary(Binary value) {
+            ((DecimalVector) vector).setSafe(row, new BigDecimal(new BigInteger(value.getBytes()), scale));
+          }
+        };
+
+      } else if (vector instanceof TimeStampVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addLong(long value) {
+            ((TimeStampVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof DateDayVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addInt(int value) {
+            ((DateDayVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof DateMilliVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addLong(long value) {
+            ((DateMilliVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof TimeSecVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addInt(int value) {
+            ((TimeSecVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof TimeMilliVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addInt(int value) {
+            ((TimeMilliVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof TimeMicroVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addLong(long value) {
+            ((TimeMicroVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof TimeNanoVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addLong(long value) {
+            ((TimeNanoVector) vector).setSafe(row, value);
+          }
+        };
+
+      } else if (vector instanceof DurationVector) {
+        return new PrimitiveConverter() {
+          @Override
+          public void addLong(long value) {
+            ((DurationVector) vector).setSafe(row, value);
+          }
+        };
+      }
+
+      throw new WarpScriptException("Column " + vector.getField().getName() + " of type " + vector.getField().getType() + " can not be read from Parquet.");
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package io.warp10.arrow.direct;
 
 import com.geoxp.GeoXPLib;
+import io.warp10.arrow.convert.Register;
 import io.warp10.continuum.gts.GTSEncoder;
 import io.warp10.continuum.gts.GTSHelper;
 import io.warp10.continuum.gts.GeoTimeSerie;
@@ -24,25 +25,46 @@ import io.warp10.continuum.store.Constants;
 import io.warp10.continuum.store.thrift.data.Metadata;
 import io.warp10.script.WarpScriptException;
 import io.warp10.script.functions.TYPEOF;
+import org.apache.arrow.memory.ArrowBuf;
 import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DecimalVector;
 import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.LargeVarBinaryVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.complex.MapVector;
 import org.apache.arrow.vector.dictionary.Dictionary;
 import org.apache.arrow.vector.ipc.ArrowReader;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.IntervalUnit;
+import org.apache.arrow.vector.types.TimeUnit;
 import org.apache.arrow.vector.types.pojo.ArrowType;
-import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.Text;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.boon.json.JsonParser;
 import org.boon.json.JsonParserFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -50,6 +72,7 @@ import static io.warp10.arrow.direct.ArrowHelper.BOOLEAN_VALUES_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.BUCKETCOUNT;
 import static io.warp10.arrow.direct.ArrowHelper.BUCKETSPAN;
 import static io.warp10.arrow.direct.ArrowHelper.BYTES_VALUES_KEY;
+import static io.warp10.arrow.direct.ArrowHelper.DECIMAL_VALUES_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.DOUBLE_VALUES_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.ELEVATION_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.LASTBUCKET;
@@ -57,6 +80,7 @@ import static io.warp10.arrow.direct.ArrowHelper.LATITUDE_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.LONGITUDE_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.LONG_VALUES_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.STRING_VALUES_KEY;
+import static io.warp10.arrow.direct.ArrowHelper.SERIES_METADATA;
 import static io.warp10.arrow.direct.ArrowHelper.STU;
 import static io.warp10.arrow.direct.ArrowHelper.TIMESTAMPS_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.MODE;
@@ -115,9 +139,34 @@ public class ArrowReaders {
    * @return
    */
   public static Metadata retrieveGtsMetadata(Schema schema) {
+    return retrieveGtsMetadata(schema.getCustomMetadata());
+  }
+
+  /**
+   * Retrieve the Gts Metadata of each record batch of a schema in SERIES conversion mode
+   * @param schema
+   * @return
+   */
+  public static List<Metadata> retrieveSeriesMetadata(Schema schema) {
+    String json = null == schema.getCustomMetadata() ? null : schema.getCustomMetadata().get(SERIES_METADATA);
+    List<Object> seriesMetadata = null == json ? new ArrayList<>() : (List<Object>) fromJson(json);
+
+    List<Metadata> res = new ArrayList<>(seriesMetadata.size());
+    for (Object metadata: seriesMetadata) {
+      res.add(retrieveGtsMetadata((Map<String, String>) metadata));
+    }
+
+    return res;
+  }
+
+  /**
+   * Retrieve Gts Metadata from a metadata Map, such as the metadata of an Arrow Field
+   * @param metadata
+   * @return
+   */
+  public static Metadata retrieveGtsMetadata(Map<String, String> metadata) {
 
     Metadata gtsMeta = new Metadata();
-    Map<String, String> metadata = schema.getCustomMetadata();
 
     gtsMeta.setName(metadata.get(Metadata._Fields.NAME.getFieldName()));
 
@@ -177,7 +226,22 @@ public class ArrowReaders {
   public static GeoTimeSerie arrowStreamToGTS(ArrowReader reader) throws IOException, WarpScriptException {
 
     VectorSchemaRoot root = reader.getVectorSchemaRoot();
-    Schema schema = root.getSchema();
+    GeoTimeSerie gts = newGts(root.getSchema());
+
+    while (reader.loadNextBatch()) {
+      readGtsBatch(root, gts);
+    }
+
+    return gts;
+  }
+
+  /**
+   * Create an empty GTS with the metadata, type and bucketization of a stream written in GTS conversion mode
+   * @param schema
+   * @return
+   * @throws WarpScriptException
+   */
+  private static GeoTimeSerie newGts(Schema schema) throws WarpScriptException {
     if (!TYPEOF.typeof(GeoTimeSerie.class).equals(schema.getCustomMetadata().get(MODE))) {
       throw new WarpScriptException("Tried to convert a GTS but input is not a GTS.");
     }
@@ -185,47 +249,26 @@ public class ArrowReaders {
     GeoTimeSerie gts =  new GeoTimeSerie();
     gts.setMetadata(retrieveGtsMetadata(schema));
 
-    //
-    // Retrieve fields
-    //
-
-    FieldVector timestampVector = root.getVector(TIMESTAMPS_KEY);
-    FieldVector latitudeVector =  root.getVector(LATITUDE_KEY);
-    FieldVector longitudeVector =  root.getVector(LONGITUDE_KEY);
-    FieldVector elevationVector =  root.getVector(ELEVATION_KEY);
-    FieldVector longVector =  root.getVector(LONG_VALUES_KEY);
-    FieldVector doubleVector =  root.getVector(DOUBLE_VALUES_KEY);
-    FieldVector booleanVector =  root.getVector(BOOLEAN_VALUES_KEY);
-    FieldVector stringVector =  root.getVector(STRING_VALUES_KEY);
-
     //
     // Set Gts type
     //
 
-    if (null != longVector) {
+    if (null != schema.findField(LONG_VALUES_KEY)) {
       safeSetType(gts, GeoTimeSerie.TYPE.LONG);
     }
 
-    if (null != doubleVector) {
+    if (null != schema.findField(DOUBLE_VALUES_KEY)) {
       safeSetType(gts, GeoTimeSerie.TYPE.DOUBLE);
     }
 
-    if (null != booleanVector) {
+    if (null != schema.findField(BOOLEAN_VALUES_KEY)) {
       safeSetType(gts, GeoTimeSerie.TYPE.BOOLEAN);
     }
 
-    if (null != stringVector) {
+    if (null != schema.findField(STRING_VALUES_KEY)) {
       safeSetType(gts, GeoTimeSerie.TYPE.STRING);
     }
 
-    //
-    // Retrieve time unit per seconds
-    //
-
-    Object stu_holder = schema.getCustomMetadata().get(STU);
-    long stu = stu_holder != null ? Long.valueOf((String) stu_holder).longValue() : Constants.TIME_UNITS_PER_S;
-    double timeFactor = new Double(stu) / Constants.TIME_UNITS_PER_S;
-
     //
     // Retrieve bucketize info
     //
@@ -242,63 +285,209 @@ public class ArrowReaders {
       GTSHelper.setBucketCount(gts, Long.valueOf(schema.getCustomMetadata().get(BUCKETCOUNT)).intValue());
     }
 
+    return gts;
+  }
+
+  /**
+   * Add the data points of the current batch of a stream written in GTS conversion mode to a GTS created by newGts
+   * @param root
+   * @param gts
+   * @throws WarpScriptException
+   */
+  private static void readGtsBatch(VectorSchemaRoot root, GeoTimeSerie gts) throws WarpScriptException {
+
+    //
+    // Retrieve fields
+    //
+
+    FieldVector timestampVector = root.getVector(TIMESTAMPS_KEY);
+    FieldVector latitudeVector =  root.getVector(LATITUDE_KEY);
+    FieldVector longitudeVector =  root.getVector(LONGITUDE_KEY);
+    FieldVector elevationVector =  root.getVector(ELEVATION_KEY);
+    FieldVector longVector =  root.getVector(LONG_VALUES_KEY);
+    FieldVector doubleVector =  root.getVector(DOUBLE_VALUES_KEY);
+    FieldVector booleanVector =  root.getVector(BOOLEAN_VALUES_KEY);
+    FieldVector stringVector =  root.getVector(STRING_VALUES_KEY);
+
+    //
+    // Retrieve time unit per seconds
+    //
+
+    Object stu_holder = root.getSchema().getCustomMetadata().get(STU);
+    long stu = stu_holder != null ? Long.valueOf((String) stu_holder).longValue() : Constants.TIME_UNITS_PER_S;
+    double timeFactor = new Double(Constants.TIME_UNITS_PER_S) / stu;
+
     //
     // Read data points
     //
 
+    for (int i = 0; i < root.getRowCount(); i++) {
+
+      timestampVector.getReader().setPosition(i);
+      long tick = timestampVector.getReader().readLong().longValue();
+      if (timeFactor != 1.0D) {
+        tick = new Double(tick * timeFactor).longValue();
+      }
+
+      long location = GeoTimeSerie.NO_LOCATION;
+      if (null != latitudeVector && null != longitudeVector) {
+        latitudeVector.getReader().setPosition(i);
+        longitudeVector.getReader().setPosition(i);
+        location = GeoXPLib.toGeoXPPoint(latitudeVector.getReader().readFloat(), longitudeVector.getReader().readFloat());
+      }
+
+      long elevation = GeoTimeSerie.NO_ELEVATION;
+      if (null != elevationVector) {
+        elevationVector.getReader().setPosition(i);
+        elevation = elevationVector.getReader().readLong();
+      }
+
+      Object value;
+      switch (gts.getType()) {
+        case LONG:
+          longVector.getReader().setPosition(i);
+          value = longVector.getReader().readObject();
+          break;
+
+        case DOUBLE:
+          doubleVector.getReader().setPosition(i);
+          value = doubleVector.getReader().readObject();
+          break;
+
+        case BOOLEAN:
+          booleanVector.getReader().setPosition(i);
+          value = booleanVector.getReader().readObject();
+          break;
+
+        case STRING:
+          stringVector.getReader().setPosition(i);
+          value = stringVector.getReader().readObject();
+          break;
+
+        default: throw new WarpScriptException("Can't define GTS type of input arrow stream");
+      }
+
+      GTSHelper.setValue(gts, tick, location, elevation, value, false);
+    }
+  }
+
+  //
+  // SERIES
+  //
+
+  /**
+   * Read a stream written in SERIES conversion mode into a list of GTSEncoders, one per record batch.
+   * The metadata of each GTSEncoder is retrieved from the JSON list stored in the schema metadata.
+   *
+   * @param reader
+   * @return
+   * @throws IOException
+   * @throws WarpScriptException
+   */
+  public static List<GTSEncoder> arrowStreamToSeriesList(ArrowReader reader) throws IOException, WarpScriptException {
+
+    VectorSchemaRoot root = reader.getVectorSchemaRoot();
+    Schema schema = root.getSchema();
+    if (!Register.SERIES.equals(schema.getCustomMetadata().get(MODE))) {
+      throw new WarpScriptException("Tried to convert a stream in SERIES mode but input is not in SERIES mode.");
+    }
+
+    String json = schema.getCustomMetadata().get(SERIES_METADATA);
+    List<Object> seriesMetadata = null == json ? new ArrayList<>() : (List<Object>) fromJson(json);
+
+    List<GTSEncoder> res = new ArrayList<>(seriesMetadata.size());
     while (reader.loadNextBatch()) {
 
-      for (int i = 0; i < root.getRowCount(); i++) {
+      if (res.size() == seriesMetadata.size()) {
+        throw new WarpScriptException("SERIES mode stream has more record batches than series metadata.");
+      }
 
-        timestampVector.getReader().setPosition(i);
-        long tick = timestampVector.getReader().readLong().longValue();
-        if (timeFactor != 1.0D) {
-          tick = new Double(tick * timeFactor).longValue();
-        }
+      GTSEncoder encoder = new GTSEncoder(0L);
+      encoder.setMetadata(retrieveGtsMetadata((Map<String, String>) seriesMetadata.get(res.size())));
 
-        long location = GeoTimeSerie.NO_LOCATION;
-        if (null != latitudeVector && null != longitudeVector) {
-          latitudeVector.getReader().setPosition(i);
-          longitudeVector.getReader().setPosition(i);
-          location = GeoXPLib.toGeoXPPoint(latitudeVector.getReader().readFloat(), longitudeVector.getReader().readFloat());
-        }
+      new EncoderBatchPlan(root).addRows(encoder);
 
-        long elevation = GeoTimeSerie.NO_ELEVATION;
-        if (null != elevationVector) {
-          elevationVector.getReader().setPosition(i);
-          elevation = elevationVector.getReader().readLong();
-        }
+      res.add(encoder);
+    }
 
-        Object value;
-        switch (gts.getType()) {
-          case LONG:
-            longVector.getReader().setPosition(i);
-            value = longVector.getReader().readObject();
-            break;
-
-          case DOUBLE:
-            doubleVector.getReader().setPosition(i);
-            value = doubleVector.getReader().readObject();
-            break;
-
-          case BOOLEAN:
-            booleanVector.getReader().setPosition(i);
-            value = booleanVector.getReader().readObject();
-            break;
-
-          case STRING:
-            stringVector.getReader().setPosition(i);
-            value = stringVector.getReader().readObject();
-            break;
-
-          default: throw new WarpScriptException("Can't define GTS type of input arrow stream");
-        }
+    if (res.size() != seriesMetadata.size()) {
+      throw new WarpScriptException("SERIES mode stream has less record batches than series metadata.");
+    }
 
-        GTSHelper.setValue(gts, tick, location, elevation, value, false);
+    return res;
+  }
+
+  //
+  // WIDE
+  //
+
+  /**
+   * Read a stream written in WIDE conversion mode into a list of GTS, one per value column.
+   * The metadata of each GTS is retrieved from the metadata of its field, null cells are skipped.
+   *
+   * @param reader
+   * @return
+   * @throws IOException
+   * @throws WarpScriptException
+   */
+  public static List<GeoTimeSerie> arrowStreamToWideGtsList(ArrowReader reader) throws IOException, WarpScriptException {
+
+    VectorSchemaRoot root = reader.getVectorSchemaRoot();
+    Schema schema = root.getSchema();
+    if (!Register.WIDE.equals(schema.getCustomMetadata().get(MODE))) {
+      throw new WarpScriptException("Tried to convert a stream in WIDE mode but input is not in WIDE mode.");
+    }
+
+    FieldVector timestampVector = root.getVector(TIMESTAMPS_KEY);
+    if (!(timestampVector instanceof BigIntVector)) {
+      throw new WarpScriptException("WIDE mode requires a 64-bit integer " + TIMESTAMPS_KEY + " field.");
+    }
+
+    Object stu_holder = schema.getCustomMetadata().get(STU);
+    long stu = stu_holder != null ? Long.valueOf((String) stu_holder).longValue() : Constants.TIME_UNITS_PER_S;
+    double timeFactor = new Double(Constants.TIME_UNITS_PER_S) / stu;
+
+    List<GeoTimeSerie> res = new ArrayList<>(schema.getFields().size() - 1);
+    List<FieldVector> valueVectors = new ArrayList<>(schema.getFields().size() - 1);
+    for (FieldVector vector: root.getFieldVectors()) {
+      if (vector == timestampVector) {
+        continue;
       }
+
+      GeoTimeSerie gts = new GeoTimeSerie();
+      gts.setMetadata(retrieveGtsMetadata(vector.getField().getMetadata()));
+      res.add(gts);
+      valueVectors.add(vector);
     }
 
-    return gts;
+    while (reader.loadNextBatch()) {
+      BigIntVector ticks = (BigIntVector) timestampVector;
+
+      for (int j = 0; j < valueVectors.size(); j++) {
+        FieldVector vector = valueVectors.get(j);
+        GeoTimeSerie gts = res.get(j);
+
+        for (int i = 0; i < root.getRowCount(); i++) {
+          if (vector.isNull(i)) {
+            continue;
+          }
+
+          long tick = ticks.get(i);
+          if (timeFactor != 1.0D) {
+            tick = new Double(tick * timeFactor).longValue();
+          }
+
+          Object value = vector.getObject(i);
+          if (value instanceof Text) {
+            value = value.toString();
+          }
+
+          GTSHelper.setValue(gts, tick, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, value, false);
+        }
+      }
+    }
+
+    return res;
   }
 
   //
@@ -309,10 +498,13 @@ public class ArrowReaders {
   private enum ENCODER_VALUE_TYPE{
     LONG,
     DOUBLE,
-    //BIG_DECIMAL,
+    DECIMAL,
     BOOLEAN,
     UTF8,
-    BINARY
+    LARGE_UTF8,
+    BINARY,
+    LARGE_BINARY,
+    FIXED_SIZE_BINARY
   }
 
   public static GTSEncoder arrowStreamToGtsEncoder(ArrowReader reader) throws IOException, WarpScriptException {
@@ -327,129 +519,170 @@ public class ArrowReaders {
     encoder.setMetadata(retrieveGtsMetadata(schema));
 
     //
-    // Retrieve fields
+    // Read data points
     //
 
-    FieldVector timestampVector = root.getVector(TIMESTAMPS_KEY);
-    FieldVector latitudeVector =  root.getVector(LATITUDE_KEY);
-    FieldVector longitudeVector =  root.getVector(LONGITUDE_KEY);
-    FieldVector elevationVector =  root.getVector(ELEVATION_KEY);
-    FieldVector longVector =  root.getVector(LONG_VALUES_KEY);
-    FieldVector doubleVector =  root.getVector(DOUBLE_VALUES_KEY);
-    //FieldVector bigDecimalValuesVector =  root.getVector(BIGDECIMAL_VALUES_KEY);
-    //FieldVector bigDecimalScalesVector =  root.getVector(BIGDECIMAL_SCALES_KEY);
-    FieldVector booleanVector =  root.getVector(BOOLEAN_VALUES_KEY);
-    FieldVector utf8Vector =  root.getVector(STRING_VALUES_KEY);
-    FieldVector bytesVector =  root.getVector(BYTES_VALUES_KEY);
+    while (reader.loadNextBatch()) {
+      new EncoderBatchPlan(root).addRows(encoder);
+    }
 
-    //
-    // Retrieve time unit per seconds
-    //
+    return encoder;
+  }
 
-    Object stu_holder = schema.getCustomMetadata().get(STU);
-    long stu = stu_holder != null ? Long.valueOf((String) stu_holder).longValue() : Constants.TIME_UNITS_PER_S;
-    double timeFactor = new Double(stu) / Constants.TIME_UNITS_PER_S;
+  /**
+   * How to add the rows of the current batch to a GTSEncoder: the columns present in the batch and the type of each
+   * value column holding values, chosen once per batch so that rows are read through the typed accessors of the
+   * vectors instead of their boxing readers.
+   */
+  private static final class EncoderBatchPlan {
+
+    private final int rowCount;
+    private final double timeFactor;
+    private final BigIntVector timestamps;
+    private final Float4Vector latitudes;
+    private final Float4Vector longitudes;
+    private final BigIntVector elevations;
+    private final FieldVector[] values;
+    private final ENCODER_VALUE_TYPE[] types;
+
+    EncoderBatchPlan(VectorSchemaRoot root) throws WarpScriptException {
+      this.rowCount = root.getRowCount();
+      this.timeFactor = timeFactor(root.getSchema());
+
+      if (rowCount > 0 && !(root.getVector(TIMESTAMPS_KEY) instanceof BigIntVector)) {
+        throw new WarpScriptException("A 64-bit integer " + TIMESTAMPS_KEY + " field is required to convert to GTSENCODER.");
+      }
 
-    //
-    // Read data points
-    //
+      timestamps = (BigIntVector) root.getVector(TIMESTAMPS_KEY);
+      latitudes = (Float4Vector) root.getVector(LATITUDE_KEY);
+      longitudes = (Float4Vector) root.getVector(LONGITUDE_KEY);
+      elevations = (BigIntVector) root.getVector(ELEVATION_KEY);
 
-    while (reader.loadNextBatch()) {
+      //
+      // Value columns without any value in this batch are left out
+      //
 
-      for (int i = 0; i < root.getRowCount(); i++) {
+      List<FieldVector> vectors = new ArrayList<>(6);
+      List<ENCODER_VALUE_TYPE> vectorTypes = new ArrayList<>(6);
+      for (String key: new String[] {LONG_VALUES_KEY, DOUBLE_VALUES_KEY, DECIMAL_VALUES_KEY, BOOLEAN_VALUES_KEY, STRING_VALUES_KEY, BYTES_VALUES_KEY}) {
+        FieldVector vector = root.getVector(key);
+        if (null == vector || vector.getNullCount() == rowCount) {
+          continue;
+        }
+
+        vectors.add(vector);
+        vectorTypes.add(valueType(vector));
+      }
+
+      values = vectors.toArray(new FieldVector[vectors.size()]);
+      types = vectorTypes.toArray(new ENCODER_VALUE_TYPE[vectorTypes.size()]);
+    }
+
+    /**
+     * @return the factor converting the timestamps of a stream to platform time units, from the time units per second
+     * stored in its metadata
+     */
+    private static double timeFactor(Schema schema) {
+      String stu = null == schema.getCustomMetadata() ? null : schema.getCustomMetadata().get(STU);
+      return null == stu ? 1.0D : new Double(Constants.TIME_UNITS_PER_S) / Long.parseLong(stu);
+    }
+
+    private static ENCODER_VALUE_TYPE valueType(FieldVector vector) throws WarpScriptException {
+      if (vector instanceof BigIntVector) {
+        return ENCODER_VALUE_TYPE.LONG;
+      } else if (vector instanceof Float8Vector) {
+        return ENCODER_VALUE_TYPE.DOUBLE;
+      } else if (vector instanceof DecimalVector) {
+        return ENCODER_VALUE_TYPE.DECIMAL;
+      } else if (vector instanceof BitVector) {
+        return ENCODER_VALUE_TYPE.BOOLEAN;
+      } else if (vector instanceof VarCharVector) {
+        return ENCODER_VALUE_TYPE.UTF8;
+      } else if (vector instanceof LargeVarCharVector) {
+        return ENCODER_VALUE_TYPE.LARGE_UTF8;
+      } else if (vector instanceof VarBinaryVector) {
+        return ENCODER_VALUE_TYPE.BINARY;
+      } else if (vector instanceof LargeVarBinaryVector) {
+        return ENCODER_VALUE_TYPE.LARGE_BINARY;
+      } else if (vector instanceof FixedSizeBinaryVector) {
+        return ENCODER_VALUE_TYPE.FIXED_SIZE_BINARY;
+      }
+
+      throw new WarpScriptException("Value field " + vector.getField().getName() + " has unexpected type " + vector.getField().getType() + ".");
+    }
 
-        timestampVector.getReader().setPosition(i);
+    private Object read(int column, int index) {
+      FieldVector vector = values[column];
+
+      switch (types[column]) {
+        case LONG:
+          return ((BigIntVector) vector).get(index);
+        case DOUBLE:
+          return ((Float8Vector) vector).get(index);
+        case DECIMAL:
+          return ArrowHelper.getDecimal(vector.getDataBuffer(), index, ((DecimalVector) vector).getScale());
+        case BOOLEAN:
+          return 1 == ((BitVector) vector).get(index);
+        case UTF8:
+          return new String(((VarCharVector) vector).get(index), StandardCharsets.UTF_8);
+        case LARGE_UTF8:
+          return new String(((LargeVarCharVector) vector).get(index), StandardCharsets.UTF_8);
+        case BINARY:
+          return ((VarBinaryVector) vector).get(index);
+        case LARGE_BINARY:
+          return ((LargeVarBinaryVector) vector).get(index);
+        default: // FIXED_SIZE_BINARY
+          return ((FixedSizeBinaryVector) vector).get(index);
+      }
+    }
+
+    void addRows(GTSEncoder encoder) throws IOException, WarpScriptException {
+
+      // a single value column without null needs no check of the other columns
+      boolean singleType = 1 == values.length && 0 == values[0].getNullCount();
 
-        if (null == timestampVector.getReader().readLong()) {
+      for (int i = 0; i < rowCount; i++) {
+
+        if (timestamps.isNull(i)) {
           throw new WarpScriptException("Failed index: " + i);
         }
 
-
-        long tick = timestampVector.getReader().readLong().longValue();
+        long tick = timestamps.get(i);
         if (timeFactor != 1.0D) {
           tick = new Double(tick * timeFactor).longValue();
         }
 
         long location = GeoTimeSerie.NO_LOCATION;
-        if (null != latitudeVector && null != longitudeVector) {
-          latitudeVector.getReader().setPosition(i);
-          longitudeVector.getReader().setPosition(i);
-          location = GeoXPLib.toGeoXPPoint(latitudeVector.getReader().readFloat(), longitudeVector.getReader().readFloat());
+        if (null != latitudes && null != longitudes && !latitudes.isNull(i) && !longitudes.isNull(i)) {
+          location = GeoXPLib.toGeoXPPoint(latitudes.get(i), longitudes.get(i));
         }
 
         long elevation = GeoTimeSerie.NO_ELEVATION;
-        if (null != elevationVector) {
-          elevationVector.getReader().setPosition(i);
-          elevation = elevationVector.getReader().readLong();
+        if (null != elevations && !elevations.isNull(i)) {
+          elevation = elevations.get(i);
         }
 
         //
         // Value
         //
 
-        ENCODER_VALUE_TYPE type = null;
-        Object value;
-        Object read;
-
-        longVector.getReader().setPosition(i);
-        value = longVector.getReader().readObject();
-        if (null != value) {
-          type = ENCODER_VALUE_TYPE.LONG;
-        }
-
-        doubleVector.getReader().setPosition(i);
-        read = doubleVector.getReader().readObject();
-        if (null != read) {
-          if (null != type) {
-            throw new WarpScriptException("GTS encoder received a non binary value with multiple types.");
-          }
-
-          value = read;
-          type = ENCODER_VALUE_TYPE.DOUBLE;
-        }
-
-        doubleVector.getReader().setPosition(i);
-        read = doubleVector.getReader().readObject();
-        if (null != read) {
-          if (null != type) {
-            throw new WarpScriptException("GTS encoder received a non binary value with multiple types.");
-          }
-
-          value = read;
-          type = ENCODER_VALUE_TYPE.DOUBLE;
-        }
+        Object value = null;
 
-        booleanVector.getReader().setPosition(i);
-        read = booleanVector.getReader().readObject();
-        if (null != read) {
-          if (null != type) {
-            throw new WarpScriptException("GTS encoder received a non binary value with multiple types.");
-          }
+        if (singleType) {
+          value = read(0, i);
 
-          value = read;
-          type = ENCODER_VALUE_TYPE.BOOLEAN;
-        }
-
-        utf8Vector.getReader().setPosition(i);
-        read = utf8Vector.getReader().readObject();
-        if (null != read) {
-          if (null != type) {
-            throw new WarpScriptException("GTS encoder received a non binary value with multiple types.");
-          }
+        } else {
+          for (int j = 0; j < values.length; j++) {
+            if (values[j].isNull(i)) {
+              continue;
+            }
 
-          value = read;
-          type = ENCODER_VALUE_TYPE.UTF8;
-        }
+            if (null != value) {
+              throw new WarpScriptException("GTS encoder received a non binary value with multiple types.");
+            }
 
-        bytesVector.getReader().setPosition(i);
-        read = bytesVector.getReader().readObject();
-        if (null != read) {
-          if (null != type) {
-            throw new WarpScriptException("GTS encoder received a non binary value with multiple types.");
+            value = read(j, i);
           }
-
-          value = read;
-          type = ENCODER_VALUE_TYPE.BINARY;
         }
 
         if (null == value) {
@@ -459,8 +692,6 @@ public class ArrowReaders {
         encoder.addValue(tick, location, elevation, value);
       }
     }
-
-    return encoder;
   }
 
   //
@@ -497,124 +728,633 @@ public class ArrowReaders {
 
     VectorSchemaRoot root = reader.getVectorSchemaRoot();
     Map<String, List> res = new HashMap<String, List>();
-    Schema schema = root.getSchema();
     Map<Long, Dictionary> dictionaries = reader.getDictionaryVectors();
+    Map<Long, DecodedDictionary> decodedDictionaries = new HashMap<Long, DecodedDictionary>();
 
     while (reader.loadNextBatch()) {
+      readBatchToMapOfLists(root, dictionaries, decodedDictionaries, res);
+    }
+    return  res;
+  }
+
+  /**
+   * Append the rows of the batch currently loaded in root to the columns of res
+   * @param root
+   * @param dictionaries dictionaries of the reader
+   * @param decodedDictionaries decoded values of the dictionaries, reused from one batch to the next
+   * @param res
+   * @throws WarpScriptException
+   */
+  private static void readBatchToMapOfLists(VectorSchemaRoot root, Map<Long, Dictionary> dictionaries, Map<Long, DecodedDictionary> decodedDictionaries, Map<String, List> res) throws WarpScriptException {
+
+    Schema schema = root.getSchema();
+
+    if (0 == root.getRowCount()) {
+      return;
+    }
+
+    for (Field field: schema.getFields()) {
+      String name = field.getName();
+      if (null == res.get(name)) {
+        res.put(name, new ArrayList<String>());
+      }
+
+      //
+      // Dictionary-encoded columns map their indices to the values of their dictionary, decoded once.
+      // The vector of such a column holds the indices, whatever the type of the field.
+      //
+
+      if (null != field.getDictionary()) {
+        long id = field.getDictionary().getId();
+        DecodedDictionary decoded = decodedDictionaries.get(id);
+
+        if (null == decoded || !decoded.isCurrent(dictionaries.get(id))) {
+          decoded = new DecodedDictionary(dictionaries.get(id));
+          decodedDictionaries.put(id, decoded);
+        }
+
+        readDictionaryEncodedColumn(root.getVector(name), root.getRowCount(), decoded.values, res.get(name));
+        continue;
+      }
+
+      //
+      // Temporal columns are converted in bulk from their data buffer
+      //
+
+      if (isTemporal(field.getFieldType().getType())) {
+        readTemporalColumn(root.getVector(name), root.getRowCount(), res.get(name));
+        continue;
+      }
+
+      //
+      // Integer and floating point columns are widened to LONG and DOUBLE straight from their data buffer
+      //
+
+      if (ArrowType.ArrowTypeID.Int == field.getFieldType().getType().getTypeID()) {
+        readIntColumn(root.getVector(name), root.getRowCount(), res.get(name));
+        continue;
+      }
+
+      if (ArrowType.ArrowTypeID.FloatingPoint == field.getFieldType().getType().getTypeID()) {
+        readFloatingPointColumn(root.getVector(name), root.getRowCount(), res.get(name));
+        continue;
+      }
+
+      //
+      // Decimal columns are read straight from their data buffer
+      //
+
+      if (ArrowType.ArrowTypeID.Decimal == field.getFieldType().getType().getTypeID()) {
+        readDecimalColumn(root.getVector(name), root.getRowCount(), res.get(name));
+        continue;
+      }
+
+      //
+      // Nested columns are converted as a whole
+      //
+
+      if (isNested(field.getFieldType().getType())) {
+        readNestedColumn(root.getVector(name), root.getRowCount(), res.get(name));
+        continue;
+      }
 
       for (int i = 0; i < root.getRowCount(); i++) {
 
-        for (Field field: schema.getFields()) {
-          String name = field.getName();
-          if (null == res.get(name)) {
-            res.put(name, new ArrayList<String>());
+        root.getVector(name).getReader().setPosition(i);
+        if (!root.getVector(name).getReader().isSet()) {
+          res.get(name).add(null);
+
+        } else {
+
+          switch (field.getFieldType().getType().getTypeID()) {
+
+            case Utf8:
+
+              res.get(name).add(root.getVector(name).getReader().readText().toString());
+              break;
+
+            case Binary:
+
+              res.get(name).add(Base64.getEncoder().encodeToString(root.getVector(name).getReader().readByteArray()));
+              break;
+
+            case LargeUtf8:
+
+              res.get(name).add(root.getVector(name).getObject(i).toString());
+              break;
+
+            case LargeBinary:
+
+              res.get(name).add(Base64.getEncoder().encodeToString((byte[]) root.getVector(name).getObject(i)));
+              break;
+
+            case Bool:
+
+              res.get(name).add(root.getVector(name).getReader().readByte() == 1);
+              break;
+
+            case FixedSizeBinary:
+
+              res.get(name).add(Base64.getEncoder().encodeToString(((FixedSizeBinaryVector) root.getVector(name)).get(i)));
+              break;
+
+            case Null:
+            case Union:
+            case NONE:
+              if (true)
+                throw new WarpScriptException(field.getFieldType().getType().getTypeID().name() + " Arrow type not supported");
+              break;
+          }
+        }
+      }
+    }
+  }
+
+  //
+  // Batch by batch
+  //
+
+  /**
+   * Receives the record batches of a stream, decoded one at a time
+   */
+  public interface BatchConsumer {
+    void accept(Object batch) throws WarpScriptException;
+  }
+
+  /**
+   * Decode the record batches of a stream one at a time and pass each of them to a consumer, so that a stream of any
+   * size can be processed in constant memory. The VectorSchemaRoot of the reader is reused from one batch to the next.
+   *
+   * A batch is decoded as a GTS that holds the data points of this batch if the stream was written in GTS conversion
+   * mode and mapListOutput is false, else as a PAIR list [metadata, columns].
+   *
+   * @param reader
+   * @param mapListOutput
+   * @param consumer
+   * @throws IOException
+   * @throws WarpScriptException
+   */
+  public static void forEachBatch(ArrowReader reader, boolean mapListOutput, BatchConsumer consumer) throws IOException, WarpScriptException {
+
+    VectorSchemaRoot root = reader.getVectorSchemaRoot();
+    Map<String, String> metadata = root.getSchema().getCustomMetadata();
+
+    if (!mapListOutput && TYPEOF.typeof(GeoTimeSerie.class).equals(metadata.get(MODE))) {
+
+      while (reader.loadNextBatch()) {
+        GeoTimeSerie gts = newGts(root.getSchema());
+        readGtsBatch(root, gts);
+        consumer.accept(gts);
+      }
+
+    } else {
+
+      Map<Long, Dictionary> dictionaries = reader.getDictionaryVectors();
+      Map<Long, DecodedDictionary> decodedDictionaries = new HashMap<Long, DecodedDictionary>();
+
+      while (reader.loadNextBatch()) {
+        Map<String, List> columns = new HashMap<String, List>();
+        readBatchToMapOfLists(root, dictionaries, decodedDictionaries, columns);
+
+        List<Object> pair = new ArrayList<Object>(2);
+        pair.add(new HashMap<String, String>(metadata));
+        pair.add(columns);
+        consumer.accept(pair);
+      }
+    }
+  }
+
+  //
+  // Dictionary-encoded columns
+  //
+
+  /**
+   * The values of a dictionary of Strings, decoded once and shared by every row that references them.
+   * A reader loads a dictionary batch into new buffers, so the decoded values are current as long as the dictionary
+   * vector holds the same data buffer.
+   */
+  private static class DecodedDictionary {
+
+    private final ArrowBuf dataBuffer;
+    private final String[] values;
+
+    DecodedDictionary(Dictionary dictionary) throws WarpScriptException {
+      dataBuffer = dictionary.getVector().getDataBuffer();
+      values = ArrowHelper.decodeDictionary(dictionary);
+    }
+
+    boolean isCurrent(Dictionary dictionary) {
+      return dataBuffer == dictionary.getVector().getDataBuffer() && values.length == dictionary.getVector().getValueCount();
+    }
+  }
+
+  /**
+   * Append the values of a column of dictionary indices
+   *
+   * @param vector the index vector
+   * @param rowCount number of rows of the current batch
+   * @param values the decoded dictionary
+   * @param column the list to which the values (or null) are appended
+   */
+  private static void readDictionaryEncodedColumn(FieldVector vector, int rowCount, String[] values, List column) {
+    BaseIntVector indices = (BaseIntVector) vector;
+
+    for (int i = 0; i < rowCount; i++) {
+      column.add(vector.isNull(i) ? null : values[(int) indices.getValueAsLong(i)]);
+    }
+  }
+
+  //
+  // Temporal types
+  //
+
+  private static boolean isTemporal(ArrowType type) {
+    switch (type.getTypeID()) {
+      case Date:
+      case Time:
+      case Timestamp:
+      case Interval:
+      case Duration:
+        return true;
+
+      default:
+        return false;
+    }
+  }
+
+  private static long unitsPerSecond(TimeUnit unit) {
+    switch (unit) {
+      case SECOND:
+        return 1L;
+
+      case MILLISECOND:
+        return 1000L;
+
+      case MICROSECOND:
+        return 1000000L;
+
+      case NANOSECOND:
+      default:
+        return 1000000000L;
+    }
+  }
+
+  /**
+   * Convert a whole Date, Time, Timestamp, Interval or Duration column into ticks in the platform time unit.
+   * Values are read straight from the data buffer, the scaling factor is computed once per column.
+   *
+   * @param vector the temporal vector
+   * @param rowCount number of rows of the current batch
+   * @param column the list to which the ticks (or null) are appended
+   * @throws WarpScriptException
+   */
+  public static void readTemporalColumn(FieldVector vector, int rowCount, List column) throws WarpScriptException {
+
+    ArrowType type = vector.getField().getFieldType().getType();
+
+    long sourceUnitsPerSecond;
+    long sourceMultiplier = 1L; // applied before unit conversion (days to seconds)
+    int typeWidth = 8;
+
+    switch (type.getTypeID()) {
+
+      case Timestamp:
+        sourceUnitsPerSecond = unitsPerSecond(((ArrowType.Timestamp) type).getUnit());
+        break;
+
+      case Duration:
+        sourceUnitsPerSecond = unitsPerSecond(((ArrowType.Duration) type).getUnit());
+        break;
+
+      case Time:
+        sourceUnitsPerSecond = unitsPerSecond(((ArrowType.Time) type).getUnit());
+        typeWidth = ((ArrowType.Time) type).getBitWidth() / 8;
+        break;
+
+      case Date:
+        if (DateUnit.DAY == ((ArrowType.Date) type).getUnit()) {
+          sourceUnitsPerSecond = 1L;
+          sourceMultiplier = 86400L;
+          typeWidth = 4;
+        } else {
+          sourceUnitsPerSecond = 1000L;
+        }
+        break;
+
+      case Interval:
+        if (IntervalUnit.DAY_TIME != ((ArrowType.Interval) type).getUnit()) {
+          throw new WarpScriptException("Interval Arrow type with unit " + ((ArrowType.Interval) type).getUnit().name() + " can not be converted to ticks.");
+        }
+
+        // days (int32) followed by milliseconds (int32), handled below
+        sourceUnitsPerSecond = 1000L;
+        break;
+
+      default:
+        throw new WarpScriptException(type.getTypeID().name() + " is not a temporal Arrow type.");
+    }
+
+    //
+    // Scaling factor from source units to platform units, both being powers of ten
+    //
+
+    long mul = 1L;
+    long div = 1L;
+    if (sourceUnitsPerSecond <= Constants.TIME_UNITS_PER_S) {
+      mul = Constants.TIME_UNITS_PER_S / sourceUnitsPerSecond;
+    } else {
+      div = sourceUnitsPerSecond / Constants.TIME_UNITS_PER_S;
+    }
+    mul *= sourceMultiplier;
+
+    ArrowBuf data = vector.getDataBuffer();
+    boolean isDayTimeInterval = ArrowType.ArrowTypeID.Interval == type.getTypeID();
+
+    for (int i = 0; i < rowCount; i++) {
+
+      if (vector.isNull(i)) {
+        column.add(null);
+        continue;
+      }
+
+      long raw;
+      if (isDayTimeInterval) {
+        raw = data.getInt((long) i * 8) * 86400000L + data.getInt((long) i * 8 + 4);
+      } else if (4 == typeWidth) {
+        raw = data.getInt((long) i * 4);
+      } else {
+        raw = data.getLong((long) i * 8);
+      }
+
+      column.add(raw * mul / div);
+    }
+  }
+
+  //
+  // Numeric types
+  //
+
+  /**
+   * Convert a whole Int column, signed or unsigned, of 8, 16, 32 or 64 bits, into LONG values. Values are read straight
+   * from the data buffer with a loop specialized for the width and the signedness of the column.
+   *
+   * @param vector the Int vector
+   * @param rowCount number of rows of the current batch
+   * @param column the list to which the values (or null) are appended
+   * @throws WarpScriptException if an unsigned 64-bit value exceeds the range of LONG
+   */
+  public static void readIntColumn(FieldVector vector, int rowCount, List column) throws WarpScriptException {
+
+    ArrowType.Int type = (ArrowType.Int) vector.getField().getFieldType().getType();
+    ArrowBuf data = vector.getDataBuffer();
+    boolean signed = type.getIsSigned();
+
+    switch (type.getBitWidth()) {
+      case 8:
+        for (int i = 0; i < rowCount; i++) {
+          if (vector.isNull(i)) {
+            column.add(null);
+          } else {
+            byte b = data.getByte(i);
+            column.add(signed ? (long) b : (long) (b & 0xFF));
           }
+        }
+        break;
 
-          root.getVector(name).getReader().setPosition(i);
-          if (!root.getVector(name).getReader().isSet()) {
-            res.get(name).add(null);
+      case 16:
+        for (int i = 0; i < rowCount; i++) {
+          if (vector.isNull(i)) {
+            column.add(null);
+          } else {
+            short v = data.getShort((long) i * 2);
+            column.add(signed ? (long) v : (long) (v & 0xFFFF));
+          }
+        }
+        break;
 
+      case 32:
+        for (int i = 0; i < rowCount; i++) {
+          if (vector.isNull(i)) {
+            column.add(null);
           } else {
+            int v = data.getInt((long) i * 4);
+            column.add(signed ? (long) v : v & 0xFFFFFFFFL);
+          }
+        }
+        break;
+
+      case 64:
+        for (int i = 0; i < rowCount; i++) {
+          if (vector.isNull(i)) {
+            column.add(null);
+            continue;
+          }
+
+          long v = data.getLong((long) i * 8);
+          if (!signed && v < 0) {
+            throw new WarpScriptException("Unsigned 64-bit value " + Long.toUnsignedString(v) + " of column " + vector.getField().getName() + " exceeds the range of LONG.");
+          }
+          column.add(v);
+        }
+        break;
+
+      default:
+        throw new WarpScriptException("Int bit width other than 8, 16, 32 or 64 are not supported.");
+    }
+  }
+
+  /**
+   * Convert a whole 32 or 64-bit FloatingPoint column into DOUBLE values, read straight from the data buffer
+   *
+   * @param vector the FloatingPoint vector
+   * @param rowCount number of rows of the current batch
+   * @param column the list to which the values (or null) are appended
+   * @throws WarpScriptException
+   */
+  public static void readFloatingPointColumn(FieldVector vector, int rowCount, List column) throws WarpScriptException {
+
+    ArrowBuf data = vector.getDataBuffer();
+
+    switch (((ArrowType.FloatingPoint) vector.getField().getFieldType().getType()).getPrecision()) {
+      case SINGLE:
+        for (int i = 0; i < rowCount; i++) {
+          column.add(vector.isNull(i) ? null : (double) data.getFloat((long) i * 4));
+        }
+        break;
+
+      case DOUBLE:
+        for (int i = 0; i < rowCount; i++) {
+          column.add(vector.isNull(i) ? null : data.getDouble((long) i * 8));
+        }
+        break;
+
+      default:
+        throw new WarpScriptException("Floating point precision other than 32 or 64 bits are not supported.");
+    }
+  }
+
+  /**
+   * Convert a whole Decimal column into DOUBLE values, read from the data buffer with ArrowHelper.getDecimal
+   *
+   * @param vector the Decimal vector
+   * @param rowCount number of rows of the current batch
+   * @param column the list to which the values (or null) are appended
+   */
+  public static void readDecimalColumn(FieldVector vector, int rowCount, List column) {
+    ArrowBuf data = vector.getDataBuffer();
+    int scale = ((DecimalVector) vector).getScale();
+
+    for (int i = 0; i < rowCount; i++) {
+      column.add(vector.isNull(i) ? null : ArrowHelper.getDecimal(data, i, scale).doubleValue());
+    }
+  }
+
+  //
+  // Nested types
+  //
+
+  private static boolean isNested(ArrowType type) {
+    switch (type.getTypeID()) {
+      case List:
+      case FixedSizeList:
+      case Struct:
+      case Map:
+        return true;
+
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Convert a whole List, FixedSizeList, Struct or Map column into LISTs and MAPs. FixedSizeLists of floating point
+   * values are read in bulk from the data buffer of their child vector into VECTORs, nulls inside them becoming NaN.
+   *
+   * @param vector the nested vector
+   * @param rowCount number of rows of the current batch
+   * @param column the list to which the values (or null) are appended
+   * @throws WarpScriptException
+   */
+  public static void readNestedColumn(FieldVector vector, int rowCount, List column) throws WarpScriptException {
 
-            switch (field.getFieldType().getType().getTypeID()) {
-
-              case Int:
-
-                if (!((ArrowType.Int) field.getFieldType().getType()).getIsSigned()) {
-                  throw new RuntimeException("Unsigned int not supported.");
-                }
-
-                long val;
-                int bitWidth = ((ArrowType.Int) field.getFieldType().getType()).getBitWidth();
-                if (64 == bitWidth) {
-                  val = root.getVector(name).getReader().readLong().longValue();
-                } else if (32 == bitWidth) {
-                  val = root.getVector(name).getReader().readInteger().longValue();
-                } else if (16 == bitWidth) {
-                  val = root.getVector(name).getReader().readShort().longValue();
-                } else {
-                  throw new WarpScriptException("Int bit width other than 16, 32 or 64 are not supported.");
-                }
-
-                DictionaryEncoding encoding = field.getDictionary();
-                if (null == encoding) {
-                  res.get(name).add(val);
-                } else {
-                  if (!dictionaries.get(encoding.getId()).getVectorType().getTypeID().equals(ArrowType.Utf8.TYPE_TYPE)) {
-                    throw new WarpScriptException("Dictionary encoding only support String values.");
-                  }
-
-                  FieldVector vector = dictionaries.get(encoding.getId()).getVector();
-                  vector.getReader().setPosition((int) val);
-                  res.get(name).add(vector.getReader().readText().toString());
-
-                }
-
-                break;
-
-              case FloatingPoint:
-
-                switch (((ArrowType.FloatingPoint) field.getFieldType().getType()).getPrecision()) {
-                  case HALF:
-                    if (true)
-                      throw new WarpScriptException("Floating point precision other than 32 or 64 bits are not supported.");
-                    break;
-
-                  case SINGLE: // 32-bit
-                    res.get(name).add(root.getVector(name).getReader().readFloat().doubleValue());
-                    break;
-
-                  case DOUBLE: // 64-bit
-                    res.get(name).add(root.getVector(name).getReader().readDouble().doubleValue());
-                    break;
-                }
-                break;
-
-              case Utf8:
-
-                res.get(name).add(root.getVector(name).getReader().readText().toString());
-                break;
-
-              case Binary:
-
-                res.get(name).add(Base64.getEncoder().encodeToString(root.getVector(name).getReader().readByteArray()));
-                break;
-
-              case Bool:
-
-                res.get(name).add(root.getVector(name).getReader().readByte() == 1);
-                break;
-
-              case FixedSizeBinary:
-              case Decimal:
-                if (true)
-                  throw new WarpScriptException(field.getFieldType().getType().getTypeID().name() + " Arrow type not yet supported"); // TODO
-                break;
-
-              case Date:
-              case Time:
-              case Timestamp:
-              case Interval:
-              case Duration:
-                if (true)
-                  throw new WarpScriptException(field.getFieldType().getType().getTypeID().name() + " Arrow type not yet supported"); // maybe should support ?
-                break;
-
-              case Null:
-              case Struct:
-              case List:
-              case FixedSizeList:
-              case Union:
-              case Map:
-              case NONE:
-                if (true)
-                  throw new WarpScriptException(field.getFieldType().getType().getTypeID().name() + " Arrow type not supported");
-                break;
+    if (vector instanceof FixedSizeListVector) {
+      FixedSizeListVector vectors = (FixedSizeListVector) vector;
+      FieldVector child = vectors.getDataVector();
+
+      if (child instanceof Float8Vector || child instanceof Float4Vector) {
+        int dimension = vectors.getListSize();
+        ArrowBuf data = child.getDataBuffer();
+        boolean isDouble = child instanceof Float8Vector;
+
+        for (int i = 0; i < rowCount; i++) {
+          if (vector.isNull(i)) {
+            column.add(null);
+            continue;
+          }
+
+          double[] coordinates = new double[dimension];
+          for (int j = 0; j < dimension; j++) {
+            long index = (long) i * dimension + j;
+
+            if (child.isNull((int) index)) {
+              coordinates[j] = Double.NaN;
+            } else if (isDouble) {
+              coordinates[j] = data.getDouble(index * 8);
+            } else {
+              coordinates[j] = data.getFloat(index * 4);
             }
           }
+
+          column.add(new ArrayRealVector(coordinates, false));
         }
+        return;
       }
     }
-    return  res;
+
+    boolean isMap = vector instanceof MapVector;
+
+    for (int i = 0; i < rowCount; i++) {
+      Object value = toWarpScriptValue(vector.getObject(i), vector.getField());
+
+      //
+      // A map is a list of key/value structs
+      //
+
+      if (isMap && null != value) {
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        for (Object entry: (List) value) {
+          map.put(((Map) entry).get(MapVector.KEY_NAME), ((Map) entry).get(MapVector.VALUE_NAME));
+        }
+        value = map;
+      }
+
+      column.add(value);
+    }
+  }
+
+  /**
+   * @param value a value returned by getObject on a nested vector
+   * @param field the field of the vector, whose types tell signed integers from unsigned ones
+   * @return the value, with its lists, maps and scalar values converted into WarpScript types
+   * @throws WarpScriptException if an unsigned 64-bit value exceeds the range of LONG
+   */
+  private static Object toWarpScriptValue(Object value, Field field) throws WarpScriptException {
+
+    //
+    // getObject returns unsigned integers of 8, 32 and 64 bits as signed Byte, Integer and Long values
+    //
+
+    if (field.getType() instanceof ArrowType.Int && !((ArrowType.Int) field.getType()).getIsSigned()) {
+      if (value instanceof Byte) {
+        return (long) ((Byte) value & 0xFF);
+      } else if (value instanceof Integer) {
+        return (Integer) value & 0xFFFFFFFFL;
+      } else if (value instanceof Long && (Long) value < 0) {
+        throw new WarpScriptException("Unsigned 64-bit value " + Long.toUnsignedString((Long) value) + " of column " + field.getName() + " exceeds the range of LONG.");
+      }
+    }
+
+    if (null == value || value instanceof Long || value instanceof Double || value instanceof Boolean || value instanceof String || value instanceof byte[]) {
+      return value;
+
+    } else if (value instanceof Text) {
+      return value.toString();
+
+    } else if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+      return ((Number) value).longValue();
+
+    } else if (value instanceof Character) {
+      // 16-bit unsigned integers
+      return (long) ((Character) value).charValue();
+
+    } else if (value instanceof Float) {
+      return ((Float) value).doubleValue();
+
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).doubleValue();
+
+    } else if (value instanceof List) {
+      Field elementField = field.getChildren().get(0);
+      List<Object> list = new ArrayList<Object>(((List) value).size());
+      for (Object element: (List) value) {
+        list.add(toWarpScriptValue(element, elementField));
+      }
+      return list;
+
+    } else if (value instanceof Map) {
+      Map<String, Field> childFields = new HashMap<String, Field>();
+      for (Field child: field.getChildren()) {
+        childFields.put(child.getName(), child);
+      }
+
+      Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+      for (Map.Entry<Object, Object> entry: ((Map<Object, Object>) value).entrySet()) {
+        map.put(entry.getKey(), toWarpScriptValue(entry.getValue(), childFields.get(String.valueOf(entry.getKey()))));
+      }
+      return map;
+
+    } else {
+      throw new WarpScriptException("Nested values of class " + value.getClass().getSimpleName() + " are not supported.");
+    }
   }
 }
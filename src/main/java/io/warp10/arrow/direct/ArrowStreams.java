@@ -0,0 +1,1117 @@
+//
+// Copyright 2020 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.direct;
+
+import io.warp10.Revision;
+import io.warp10.arrow.ArrowExtension;
+import io.warp10.arrow.convert.Register;
+import io.warp10.continuum.store.Constants;
+import io.warp10.continuum.store.thrift.data.Metadata;
+import io.warp10.script.WarpScriptException;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.TransferPair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.warp10.arrow.direct.ArrowHelper.FIRSTTICK;
+import static io.warp10.arrow.direct.ArrowHelper.LASTTICK;
+import static io.warp10.arrow.direct.ArrowHelper.MODE;
+import static io.warp10.arrow.direct.ArrowHelper.REV;
+import static io.warp10.arrow.direct.ArrowHelper.STU;
+import static io.warp10.arrow.direct.ArrowHelper.TIMESTAMPS_KEY;
+
+/**
+ * Operations on Arrow streams that work on record batches, without decoding them into WarpScript objects
+ */
+public class ArrowStreams {
+
+  /**
+   * Check that two schemas have the same fields, in the same order, the same conversion mode and the same time units.
+   * In GTS and SERIES conversion modes, where the series metadata is stored in the schema, it must also be the same.
+   * Columns of strings are compatible whether they are dictionary encoded, whatever their index type, or not.
+   * @param reference
+   * @param schema
+   * @throws WarpScriptException
+   */
+  public static void checkCompatibility(Schema reference, Schema schema) throws WarpScriptException {
+
+    String referenceMode = null == reference.getCustomMetadata() ? null : reference.getCustomMetadata().get(MODE);
+    String mode = null == schema.getCustomMetadata() ? null : schema.getCustomMetadata().get(MODE);
+    if (null == referenceMode ? null != mode : !referenceMode.equals(mode)) {
+      throw new WarpScriptException("Incompatible Arrow schemas: conversion modes " + referenceMode + " and " + mode + " differ.");
+    }
+
+    String referenceStu = null == reference.getCustomMetadata() ? null : reference.getCustomMetadata().get(STU);
+    String stu = null == schema.getCustomMetadata() ? null : schema.getCustomMetadata().get(STU);
+    if (null != referenceStu && null != stu && !referenceStu.equals(stu)) {
+      throw new WarpScriptException("Incompatible Arrow schemas: time units " + referenceStu + " and " + stu + " per second differ.");
+    }
+
+    if (Register.GTS.equals(mode)) {
+      if (!sameSeries(ArrowReaders.retrieveGtsMetadata(reference), ArrowReaders.retrieveGtsMetadata(schema))) {
+        throw new WarpScriptException("Incompatible Arrow schemas: they hold different series.");
+      }
+
+    } else if (Register.SERIES.equals(mode)) {
+      List<Metadata> referenceSeries = ArrowReaders.retrieveSeriesMetadata(reference);
+      List<Metadata> series = ArrowReaders.retrieveSeriesMetadata(schema);
+
+      boolean same = referenceSeries.size() == series.size();
+      for (int i = 0; same && i < series.size(); i++) {
+        same = sameSeries(referenceSeries.get(i), series.get(i));
+      }
+
+      if (!same) {
+        throw new WarpScriptException("Incompatible Arrow schemas: they hold different series.");
+      }
+    }
+
+    List<Field> referenceFields = reference.getFields();
+    List<Field> fields = schema.getFields();
+
+    if (referenceFields.size() != fields.size()) {
+      throw new WarpScriptException("Incompatible Arrow schemas: they do not have the same number of fields.");
+    }
+
+    for (int i = 0; i < fields.size(); i++) {
+      Field referenceField = referenceFields.get(i);
+      Field field = fields.get(i);
+
+      boolean sameType = referenceField.getFieldType().getType().equals(field.getFieldType().getType())
+        && (null == referenceField.getDictionary()) == (null == field.getDictionary())
+        && referenceField.getChildren().equals(field.getChildren());
+
+      if (!referenceField.getName().equals(field.getName()) || !(sameType || (isStringColumn(referenceField) && isStringColumn(field)))) {
+        throw new WarpScriptException("Incompatible Arrow schemas: field " + referenceField + " differs from field " + field + ".");
+      }
+    }
+  }
+
+  /**
+   * @return true if two series have the same classname, labels and attributes
+   */
+  private static boolean sameSeries(Metadata reference, Metadata metadata) {
+    return (null == reference.getName() ? null == metadata.getName() : reference.getName().equals(metadata.getName()))
+      && asMap(reference.getLabels()).equals(asMap(metadata.getLabels()))
+      && asMap(reference.getAttributes()).equals(asMap(metadata.getAttributes()));
+  }
+
+  private static Map<String, String> asMap(Map<String, String> map) {
+    return null == map ? new HashMap<String, String>() : new HashMap<String, String>(map);
+  }
+
+  /**
+   * ->ARROW writes columns of strings either dictionary encoded, with an index type that depends on their cardinality,
+   * or as plain Utf8 columns. Dictionaries of this extension only hold strings.
+   */
+  private static boolean isStringColumn(Field field) {
+    return null != field.getDictionary() || field.getFieldType().getType() instanceof ArrowType.Utf8;
+  }
+
+  /**
+   * Output field of a column of several streams: the field of the first stream if it is the same in every stream.
+   * Otherwise the column is a column of strings: it is dictionary encoded with the widest index type if it is
+   * dictionary encoded in every stream, else it is a Utf8 column.
+   */
+  private static Field mergeFields(List<Field> fields) {
+    Field first = fields.get(0);
+    Field widest = first;
+    boolean same = true;
+    boolean encoded = true;
+
+    for (Field field: fields) {
+      same = same && first.equals(field);
+      encoded = encoded && null != field.getDictionary();
+
+      if (encoded && ((ArrowType.Int) field.getType()).getBitWidth() > ((ArrowType.Int) widest.getType()).getBitWidth()) {
+        widest = field;
+      }
+    }
+
+    if (same) {
+      return first;
+    }
+
+    if (encoded) {
+      ArrowType.Int indexType = (ArrowType.Int) widest.getType();
+      DictionaryEncoding encoding = new DictionaryEncoding(first.getDictionary().getId(), false, indexType);
+      return new Field(first.getName(), new FieldType(true, indexType, encoding, first.getMetadata()), null);
+    }
+
+    return new Field(first.getName(), new FieldType(true, new ArrowType.Utf8(), null, first.getMetadata()), null);
+  }
+
+  /**
+   * Check that the record batches of a stream can be handled independently of their position in the stream,
+   * which is not the case in SERIES conversion mode where the metadata of a series is indexed by batch.
+   * @param schema
+   * @throws WarpScriptException
+   */
+  static void checkBatchIndependence(Schema schema) throws WarpScriptException {
+    if (null != schema.getCustomMetadata() && Register.SERIES.equals(schema.getCustomMetadata().get(MODE))) {
+      throw new WarpScriptException("Arrow streams in conversion mode " + Register.SERIES + " are not supported, their series metadata is indexed by record batch.");
+    }
+  }
+
+  /**
+   * @return the custom metadata of the first schema, with the bounds of the timestamps of all the schemas, which are
+   * left out if one of the schemas has none
+   */
+  private static Map<String, String> mergeTickBounds(List<Schema> schemas) {
+    Map<String, String> first = schemas.get(0).getCustomMetadata();
+    if (null == first) {
+      return null;
+    }
+
+    Map<String, String> metadata = new HashMap<String, String>(first);
+    metadata.remove(FIRSTTICK);
+    metadata.remove(LASTTICK);
+
+    long firstTick = Long.MAX_VALUE;
+    long lastTick = Long.MIN_VALUE;
+    for (Schema schema: schemas) {
+      Map<String, String> custom = schema.getCustomMetadata();
+      if (null == custom || null == custom.get(FIRSTTICK) || null == custom.get(LASTTICK)) {
+        return metadata;
+      }
+
+      firstTick = Math.min(firstTick, Long.parseLong(custom.get(FIRSTTICK)));
+      lastTick = Math.max(lastTick, Long.parseLong(custom.get(LASTTICK)));
+    }
+
+    metadata.put(FIRSTTICK, String.valueOf(firstTick));
+    metadata.put(LASTTICK, String.valueOf(lastTick));
+    return metadata;
+  }
+
+  /**
+   * Concatenate Arrow streams of compatible schemas into a single Arrow stream.
+   * Record batches are transferred to the output without being decoded. The dictionaries of dictionary-encoded
+   * columns are unified, and indices are remapped only for the batches whose dictionary or index type differs from the
+   * unified one. A column of strings that is not dictionary encoded in every stream is decoded into a Utf8 column.
+   * The custom metadata of the first stream is kept, with the bounds of the timestamps of all the streams.
+   *
+   * @param inputs the Arrow streams
+   * @param out
+   * @throws WarpScriptException
+   */
+  public static void concat(List<InputStream> inputs, OutputStream out) throws WarpScriptException {
+
+    if (0 == inputs.size()) {
+      throw new WarpScriptException("At least one Arrow stream is needed.");
+    }
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("concat", 0, Long.MAX_VALUE);
+    List<ArrowStreamReader> readers = new ArrayList<ArrowStreamReader>(inputs.size());
+    List<Boolean> hasBatch = new ArrayList<Boolean>(inputs.size());
+    DictionaryProvider.MapDictionaryProvider dictionaryProvider = new DictionaryProvider.MapDictionaryProvider();
+    List<Dictionary> unifiedDictionaries = new ArrayList<Dictionary>();
+    VectorSchemaRoot root = null;
+
+    try {
+
+      //
+      // Read schemas. Loading the first batch also loads the dictionaries.
+      //
+
+      Schema schema = null;
+      List<Schema> schemas = new ArrayList<Schema>(inputs.size());
+      for (InputStream in: inputs) {
+        ArrowStreamReader reader = new ArrowStreamReader(in, allocator);
+        readers.add(reader);
+
+        Schema readerSchema = reader.getVectorSchemaRoot().getSchema();
+        checkBatchIndependence(readerSchema);
+        hasBatch.add(reader.loadNextBatch());
+        schemas.add(readerSchema);
+
+        if (null == schema) {
+          schema = readerSchema;
+        } else {
+          checkCompatibility(schema, readerSchema);
+        }
+      }
+
+      //
+      // Output schema
+      //
+
+      List<Field> fields = new ArrayList<Field>(schema.getFields().size());
+      for (int f = 0; f < schema.getFields().size(); f++) {
+        List<Field> columnFields = new ArrayList<Field>(schemas.size());
+        for (Schema readerSchema: schemas) {
+          columnFields.add(readerSchema.getFields().get(f));
+        }
+        fields.add(mergeFields(columnFields));
+      }
+      schema = new Schema(fields, mergeTickBounds(schemas));
+
+      //
+      // Unify dictionaries. remappings[r][f] is null if the indices of field f of reader r are kept as is.
+      // For columns decoded into Utf8 columns, decoded[r][f] holds the values of the dictionary of field f of reader r.
+      // sizes[r][f] is the size of the dictionary of field f of reader r when its remapping was computed: streams
+      // written by ->ARROW send a dictionary again once it has been extended, the remapping is then extended too.
+      //
+
+      int[][][] remappings = new int[readers.size()][fields.size()][];
+      byte[][][][] decoded = new byte[readers.size()][fields.size()][][];
+      int[][] sizes = new int[readers.size()][fields.size()];
+      UnifiedDictionary[] unified = new UnifiedDictionary[fields.size()];
+
+      for (int f = 0; f < fields.size(); f++) {
+        Field field = fields.get(f);
+
+        if (null != field.getDictionary()) {
+          Dictionary first = getDictionary(readers.get(0), f);
+          unified[f] = new UnifiedDictionary(field, new Dictionary(first.getVector().getField().createVector(allocator), field.getDictionary()));
+          unifiedDictionaries.add(unified[f].dictionary);
+          dictionaryProvider.put(unified[f].dictionary);
+        }
+
+        for (int r = 0; r < readers.size(); r++) {
+          if (null == schemas.get(r).getFields().get(f).getDictionary()) {
+            continue;
+          }
+
+          Dictionary dictionary = getDictionary(readers.get(r), f);
+          if (null != unified[f]) {
+            remappings[r][f] = unified[f].add(dictionary);
+          } else {
+            decoded[r][f] = decodeDictionaryBytes(dictionary);
+          }
+          sizes[r][f] = dictionary.getVector().getValueCount();
+        }
+      }
+
+      //
+      // Re-frame record batches
+      //
+
+      root = VectorSchemaRoot.create(schema, allocator);
+
+      try (DictionaryBatchStreamWriter writer = new DictionaryBatchStreamWriter(root, dictionaryProvider, out)) {
+
+        writer.start();
+
+        int[] written = new int[unifiedDictionaries.size()];
+        for (int d = 0; d < unifiedDictionaries.size(); d++) {
+          written[d] = unifiedDictionaries.get(d).getVector().getValueCount();
+        }
+
+        for (int r = 0; r < readers.size(); r++) {
+          ArrowStreamReader reader = readers.get(r);
+          VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+          boolean loaded = hasBatch.get(r);
+
+          while (loaded) {
+            for (int f = 0; f < fields.size(); f++) {
+              if (null != schemas.get(r).getFields().get(f).getDictionary()) {
+                Dictionary dictionary = getDictionary(reader, f);
+
+                if (dictionary.getVector().getValueCount() != sizes[r][f]) {
+                  if (null != unified[f]) {
+                    remappings[r][f] = unified[f].add(dictionary);
+                  } else {
+                    decoded[r][f] = decodeDictionaryBytes(dictionary);
+                  }
+                  sizes[r][f] = dictionary.getVector().getValueCount();
+                }
+              }
+            }
+
+            writer.writeExtendedDictionaries(unifiedDictionaries, written);
+
+            for (int f = 0; f < fields.size(); f++) {
+              FieldVector from = batch.getFieldVectors().get(f);
+              FieldVector to = root.getFieldVectors().get(f);
+
+              if (null != decoded[r][f]) {
+                decodeIndices(from, to, decoded[r][f], batch.getRowCount());
+              } else if (null == remappings[r][f] && from.getField().getType().equals(to.getField().getType())) {
+                from.makeTransferPair(to).transfer();
+              } else {
+                remapIndices(from, to, remappings[r][f], batch.getRowCount());
+              }
+            }
+
+            root.setRowCount(batch.getRowCount());
+            writer.writeBatch();
+            loaded = reader.loadNextBatch();
+          }
+        }
+
+        writer.end();
+      }
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      close(readers, root, unifiedDictionaries, allocator);
+    }
+  }
+
+  private static byte[][] decodeDictionaryBytes(Dictionary dictionary) throws WarpScriptException {
+    String[] values = ArrowHelper.decodeDictionary(dictionary);
+    byte[][] bytes = new byte[values.length][];
+
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = null == values[i] ? null : values[i].getBytes(StandardCharsets.UTF_8);
+    }
+
+    return bytes;
+  }
+
+  private static Dictionary getDictionary(ArrowStreamReader reader, int field) throws IOException {
+    long id = reader.getVectorSchemaRoot().getSchema().getFields().get(field).getDictionary().getId();
+    return reader.getDictionaryVectors().get(id);
+  }
+
+  /**
+   * The union of the dictionaries of a field over several streams
+   */
+  private static class UnifiedDictionary {
+
+    private final Field field;
+    private final Dictionary dictionary;
+    private final List<String> values = new ArrayList<String>();
+    private final Map<String, Integer> lookUps = new HashMap<String, Integer>();
+
+    UnifiedDictionary(Field field, Dictionary dictionary) {
+      this.field = field;
+      this.dictionary = dictionary;
+    }
+
+    /**
+     * Add the values of the dictionary of a stream
+     * @param input
+     * @return the remapping of the indices of the stream, or null if they are kept as is
+     * @throws WarpScriptException
+     */
+    int[] add(Dictionary input) throws WarpScriptException {
+      String[] decoded = ArrowHelper.decodeDictionary(input);
+
+      int[] remapping = new int[decoded.length];
+      boolean identity = true;
+      for (int i = 0; i < decoded.length; i++) {
+        Integer index = lookUps.get(decoded[i]);
+
+        if (null == index) {
+          index = values.size();
+          values.add(decoded[i]);
+          lookUps.put(decoded[i], index);
+        }
+
+        remapping[i] = index;
+        identity = identity && index == i;
+      }
+
+      int bitWidth = ((ArrowType.Int) field.getFieldType().getType()).getBitWidth();
+      if (values.size() > (1L << (bitWidth - 1))) {
+        throw new WarpScriptException("Unified dictionary of field " + field.getName() + " has " + values.size() + " values, which exceeds the capacity of its " + bitWidth + "-bit indices.");
+      }
+
+      VarCharVector vector = (VarCharVector) dictionary.getVector();
+      for (int i = vector.getValueCount(); i < values.size(); i++) {
+        if (null == values.get(i)) {
+          vector.setNull(i);
+        } else {
+          vector.setSafe(i, values.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      vector.setValueCount(values.size());
+
+      return identity ? null : remapping;
+    }
+  }
+
+  /**
+   * Extract rows [offset, offset + length) of an Arrow stream into a new Arrow stream.
+   * Record batches before the range are skipped using their row count, batches inside the range are transferred as is,
+   * and only the batches at the boundaries of the range are split. Dictionaries are kept as is.
+   *
+   * @param in the Arrow stream
+   * @param offset index of the first row to extract
+   * @param length number of rows to extract
+   * @param out
+   * @throws WarpScriptException
+   */
+  public static void slice(InputStream in, long offset, long length, OutputStream out) throws WarpScriptException {
+
+    if (offset < 0 || length < 0) {
+      throw new WarpScriptException("Offset and length of a slice must be positive.");
+    }
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("slice", 0, Long.MAX_VALUE);
+    List<ArrowStreamReader> readers = new ArrayList<ArrowStreamReader>(1);
+    VectorSchemaRoot root = null;
+
+    try {
+      ArrowStreamReader reader = new ArrowStreamReader(in, allocator);
+      readers.add(reader);
+
+      // loading the first batch also loads the dictionaries, which are written when the writer starts
+      VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+      checkBatchIndependence(batch.getSchema());
+      boolean loaded = reader.loadNextBatch();
+
+      root = VectorSchemaRoot.create(batch.getSchema(), allocator);
+
+      // dictionaries sent again by the input once extended are sent again in the output
+      List<Dictionary> dictionaries = new ArrayList<Dictionary>();
+      for (Field field: batch.getSchema().getFields()) {
+        if (null != field.getDictionary()) {
+          dictionaries.add(reader.getDictionaryVectors().get(field.getDictionary().getId()));
+        }
+      }
+
+      try (DictionaryBatchStreamWriter writer = new DictionaryBatchStreamWriter(root, reader, out)) {
+
+        writer.start();
+
+        int[] written = new int[dictionaries.size()];
+        for (int d = 0; d < dictionaries.size(); d++) {
+          written[d] = dictionaries.get(d).getVector().getValueCount();
+        }
+
+        long end = offset + length;
+        long batchStart = 0; // index of the first row of the current batch
+
+        while (loaded && batchStart < end) {
+          int rowCount = batch.getRowCount();
+
+          if (batchStart + rowCount > offset) {
+            int from = (int) Math.max(0L, offset - batchStart);
+            int to = (int) Math.min(rowCount, end - batchStart);
+
+            for (int f = 0; f < root.getFieldVectors().size(); f++) {
+              TransferPair transferPair = batch.getFieldVectors().get(f).makeTransferPair(root.getFieldVectors().get(f));
+
+              if (0 == from && rowCount == to) {
+                transferPair.transfer();
+              } else {
+                transferPair.splitAndTransfer(from, to - from);
+              }
+            }
+
+            root.setRowCount(to - from);
+            writer.writeExtendedDictionaries(dictionaries, written);
+            writer.writeBatch();
+          }
+
+          batchStart += rowCount;
+          loaded = batchStart < end && reader.loadNextBatch();
+        }
+
+        writer.end();
+      }
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      close(readers, root, new ArrayList<Dictionary>(0), allocator);
+    }
+  }
+
+  //
+  // Projection and time range selection
+  //
+
+  /**
+   * Extract some columns of the rows of an Arrow stream whose timestamp is in [start, end].
+   * The timestamps of each record batch are checked first: batches outside of the range are skipped and batches within
+   * the range are transferred as they are, only the rows of the batches across a bound of the range are copied.
+   * The metadata of the input and the dictionaries of the extracted columns are kept.
+   *
+   * @param in
+   * @param columns names of the columns to extract, in this order, or an empty list for all of them
+   * @param start first timestamp of the range, in platform time units
+   * @param end last timestamp of the range, in platform time units
+   * @param out
+   * @throws WarpScriptException
+   */
+  public static void select(InputStream in, List<String> columns, long start, long end, OutputStream out) throws WarpScriptException {
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("select input", 0, Long.MAX_VALUE);
+
+    try (ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+      select(reader, columns, start, end, out);
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      allocator.close();
+    }
+  }
+
+  /**
+   * Same as above, from a reader whose schema may have been read but whose record batches have not been loaded yet
+   */
+  public static void select(ArrowStreamReader reader, List<String> columns, long start, long end, OutputStream out) throws WarpScriptException {
+
+    if (start > end) {
+      throw new WarpScriptException("The start of the time range must not be after its end.");
+    }
+
+    boolean timeRange = Long.MIN_VALUE != start || Long.MAX_VALUE != end;
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("select", 0, Long.MAX_VALUE);
+    VectorSchemaRoot root = null;
+
+    try {
+      // loading the first batch also loads the dictionaries, which are written when the writer starts
+      VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+      Schema schema = batch.getSchema();
+      checkBatchIndependence(schema);
+      boolean loaded = reader.loadNextBatch();
+
+      //
+      // Projection
+      //
+
+      List<Integer> projection = new ArrayList<Integer>();
+      if (columns.isEmpty()) {
+        for (int f = 0; f < schema.getFields().size(); f++) {
+          projection.add(f);
+        }
+      } else {
+        for (String column: columns) {
+          int index = fieldIndex(schema, column);
+          if (index < 0) {
+            throw new WarpScriptException("Arrow stream has no column " + column + ".");
+          }
+          projection.add(index);
+        }
+      }
+
+      List<Field> fields = new ArrayList<Field>(projection.size());
+      List<Dictionary> dictionaries = new ArrayList<Dictionary>();
+      for (int f: projection) {
+        Field field = schema.getFields().get(f);
+        fields.add(field);
+
+        // dictionaries sent again by the input once extended are sent again in the output
+        if (null != field.getDictionary()) {
+          dictionaries.add(reader.getDictionaryVectors().get(field.getDictionary().getId()));
+        }
+      }
+
+      root = VectorSchemaRoot.create(new Schema(fields, schema.getCustomMetadata()), allocator);
+
+      //
+      // Time range, in the time units of the stream
+      //
+
+      FieldVector timestamps = null;
+      if (timeRange) {
+        timestamps = batch.getVector(TIMESTAMPS_KEY);
+        if (!(timestamps instanceof BigIntVector)) {
+          throw new WarpScriptException("Selecting a time range requires a 64-bit integer " + TIMESTAMPS_KEY + " column.");
+        }
+
+        String stu = null == schema.getCustomMetadata() ? null : schema.getCustomMetadata().get(STU);
+        if (null != stu && Long.parseLong(stu) != Constants.TIME_UNITS_PER_S) {
+          double factor = Long.parseLong(stu) / (double) Constants.TIME_UNITS_PER_S;
+          start = Long.MIN_VALUE == start ? start : (long) Math.ceil(start * factor);
+          end = Long.MAX_VALUE == end ? end : (long) Math.floor(end * factor);
+        }
+      }
+
+      List<TransferPair> copier = new ArrayList<TransferPair>(projection.size());
+      for (int f = 0; f < projection.size(); f++) {
+        copier.add(batch.getFieldVectors().get(projection.get(f)).makeTransferPair(root.getFieldVectors().get(f)));
+      }
+
+      try (DictionaryBatchStreamWriter writer = new DictionaryBatchStreamWriter(root, reader, out)) {
+
+        writer.start();
+
+        int[] written = new int[dictionaries.size()];
+        for (int d = 0; d < dictionaries.size(); d++) {
+          written[d] = dictionaries.get(d).getVector().getValueCount();
+        }
+
+        while (loaded) {
+          int rowCount = batch.getRowCount();
+
+          //
+          // Bounds of the timestamps of the batch
+          //
+
+          int inRange = rowCount;
+          if (timeRange) {
+            BigIntVector ticks = (BigIntVector) timestamps;
+            inRange = 0;
+            for (int i = 0; i < rowCount; i++) {
+              if (!ticks.isNull(i) && ticks.get(i) >= start && ticks.get(i) <= end) {
+                inRange++;
+              }
+            }
+          }
+
+          if (inRange == rowCount) {
+            for (TransferPair transferPair: copier) {
+              transferPair.transfer();
+            }
+
+          } else if (inRange > 0) {
+            BigIntVector ticks = (BigIntVector) timestamps;
+            int index = 0;
+            for (int i = 0; i < rowCount; i++) {
+              if (!ticks.isNull(i) && ticks.get(i) >= start && ticks.get(i) <= end) {
+                copyRow(copier, i, index++);
+              }
+            }
+          }
+
+          if (inRange > 0) {
+            root.setRowCount(inRange);
+            writer.writeExtendedDictionaries(dictionaries, written);
+            writer.writeBatch();
+            root.clear();
+          }
+
+          loaded = reader.loadNextBatch();
+        }
+
+        writer.end();
+      }
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      close(new ArrayList<ArrowStreamReader>(0), root, new ArrayList<Dictionary>(0), allocator);
+    }
+  }
+
+  private static int fieldIndex(Schema schema, String name) {
+    for (int f = 0; f < schema.getFields().size(); f++) {
+      if (name.equals(schema.getFields().get(f).getName())) {
+        return f;
+      }
+    }
+
+    return -1;
+  }
+
+  //
+  // Sorted-merge join on the timestamp column
+  //
+
+  public enum JoinType {
+    INNER,
+    OUTER,
+    ASOF
+  }
+
+  public static final int JOIN_BATCH_SIZE = 65536;
+
+  /**
+   * A cursor over the rows of an Arrow stream, in the order of its timestamp column
+   */
+  private static class JoinCursor {
+
+    private final ArrowStreamReader reader;
+    private final VectorSchemaRoot batch;
+    private final BigIntVector timestamps;
+    private int row;
+    private boolean exhausted;
+    private long tick;
+
+    JoinCursor(ArrowStreamReader reader, boolean loaded) throws WarpScriptException {
+      this.reader = reader;
+      batch = reader.getVectorSchemaRoot();
+
+      if (!(batch.getVector(TIMESTAMPS_KEY) instanceof BigIntVector)) {
+        throw new WarpScriptException("Arrow streams to be joined must have a '" + TIMESTAMPS_KEY + "' column of 64-bit integers.");
+      }
+
+      timestamps = (BigIntVector) batch.getVector(TIMESTAMPS_KEY);
+      row = -1;
+      exhausted = !loaded;
+      tick = Long.MIN_VALUE;
+    }
+
+    /**
+     * Move to the next row, loading the next batch if needed, and check the order of the timestamps
+     */
+    void advance() throws IOException, WarpScriptException {
+      row++;
+
+      while (!exhausted && row >= batch.getRowCount()) {
+        exhausted = !reader.loadNextBatch();
+        row = 0;
+      }
+
+      if (exhausted) {
+        return;
+      }
+
+      if (timestamps.isNull(row)) {
+        throw new WarpScriptException("Arrow streams to be joined can not have null timestamps.");
+      }
+
+      long next = timestamps.get(row);
+      if (next < tick) {
+        throw new WarpScriptException("Arrow streams to be joined must be sorted by increasing timestamps.");
+      }
+      tick = next;
+    }
+  }
+
+  /**
+   * Join Arrow streams on their timestamp column into a wide Arrow stream in PAIR mode.
+   * Each stream must be sorted by increasing timestamps, this is verified while its batches are read.
+   * The streams are read batch by batch, with one cursor per stream, so only one batch per stream is held in memory.
+   *
+   * The output has a timestamp column followed by the other columns of each stream, whose names are prefixed by the
+   * prefix of the stream and a dot.
+   * INNER: a row for each timestamp present in all streams.
+   * OUTER: a row for each timestamp present in any stream, with null values for the streams that lack it.
+   * ASOF: a row for each row of the first stream, with the values of the last row of each other stream whose timestamp is
+   * lower or equal.
+   *
+   * Rows that share a timestamp within a stream are not combined with all the rows of that timestamp in the other
+   * streams: the n-th row of each stream at a given timestamp are joined together. An INNER join leaves out the rows
+   * of a stream that has more rows at this timestamp than another stream, an OUTER join outputs them with null values
+   * for the other streams.
+   *
+   * @param inputs the Arrow streams
+   * @param prefixes the prefixes of the column names of each stream
+   * @param type
+   * @param out
+   * @throws WarpScriptException
+   */
+  public static void join(List<InputStream> inputs, List<String> prefixes, JoinType type, OutputStream out) throws WarpScriptException {
+
+    if (inputs.size() < 2) {
+      throw new WarpScriptException("At least two Arrow streams are needed.");
+    }
+
+    if (prefixes.size() != inputs.size()) {
+      throw new WarpScriptException("There must be as many prefixes as Arrow streams.");
+    }
+
+    BufferAllocator allocator = ArrowExtension.getRootAllocator().newChildAllocator("join", 0, Long.MAX_VALUE);
+    List<ArrowStreamReader> readers = new ArrayList<ArrowStreamReader>(inputs.size());
+    List<FieldVector> holders = new ArrayList<FieldVector>();
+    VectorSchemaRoot root = null;
+
+    try {
+
+      //
+      // Open the streams and build the output schema. Loading the first batch also loads the dictionaries.
+      //
+
+      List<JoinCursor> cursors = new ArrayList<JoinCursor>(inputs.size());
+      List<Field> fields = new ArrayList<Field>();
+      fields.add(Field.nullable(TIMESTAMPS_KEY, new ArrowType.Int(64, true)));
+      DictionaryProvider.MapDictionaryProvider dictionaryProvider = new DictionaryProvider.MapDictionaryProvider();
+      List<Dictionary> dictionaries = new ArrayList<Dictionary>();
+      long dictionaryId = 0;
+      String stu = null;
+
+      for (int r = 0; r < inputs.size(); r++) {
+        ArrowStreamReader reader = new ArrowStreamReader(inputs.get(r), allocator);
+        readers.add(reader);
+        Schema schema = reader.getVectorSchemaRoot().getSchema();
+        checkBatchIndependence(schema);
+        cursors.add(new JoinCursor(reader, reader.loadNextBatch()));
+
+        String readerStu = null == schema.getCustomMetadata() ? null : schema.getCustomMetadata().get(STU);
+        if (null != stu && null != readerStu && !stu.equals(readerStu)) {
+          throw new WarpScriptException("Arrow streams to be joined must have the same time units.");
+        }
+        stu = null == stu ? readerStu : stu;
+
+        for (Field field: schema.getFields()) {
+          if (TIMESTAMPS_KEY.equals(field.getName())) {
+            continue;
+          }
+
+          DictionaryEncoding encoding = field.getDictionary();
+          if (null != encoding) {
+            Dictionary dictionary = reader.getDictionaryVectors().get(encoding.getId());
+            encoding = new DictionaryEncoding(dictionaryId++, encoding.isOrdered(), encoding.getIndexType());
+            dictionaries.add(new Dictionary(dictionary.getVector(), encoding));
+            dictionaryProvider.put(dictionaries.get(dictionaries.size() - 1));
+          }
+
+          FieldType fieldType = new FieldType(true, field.getFieldType().getType(), encoding, field.getFieldType().getMetadata());
+          fields.add(new Field(prefixes.get(r) + "." + field.getName(), fieldType, field.getChildren()));
+        }
+      }
+
+      Map<String, String> metadata = new HashMap<String, String>();
+      metadata.put(MODE, Register.PAIR);
+      metadata.put(REV, Revision.REVISION);
+      metadata.put(STU, null == stu ? String.valueOf(Constants.TIME_UNITS_PER_S) : stu);
+
+      root = VectorSchemaRoot.create(new Schema(fields, metadata), allocator);
+      BigIntVector outTimestamps = (BigIntVector) root.getVector(TIMESTAMPS_KEY);
+
+      //
+      // Transfer pairs copy a cell of an input column to the output column. For ASOF joins, the last row of each input
+      // that is not the first is kept in holders, since its batch may have been replaced when it is emitted.
+      //
+
+      List<List<TransferPair>> copiers = new ArrayList<List<TransferPair>>(cursors.size());
+      List<List<TransferPair>> toHolders = new ArrayList<List<TransferPair>>(cursors.size());
+      List<List<TransferPair>> fromHolders = new ArrayList<List<TransferPair>>(cursors.size());
+      int column = 1;
+
+      for (int r = 0; r < cursors.size(); r++) {
+        List<TransferPair> copier = new ArrayList<TransferPair>();
+        List<TransferPair> toHolder = new ArrayList<TransferPair>();
+        List<TransferPair> fromHolder = new ArrayList<TransferPair>();
+
+        for (FieldVector vector: cursors.get(r).batch.getFieldVectors()) {
+          if (TIMESTAMPS_KEY.equals(vector.getName())) {
+            continue;
+          }
+
+          FieldVector target = root.getFieldVectors().get(column++);
+          copier.add(vector.makeTransferPair(target));
+
+          if (JoinType.ASOF == type && r > 0) {
+            FieldVector holder = vector.getField().createVector(allocator);
+            holders.add(holder);
+            toHolder.add(vector.makeTransferPair(holder));
+            fromHolder.add(holder.makeTransferPair(target));
+          }
+        }
+
+        copiers.add(copier);
+        toHolders.add(toHolder);
+        fromHolders.add(fromHolder);
+      }
+
+      //
+      // Merge
+      //
+
+      //
+      // Output dictionaries share the vectors of the input dictionaries, which are loaded again when an input sends an
+      // extended dictionary. Since ->ARROW only appends to dictionaries, indices copied earlier remain valid.
+      //
+
+      try (DictionaryBatchStreamWriter writer = new DictionaryBatchStreamWriter(root, dictionaryProvider, out)) {
+
+        writer.start();
+
+        int[] written = new int[dictionaries.size()];
+        for (int d = 0; d < dictionaries.size(); d++) {
+          written[d] = dictionaries.get(d).getVector().getValueCount();
+        }
+
+        for (JoinCursor cursor: cursors) {
+          cursor.advance();
+        }
+
+        int index = 0;
+        boolean[] matched = new boolean[cursors.size()];
+        boolean[] held = new boolean[cursors.size()];
+
+        while (true) {
+
+          if (JoinType.ASOF == type) {
+            JoinCursor first = cursors.get(0);
+            if (first.exhausted) {
+              break;
+            }
+
+            outTimestamps.setSafe(index, first.tick);
+            copyRow(copiers.get(0), first.row, index);
+
+            for (int r = 1; r < cursors.size(); r++) {
+              JoinCursor cursor = cursors.get(r);
+
+              while (!cursor.exhausted && cursor.tick <= first.tick) {
+                copyRow(toHolders.get(r), cursor.row, 0);
+                held[r] = true;
+                cursor.advance();
+              }
+
+              if (held[r]) {
+                copyRow(fromHolders.get(r), 0, index);
+              }
+            }
+
+            first.advance();
+
+          } else {
+
+            long tick = Long.MAX_VALUE;
+            boolean any = false;
+            boolean all = true;
+            for (JoinCursor cursor: cursors) {
+              if (cursor.exhausted) {
+                all = false;
+              } else {
+                tick = any ? Math.min(tick, cursor.tick) : cursor.tick;
+                any = true;
+              }
+            }
+
+            if (!any || (JoinType.INNER == type && !all)) {
+              break;
+            }
+
+            int nMatched = 0;
+            for (int r = 0; r < cursors.size(); r++) {
+              matched[r] = !cursors.get(r).exhausted && tick == cursors.get(r).tick;
+              nMatched += matched[r] ? 1 : 0;
+            }
+
+            boolean emit = JoinType.OUTER == type || nMatched == cursors.size();
+            if (emit) {
+              outTimestamps.setSafe(index, tick);
+            }
+
+            for (int r = 0; r < cursors.size(); r++) {
+              if (matched[r]) {
+                if (emit) {
+                  copyRow(copiers.get(r), cursors.get(r).row, index);
+                }
+                cursors.get(r).advance();
+              }
+            }
+
+            if (!emit) {
+              continue;
+            }
+          }
+
+          index++;
+          if (JOIN_BATCH_SIZE == index) {
+            root.setRowCount(index);
+            writer.writeExtendedDictionaries(dictionaries, written);
+            writer.writeBatch();
+            root.clear();
+            index = 0;
+          }
+        }
+
+        if (index > 0) {
+          root.setRowCount(index);
+          writer.writeExtendedDictionaries(dictionaries, written);
+          writer.writeBatch();
+        }
+
+        writer.end();
+      }
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      for (FieldVector holder: holders) {
+        holder.close();
+      }
+      close(readers, root, new ArrayList<Dictionary>(0), allocator);
+    }
+  }
+
+  private static void copyRow(List<TransferPair> copier, int from, int to) {
+    for (TransferPair transferPair: copier) {
+      transferPair.copyValueSafe(from, to);
+    }
+  }
+
+  /**
+   * Copy the dictionary indices of a batch through a remapping table, or as is if it is null
+   */
+  private static void remapIndices(FieldVector from, FieldVector to, int[] remapping, int rowCount) {
+    BaseIntVector source = (BaseIntVector) from;
+    BaseIntVector target = (BaseIntVector) to;
+
+    // allocateNew zeroes the validity buffer, so null values need no further work
+    ((BaseFixedWidthVector) to).allocateNew(rowCount);
+
+    for (int i = 0; i < rowCount; i++) {
+      if (!from.isNull(i)) {
+        int index = (int) source.getValueAsLong(i);
+        target.setWithPossibleTruncate(i, null == remapping ? index : remapping[index]);
+      }
+    }
+
+    to.setValueCount(rowCount);
+  }
+
+  /**
+   * Copy the values of the dictionary indices of a batch into a Utf8 column
+   */
+  private static void decodeIndices(FieldVector from, FieldVector to, byte[][] values, int rowCount) {
+    BaseIntVector source = (BaseIntVector) from;
+    VarCharVector target = (VarCharVector) to;
+
+    target.allocateNew(rowCount);
+
+    for (int i = 0; i < rowCount; i++) {
+      byte[] value = from.isNull(i) ? null : values[(int) source.getValueAsLong(i)];
+
+      if (null == value) {
+        target.setNull(i);
+      } else {
+        target.setSafe(i, value);
+      }
+    }
+
+    target.setValueCount(rowCount);
+  }
+
+  /**
+   * Release the buffers held by readers, root and dictionaries, then close the allocator
+   */
+  static void close(List<ArrowStreamReader> readers, VectorSchemaRoot root, List<Dictionary> dictionaries, BufferAllocator allocator) throws WarpScriptException {
+    try {
+      for (ArrowStreamReader reader: readers) {
+        reader.close();
+      }
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    } finally {
+      if (null != root) {
+        root.close();
+      }
+
+      for (Dictionary dictionary: dictionaries) {
+        dictionary.getVector().close();
+      }
+
+      allocator.close();
+    }
+  }
+}
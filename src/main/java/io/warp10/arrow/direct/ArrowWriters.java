@@ -28,27 +28,39 @@ import io.warp10.continuum.store.thrift.data.Metadata;
 import io.warp10.script.WarpScriptException;
 import io.warp10.script.functions.TYPEOF;
 import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseLargeVariableWidthVector;
+import org.apache.arrow.vector.BaseVariableWidthVector;
 import org.apache.arrow.vector.BigIntVector;
 import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DecimalVector;
 import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.FieldVector;
 import org.apache.arrow.vector.Float8Vector;
-import org.apache.arrow.vector.VarBinaryVector;
-import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.complex.BaseRepeatedValueVector;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.ipc.ArrowStreamWriter;
 import org.apache.arrow.vector.types.FloatingPointPrecision;
 import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
 import org.apache.arrow.vector.types.pojo.Schema;
-import org.apache.arrow.vector.util.Text;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
 import org.boon.json.JsonSerializer;
 import org.boon.json.JsonSerializerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -58,11 +70,16 @@ import static io.warp10.arrow.direct.ArrowHelper.BUCKETCOUNT;
 import static io.warp10.arrow.direct.ArrowHelper.BUCKETSPAN;
 import static io.warp10.arrow.direct.ArrowHelper.BYTES_VALUES_FIELD;
 import static io.warp10.arrow.direct.ArrowHelper.BYTES_VALUES_KEY;
+import static io.warp10.arrow.direct.ArrowHelper.DECIMAL_VALUES_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.DOUBLE_VALUES_FIELD;
 import static io.warp10.arrow.direct.ArrowHelper.DOUBLE_VALUES_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.ELEVATION_FIELD;
 import static io.warp10.arrow.direct.ArrowHelper.ELEVATION_KEY;
+import static io.warp10.arrow.direct.ArrowHelper.FIRSTTICK;
+import static io.warp10.arrow.direct.ArrowHelper.LARGE_BYTES_VALUES_FIELD;
+import static io.warp10.arrow.direct.ArrowHelper.LARGE_STRING_VALUES_FIELD;
 import static io.warp10.arrow.direct.ArrowHelper.LASTBUCKET;
+import static io.warp10.arrow.direct.ArrowHelper.LASTTICK;
 import static io.warp10.arrow.direct.ArrowHelper.LATITUDE_FIELD;
 import static io.warp10.arrow.direct.ArrowHelper.LATITUDE_KEY;
 import static io.warp10.arrow.direct.ArrowHelper.LONGITUDE_FIELD;
@@ -84,7 +101,7 @@ public class ArrowWriters {
   //
 
   final static JsonSerializer serializer = new JsonSerializerFactory().create();
-  private static String toJson(Object o) {
+  public static String toJson(Object o) {
     return serializer.serialize(o).toString();
   }
 
@@ -169,6 +186,9 @@ public class ArrowWriters {
       return new Schema(fields, metadata);
     }
 
+    metadata.put(FIRSTTICK, String.valueOf(GTSHelper.firsttick(gts)));
+    metadata.put(LASTTICK, String.valueOf(GTSHelper.lasttick(gts)));
+
     fields.add(TIMESTAMP_FIELD);
 
     if (gts.hasLocations()) {
@@ -191,7 +211,7 @@ public class ArrowWriters {
       case BOOLEAN: fields.add(BOOLEAN_VALUES_FIELD);
         break;
 
-      case STRING: fields.add(STRING_VALUES_FIELD);
+      case STRING: fields.add(ArrowHelper.exceedsVariableWidthCapacity(gts) ? LARGE_STRING_VALUES_FIELD : STRING_VALUES_FIELD);
         break;
 
       case UNDEFINED: throw new WarpScriptException("Cannot create an Arrow schema for a GTS with data of undefined type.");
@@ -216,6 +236,18 @@ public class ArrowWriters {
       return;
     }
 
+    if (nTicksPerBatch <= 0) {
+      root.close();
+      throw new WarpScriptException("The number of ticks per batch must be strictly positive.");
+    }
+
+    GeoTimeSerie.TYPE type = gts.getType();
+    BigIntVector timestampVector = (BigIntVector) root.getVector(TIMESTAMPS_KEY);
+    Float4Vector latitudeVector = (Float4Vector) root.getVector(LATITUDE_KEY);
+    Float4Vector longitudeVector = (Float4Vector) root.getVector(LONGITUDE_KEY);
+    BigIntVector elevationVector = (BigIntVector) root.getVector(ELEVATION_KEY);
+    FieldVector valueVector = root.getFieldVectors().get(root.getFieldVectors().size() - 1);
+
     //
     // Feed data to root
     //
@@ -223,46 +255,50 @@ public class ArrowWriters {
     try (ArrowStreamWriter writer =  new ArrowStreamWriter(root, null, out)) {
 
       writer.start();
-      root.setRowCount(nTicksPerBatch);
 
-      for (int i = 0; i < gts.size(); i++) {
+      for (int start = 0; start < gts.size(); start += nTicksPerBatch) {
+        int rowCount = Math.min(nTicksPerBatch, gts.size() - start);
 
-        ((BigIntVector) root.getVector(TIMESTAMPS_KEY)).setSafe(i % nTicksPerBatch, GTSHelper.tickAtIndex(gts, i));
+        //
+        // Vectors are allocated with their exact capacity, so values are set without capacity checks
+        //
 
-        if (gts.hasLocations()) {
-          double[] latlon = GeoXPLib.fromGeoXPPoint(GTSHelper.locationAtIndex(gts, i));
-          ((Float4Vector) root.getVector(LATITUDE_KEY)).setSafe(i % nTicksPerBatch, (float) latlon[0]);
-          ((Float4Vector) root.getVector(LONGITUDE_KEY)).setSafe(i % nTicksPerBatch, (float) latlon[1]);
+        for (FieldVector vector: root.getFieldVectors()) {
+          ArrowHelper.allocateNew(vector, rowCount, vector == valueVector ? ArrowHelper.utf8Length(gts, start, rowCount) : 0L);
         }
 
-        if (gts.hasElevations()) {
-          ((BigIntVector) root.getVector(ELEVATION_KEY)).setSafe(i % nTicksPerBatch, GTSHelper.elevationAtIndex(gts, i));
-        }
+        for (int i = 0; i < rowCount; i++) {
 
-        GeoTimeSerie.TYPE type = gts.getType();
-        switch(type) {
-          case LONG: ((BigIntVector) root.getVector(LONG_VALUES_KEY)).setSafe(i % nTicksPerBatch, (long) GTSHelper.valueAtIndex(gts, i));
-            break;
+          timestampVector.set(i, GTSHelper.tickAtIndex(gts, start + i));
 
-          case DOUBLE: ((Float8Vector) root.getVector(DOUBLE_VALUES_KEY)).setSafe(i % nTicksPerBatch, (double) GTSHelper.valueAtIndex(gts, i));
-            break;
+          if (null != latitudeVector) {
+            double[] latlon = GeoXPLib.fromGeoXPPoint(GTSHelper.locationAtIndex(gts, start + i));
+            latitudeVector.set(i, (float) latlon[0]);
+            longitudeVector.set(i, (float) latlon[1]);
+          }
 
-          case BOOLEAN: ((BitVector) root.getVector(BOOLEAN_VALUES_KEY)).setSafe(i % nTicksPerBatch, (boolean) GTSHelper.valueAtIndex(gts, i) ? 1 : 0);
-            break;
+          if (null != elevationVector) {
+            elevationVector.set(i, GTSHelper.elevationAtIndex(gts, start + i));
+          }
 
-          case STRING: ((VarBinaryVector) root.getVector(STRING_VALUES_KEY)).setSafe(i % nTicksPerBatch, ((String) GTSHelper.valueAtIndex(gts, i)).getBytes());
-            break;
+          switch(type) {
+            case LONG: ((BigIntVector) valueVector).set(i, (long) GTSHelper.valueAtIndex(gts, start + i));
+              break;
 
-          case UNDEFINED: throw new WarpScriptException("Cannot create an Arrow stream for a GTS with data of undefined type.");
-        }
+            case DOUBLE: ((Float8Vector) valueVector).set(i, (double) GTSHelper.valueAtIndex(gts, start + i));
+              break;
+
+            case BOOLEAN: ((BitVector) valueVector).set(i, (boolean) GTSHelper.valueAtIndex(gts, start + i) ? 1 : 0);
+              break;
+
+            case STRING: setVariableWidth(valueVector, i, ((String) GTSHelper.valueAtIndex(gts, start + i)).getBytes(StandardCharsets.UTF_8));
+              break;
 
-        if (i % nTicksPerBatch == nTicksPerBatch - 1) {
-          writer.writeBatch();
+            case UNDEFINED: throw new WarpScriptException("Cannot create an Arrow stream for a GTS with data of undefined type.");
+          }
         }
-      }
 
-      if ((gts.size() - 1) % nTicksPerBatch != nTicksPerBatch - 1 ) {
-        root.setRowCount((gts.size() - 1) % nTicksPerBatch);
+        root.setRowCount(rowCount);
         writer.writeBatch();
       }
 
@@ -274,6 +310,28 @@ public class ArrowWriters {
     }
   }
 
+  /**
+   * Set a value of a Utf8, Binary, LargeUtf8 or LargeBinary vector which has been allocated with enough capacity
+   */
+  private static void setVariableWidth(FieldVector vector, int index, byte[] value) {
+    if (vector instanceof BaseLargeVariableWidthVector) {
+      ((BaseLargeVariableWidthVector) vector).set(index, value);
+    } else {
+      ((BaseVariableWidthVector) vector).set(index, value);
+    }
+  }
+
+  /**
+   * Set a value of a Utf8, Binary, LargeUtf8 or LargeBinary vector
+   */
+  private static void setSafeVariableWidth(FieldVector vector, int index, byte[] value) {
+    if (vector instanceof BaseLargeVariableWidthVector) {
+      ((BaseLargeVariableWidthVector) vector).setSafe(index, value);
+    } else {
+      ((BaseVariableWidthVector) vector).setSafe(index, value);
+    }
+  }
+
   //
   // GtsEncoder to Arrow
   //
@@ -285,6 +343,16 @@ public class ArrowWriters {
    * @return
    */
   public static Schema createGtsEncoderSchema(GTSEncoder encoder) throws WarpScriptException {
+    return createGtsEncoderSchema(encoder, -1);
+  }
+
+  /**
+   * Creates an Arrow schema fitted to a GtsEncoder
+   * @param encoder
+   * @param decimalScale scale of the Decimal column storing BigDecimal values, or a negative value to store them as doubles
+   * @return
+   */
+  public static Schema createGtsEncoderSchema(GTSEncoder encoder, int decimalScale) throws WarpScriptException {
 
     List<Field> fields = new ArrayList<>();
 
@@ -321,21 +389,50 @@ public class ArrowWriters {
     fields.add(ELEVATION_FIELD);
     fields.add(LONG_VALUES_FIELD);
     fields.add(DOUBLE_VALUES_FIELD);
-    //fields.add(BIGDECIMAL_VALUES_FIELD);
-    //fields.add(BIGDECIMAL_SCALES_FIELD);
+
+    // the Decimal column takes 16 bytes per row, so it is only added if requested
+    if (decimalScale >= 0) {
+      fields.add(ArrowHelper.decimalValuesField(decimalScale));
+    }
+
     fields.add(BOOLEAN_VALUES_FIELD);
-    fields.add(STRING_VALUES_FIELD);
-    fields.add(BYTES_VALUES_FIELD);
+
+    if (ArrowHelper.exceedsVariableWidthCapacity(encoder)) {
+      fields.add(LARGE_STRING_VALUES_FIELD);
+      fields.add(LARGE_BYTES_VALUES_FIELD);
+    } else {
+      fields.add(STRING_VALUES_FIELD);
+      fields.add(BYTES_VALUES_FIELD);
+    }
 
     return new Schema(fields, metadata);
   }
 
   /**
-   * Convert a GtsEncoder to an arrow stream
+   * Convert a GtsEncoder to an arrow stream, BigDecimal values being stored as doubles
    */
   public static void gtsEncodertoArrowStream(GTSEncoder encoder, int nTicksPerBatch, OutputStream out) throws WarpScriptException {
+    gtsEncodertoArrowStream(encoder, nTicksPerBatch, -1, out);
+  }
 
-    VectorSchemaRoot root = VectorSchemaRoot.create(createGtsEncoderSchema(encoder), new RootAllocator(Integer.MAX_VALUE));
+  /**
+   * Convert a GtsEncoder to an arrow stream, BigDecimal values being stored in a Decimal column of the given scale.
+   * The schema is written before the encoder is decoded, so the caller chooses the scale. Values that are not exact at
+   * this scale are stored as doubles.
+   */
+  public static void gtsEncodertoArrowStream(GTSEncoder encoder, int nTicksPerBatch, int decimalScale, OutputStream out) throws WarpScriptException {
+
+    if (decimalScale > ArrowHelper.DECIMAL_PRECISION) {
+      throw new WarpScriptException("The scale of Decimal values must be at most " + ArrowHelper.DECIMAL_PRECISION + ".");
+    }
+
+    VectorSchemaRoot root = VectorSchemaRoot.create(createGtsEncoderSchema(encoder, decimalScale), new RootAllocator(Integer.MAX_VALUE));
+    DecimalVector decimalVector = (DecimalVector) root.getVector(DECIMAL_VALUES_KEY);
+
+    if (nTicksPerBatch <= 0) {
+      root.close();
+      throw new WarpScriptException("The number of ticks per batch must be strictly positive.");
+    }
 
     //
     // Feed data to root
@@ -344,64 +441,96 @@ public class ArrowWriters {
     try (ArrowStreamWriter writer =  new ArrowStreamWriter(root, null, out)) {
 
       writer.start();
-      root.setRowCount(nTicksPerBatch);
+
+      //
+      // Batches are cut from what the decoder returns. The count of the encoder only sizes the vectors: fixed width
+      // vectors are allocated with this capacity, so their values are set without capacity checks, and they are only
+      // grown if the decoder returns more values than counted. The size of string and bytes values is only known once
+      // decoded, the encoded size per value is used as an estimate.
+      //
 
       GTSDecoder decoder = encoder.getDecoder(true);
+      long remaining = encoder.getCount();
+      long bytesPerValue = remaining > 0 ? encoder.size() / remaining : 0L;
+      boolean hasNext = decoder.next();
+
+      while (hasNext) {
+        int capacity = (int) Math.max(1L, Math.min(nTicksPerBatch, remaining));
+        for (FieldVector vector: root.getFieldVectors()) {
+          ArrowHelper.allocateNew(vector, capacity, bytesPerValue * capacity);
+        }
 
-      int i = 0;
-      while (decoder.next()) {
+        BigIntVector timestampVector = (BigIntVector) root.getVector(TIMESTAMPS_KEY);
+        Float4Vector latitudeVector = (Float4Vector) root.getVector(LATITUDE_KEY);
+        Float4Vector longitudeVector = (Float4Vector) root.getVector(LONGITUDE_KEY);
+        BigIntVector elevationVector = (BigIntVector) root.getVector(ELEVATION_KEY);
+
+        int rowCount = 0;
+        while (hasNext && rowCount < nTicksPerBatch) {
+          int i = rowCount++;
+
+          // the count of the encoder was too low, vectors are grown as setSafe would
+          if (i == capacity) {
+            capacity = (int) Math.min(nTicksPerBatch, 2L * capacity);
+            for (FieldVector vector: root.getFieldVectors()) {
+              while (vector.getValueCapacity() < capacity) {
+                vector.reAlloc();
+              }
+            }
+          }
 
-        // tick
-        ((BigIntVector) root.getVector(TIMESTAMPS_KEY)).setSafe(i % nTicksPerBatch, decoder.getTimestamp());
+          // tick
+          timestampVector.set(i, decoder.getTimestamp());
 
-        // location
-        double[] latlon = GeoXPLib.fromGeoXPPoint(decoder.getLocation());
-        ((Float4Vector) root.getVector(LATITUDE_KEY)).setSafe(i % nTicksPerBatch, (float) latlon[0]);
-        ((Float4Vector) root.getVector(LONGITUDE_KEY)).setSafe(i % nTicksPerBatch, (float) latlon[1]);
+          // location
+          double[] latlon = GeoXPLib.fromGeoXPPoint(decoder.getLocation());
+          latitudeVector.set(i, (float) latlon[0]);
+          longitudeVector.set(i, (float) latlon[1]);
 
-        // elevation
-        ((BigIntVector) root.getVector(ELEVATION_KEY)).setSafe(i % nTicksPerBatch, decoder.getElevation());
+          // elevation
+          elevationVector.set(i, decoder.getElevation());
 
-        //
-        // value:
-        // long, boolean, double, BigDecimal, String, StringBinary
-        //
+          //
+          // value:
+          // long, boolean, double, BigDecimal, String, StringBinary
+          //
 
-        Object value = decoder.getBinaryValue();
+          Object value = decoder.getBinaryValue();
 
-        if (value instanceof Long) {
-          ((BigIntVector) root.getVector(LONG_VALUES_KEY)).setSafe(i % nTicksPerBatch, (long) value);
+          if (value instanceof Long) {
+            ((BigIntVector) root.getVector(LONG_VALUES_KEY)).set(i, (long) value);
 
-        } else if (value instanceof Boolean) {
-          ((BitVector) root.getVector(BOOLEAN_VALUES_KEY)).setSafe(i % nTicksPerBatch, (boolean) value ? 1 : 0);
+          } else if (value instanceof Boolean) {
+            ((BitVector) root.getVector(BOOLEAN_VALUES_KEY)).set(i, (boolean) value ? 1 : 0);
 
-        } else if (value instanceof Double) {
-          ((Float8Vector) root.getVector(DOUBLE_VALUES_KEY)).setSafe(i % nTicksPerBatch, (double) value);
+          } else if (value instanceof Double) {
+            ((Float8Vector) root.getVector(DOUBLE_VALUES_KEY)).set(i, (double) value);
 
-        } else if (value instanceof BigDecimal) {
-          ((Float8Vector) root.getVector(DOUBLE_VALUES_KEY)).setSafe(i % nTicksPerBatch, ((BigDecimal) value).doubleValue());
-          //((BigIntVector) root.getVector(BIGDECIMAL_VALUES_KEY)).setSafe(i % nTicksPerBatch, ((BigDecimal) value).longValue());
-          //((BigIntVector) root.getVector(BIGDECIMAL_SCALES_KEY)).setSafe(i % nTicksPerBatch, ((BigDecimal) value).scale());
+          } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = null == decimalVector ? null : ArrowHelper.toDecimalScale((BigDecimal) value, decimalScale);
 
-        } else if (value instanceof String) {
-          ((VarCharVector) root.getVector(STRING_VALUES_KEY)).setSafe(i % nTicksPerBatch, new Text((String) value));
+            // values that do not fit in the Decimal column are stored as doubles
+            if (null == decimal) {
+              ((Float8Vector) root.getVector(DOUBLE_VALUES_KEY)).set(i, ((BigDecimal) value).doubleValue());
+            } else {
+              decimalVector.set(i, decimal);
+            }
 
-        } else if (value instanceof byte[]) {
-          ((VarBinaryVector) root.getVector(BYTES_VALUES_KEY)).setSafe(i % nTicksPerBatch, ((String) value).getBytes());
+          } else if (value instanceof String) {
+            setSafeVariableWidth(root.getVector(STRING_VALUES_KEY), i, ((String) value).getBytes(StandardCharsets.UTF_8));
 
-        } else {
-          throw new WarpScriptException("Unrecognized value type when trying to convert a GTSENCODER to an Arrow Stream");
-        }
+          } else if (value instanceof byte[]) {
+            setSafeVariableWidth(root.getVector(BYTES_VALUES_KEY), i, (byte[]) value);
 
-        if (i % nTicksPerBatch == nTicksPerBatch - 1) {
-          writer.writeBatch();
-        }
+          } else {
+            throw new WarpScriptException("Unrecognized value type when trying to convert a GTSENCODER to an Arrow Stream");
+          }
 
-        i++;
-      }
+          hasNext = decoder.next();
+        }
 
-      if ((encoder.getCount() - 1) % nTicksPerBatch != nTicksPerBatch - 1 ) {
-        root.setRowCount(((int) encoder.getCount() - 1) % nTicksPerBatch);
+        remaining -= rowCount;
+        root.setRowCount(rowCount);
         writer.writeBatch();
       }
 
@@ -413,90 +542,441 @@ public class ArrowWriters {
     }
   }
 
+  /**
+   * Type of a column of the PAIR conversion mode
+   */
+  private enum PairColumnType {
+    BOOLEAN,
+    LONG,
+    DOUBLE,
+    STRING,
+    BYTES,
+    LIST,    // List of a PAIR column type
+    MAP,     // Struct with one child per key
+    VECTOR;  // FixedSizeList of Float8, from a VECTOR or a double[]
+
+    /**
+     * @return the type of a non-null value, or null if it is not supported
+     */
+    static PairColumnType of(Object value) {
+      if (value instanceof Boolean) {
+        return BOOLEAN;
+      } else if (value instanceof Long) {
+        return LONG;
+      } else if (value instanceof Double) {
+        return DOUBLE;
+      } else if (value instanceof String) {
+        return STRING;
+      } else if (value instanceof byte[]) {
+        return BYTES;
+      } else if (value instanceof List) {
+        return LIST;
+      } else if (value instanceof Map) {
+        return MAP;
+      } else if (value instanceof RealVector || value instanceof double[]) {
+        return VECTOR;
+      } else {
+        return null;
+      }
+    }
+
+    boolean isVariableWidth() {
+      return STRING == this || BYTES == this;
+    }
+  }
+
+  /**
+   * A column of the PAIR conversion mode, scanned once to infer its type from its first non-null value, check that
+   * its other values are null or of this type, count its nulls and, for STRING and BYTES columns, compute the size
+   * of the data of each range of rows.
+   *
+   * The elements of the lists of a LIST column and the values of each key of a MAP column are themselves PAIR columns,
+   * so that nested values are encoded recursively.
+   */
+  private static final class PairColumn {
+
+    final String key;
+    final List values;
+
+    // null if the column only contains nulls
+    PairColumnType type = null;
+    int nullCount = 0;
+
+    // for STRING and BYTES columns, dataOffsets[i] is the number of bytes of the values of the rows before row i
+    long[] dataOffsets = null;
+
+    // for BYTES columns, the length of all the values if they have the same non-zero length, else 0, used if fixedSizeBinary is set
+    final boolean fixedSizeBinary;
+    int byteWidth = -1;
+
+    // for LIST columns, the elements of all the lists, and elementOffsets[i] the number of elements before row i
+    PairColumn elements = null;
+    int[] elementOffsets = null;
+
+    // for MAP columns, the values of each key, without the keys that only have nulls
+    List<PairColumn> children = null;
+
+    // for VECTOR columns
+    int dimension = 0;
+
+    PairColumn(String key, List values, boolean fixedSizeBinary) throws WarpScriptException {
+      this.key = key;
+      this.values = values;
+      this.fixedSizeBinary = fixedSizeBinary;
+
+      Object first = null;
+      long dataSize = 0L;
+      List<Object> elementValues = null;
+      int elementCount = 0;
+      Map<String, List<Object>> childValues = null;
+
+      for (int i = 0; i < values.size(); i++) {
+        Object value = values.get(i);
+
+        if (null == value) {
+          nullCount++;
+
+        } else if (null == type) {
+          type = PairColumnType.of(value);
+          first = value;
+
+          if (null == type) {
+            throw new WarpScriptException("Unsupported field vector type. Support BOOLEAN, LONG, DOUBLE, STRING, BYTES, LIST, MAP or VECTOR.");
+          } else if (type.isVariableWidth()) {
+            dataOffsets = new long[values.size() + 1];
+          } else if (PairColumnType.LIST == type) {
+            elementOffsets = new int[values.size() + 1];
+            elementValues = new ArrayList<Object>();
+          } else if (PairColumnType.MAP == type) {
+            childValues = new LinkedHashMap<String, List<Object>>();
+          } else if (PairColumnType.VECTOR == type) {
+            dimension = dimensionOf(value);
+          }
+
+        } else if (type != PairColumnType.of(value)) {
+          throw new WarpScriptException("Column " + key + " must only contain values of type " + TYPEOF.typeof(first) + " or NULL.");
+        }
+
+        if (null != dataOffsets) {
+          dataOffsets[i] = dataSize;
+
+          if (value instanceof String) {
+            dataSize += ArrowHelper.utf8Length((String) value);
+          } else if (value instanceof byte[]) {
+            int length = ((byte[]) value).length;
+            dataSize += length;
+            byteWidth = -1 == byteWidth || length == byteWidth ? length : 0;
+          }
+
+        } else if (null != elementOffsets) {
+          elementOffsets[i] = elementCount;
+
+          if (null != value) {
+            elementValues.addAll((List) value);
+            elementCount += ((List) value).size();
+          }
+
+        } else if (null != childValues && null != value) {
+
+          //
+          // A key first seen at row i has no value for the previous rows
+          //
+
+          for (Map.Entry<Object, Object> entry: ((Map<Object, Object>) value).entrySet()) {
+            if (!(entry.getKey() instanceof String)) {
+              throw new WarpScriptException("Column " + key + " must only contain MAPs with STRING keys.");
+            }
+
+            if (!childValues.containsKey(entry.getKey())) {
+              childValues.put((String) entry.getKey(), new ArrayList<Object>(Collections.nCopies(i, null)));
+            }
+          }
+
+          for (Map.Entry<String, List<Object>> child: childValues.entrySet()) {
+            child.getValue().add(((Map) value).get(child.getKey()));
+          }
+
+        } else if (null != childValues) {
+          for (List<Object> child: childValues.values()) {
+            child.add(null);
+          }
+
+        } else if (PairColumnType.VECTOR == type && null != value && dimension != dimensionOf(value)) {
+          throw new WarpScriptException("Column " + key + " must only contain VECTORs of size " + dimension + ".");
+        }
+      }
+
+      if (null != dataOffsets) {
+        dataOffsets[values.size()] = dataSize;
+
+      } else if (null != elementOffsets) {
+        elementOffsets[values.size()] = elementCount;
+        elements = new PairColumn(BaseRepeatedValueVector.DATA_VECTOR_NAME, elementValues, fixedSizeBinary);
+
+      } else if (null != childValues) {
+        children = new ArrayList<PairColumn>(childValues.size());
+        for (Map.Entry<String, List<Object>> child: childValues.entrySet()) {
+          PairColumn column = new PairColumn(child.getKey(), child.getValue(), fixedSizeBinary);
+          if (!column.isEmpty()) {
+            children.add(column);
+          }
+        }
+
+        // a MAP column whose keys only have nulls holds no value
+        if (children.isEmpty()) {
+          type = null;
+        }
+      }
+    }
+
+    private static int dimensionOf(Object vector) {
+      return vector instanceof RealVector ? ((RealVector) vector).getDimension() : ((double[]) vector).length;
+    }
+
+    /**
+     * @return true if the column has no value to encode, because it is empty or only contains nulls
+     */
+    boolean isEmpty() {
+      return null == type;
+    }
+
+    /**
+     * @return the number of bytes of the data of count rows starting at from, 0 for fixed width columns
+     */
+    long dataLength(int from, int count) {
+      return null == dataOffsets ? 0L : dataOffsets[from + count] - dataOffsets[from];
+    }
+
+    Field field() {
+      switch (type) {
+        case BOOLEAN:
+          return Field.nullable(key, new ArrowType.Bool());
+
+        case LONG:
+          return Field.nullable(key, new ArrowType.Int(64, true));
+
+        case DOUBLE:
+          return Field.nullable(key, new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE));
+
+        case STRING:
+          return Field.nullable(key, dataLength(0, values.size()) > ArrowHelper.VARIABLE_WIDTH_CAPACITY ? new ArrowType.LargeUtf8() : new ArrowType.Utf8());
+
+        case BYTES:
+          // values of the same length, such as UUIDs, need no offsets, but the type of the column then depends on its values
+          if (fixedSizeBinary && byteWidth > 0) {
+            return Field.nullable(key, new ArrowType.FixedSizeBinary(byteWidth));
+          }
+          return Field.nullable(key, dataLength(0, values.size()) > ArrowHelper.VARIABLE_WIDTH_CAPACITY ? new ArrowType.LargeBinary() : new ArrowType.Binary());
+
+        case LIST:
+          // lists that are all empty or only contain nulls have elements of the Null type
+          Field elementField = elements.isEmpty() ? Field.nullable(elements.key, ArrowType.Null.INSTANCE) : elements.field();
+          return new Field(key, FieldType.nullable(ArrowType.List.INSTANCE), Collections.singletonList(elementField));
+
+        case MAP:
+          List<Field> childFields = new ArrayList<Field>(children.size());
+          for (PairColumn child: children) {
+            childFields.add(child.field());
+          }
+          return new Field(key, FieldType.nullable(ArrowType.Struct.INSTANCE), childFields);
+
+        default:
+          return new Field(key, FieldType.nullable(new ArrowType.FixedSizeList(dimension)),
+            Collections.singletonList(Field.nullable(BaseRepeatedValueVector.DATA_VECTOR_NAME, new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE))));
+      }
+    }
+
+    /**
+     * Allocate vector with the exact capacity needed by count rows starting at from, and write them. Vectors are
+     * allocated with all their values null, so values are set without capacity checks and nulls are skipped.
+     */
+    void write(FieldVector vector, int from, int count) {
+
+      ArrowHelper.allocateNew(vector, count, dataLength(from, count));
+
+      List rows = values.subList(from, from + count);
+      int i = 0;
+
+      switch (type) {
+        case BOOLEAN:
+          BitVector bits = (BitVector) vector;
+          for (Object value: rows) {
+            if (null != value) {
+              bits.set(i, (Boolean) value ? 1 : 0);
+            }
+            i++;
+          }
+          break;
+
+        case LONG:
+          BigIntVector longs = (BigIntVector) vector;
+          for (Object value: rows) {
+            if (null != value) {
+              longs.set(i, (Long) value);
+            }
+            i++;
+          }
+          break;
+
+        case DOUBLE:
+          Float8Vector doubles = (Float8Vector) vector;
+          for (Object value: rows) {
+            if (null != value) {
+              doubles.set(i, (Double) value);
+            }
+            i++;
+          }
+          break;
+
+        case STRING:
+          for (Object value: rows) {
+            if (null != value) {
+              setVariableWidth(vector, i, ((String) value).getBytes(StandardCharsets.UTF_8));
+            }
+            i++;
+          }
+          break;
+
+        case BYTES:
+          if (vector instanceof FixedSizeBinaryVector) {
+            FixedSizeBinaryVector fixedBytes = (FixedSizeBinaryVector) vector;
+            for (Object value: rows) {
+              if (null != value) {
+                fixedBytes.set(i, (byte[]) value);
+              }
+              i++;
+            }
+            break;
+          }
+
+          for (Object value: rows) {
+            if (null != value) {
+              setVariableWidth(vector, i, (byte[]) value);
+            }
+            i++;
+          }
+          break;
+
+        case LIST:
+          ListVector lists = (ListVector) vector;
+          for (Object value: rows) {
+            if (null != value) {
+              lists.startNewValue(i);
+              lists.endValue(i, ((List) value).size());
+            }
+            i++;
+          }
+
+          // the elements of the rows are contiguous, so they are written at once
+          if (!elements.isEmpty()) {
+            elements.write(lists.getDataVector(), elementOffsets[from], elementOffsets[from + count] - elementOffsets[from]);
+          }
+          break;
+
+        case MAP:
+          StructVector structs = (StructVector) vector;
+          for (Object value: rows) {
+            if (null != value) {
+              structs.setIndexDefined(i);
+            }
+            i++;
+          }
+
+          for (PairColumn child: children) {
+            child.write(structs.getChild(child.key), from, count);
+          }
+          break;
+
+        case VECTOR:
+
+          //
+          // The child vector is allocated with the parent for count * dimension values, the coordinates of row i
+          // starting at i * dimension
+          //
+
+          FixedSizeListVector vectors = (FixedSizeListVector) vector;
+          Float8Vector coordinates = (Float8Vector) vectors.getDataVector();
+
+          for (Object value: rows) {
+            if (null != value) {
+              vectors.setNotNull(i);
+              double[] array = value instanceof ArrayRealVector ? ((ArrayRealVector) value).getDataRef() : value instanceof RealVector ? ((RealVector) value).toArray() : (double[]) value;
+              for (int j = 0; j < dimension; j++) {
+                coordinates.set(i * dimension + j, array[j]);
+              }
+            }
+            i++;
+          }
+          break;
+      }
+    }
+  }
+
   /**
    * Convert a map of columns (Lists) into an Arrow Stream.
-   * The columns must have the same size.
-   * @param input A list of two items: custom metadata and map of columns (assumed to be of same size &gt; 0)
+   * The columns must have the same size. Null values are encoded as nulls, and columns that are empty or only
+   * contain nulls are not encoded. LIST, MAP and VECTOR values are encoded as List, Struct and FixedSizeList columns.
+   * @param input A list of two items: custom metadata and map of columns
    * @param out
    * @throws WarpScriptException
    */
   public static void columnsToArrowStream(List input, int nTicksPerBatch, OutputStream out) throws WarpScriptException {
+    columnsToArrowStream(input, nTicksPerBatch, false, out);
+  }
+
+  /**
+   * Same as above. If fixedSizeBinary is true, BYTES columns whose values all have the same length are encoded as
+   * FixedSizeBinary columns instead of Binary columns.
+   */
+  public static void columnsToArrowStream(List input, int nTicksPerBatch, boolean fixedSizeBinary, OutputStream out) throws WarpScriptException {
 
     Map<String, String> customMetadata = new HashMap<String, String>((Map<String, String>) input.get(0));
     customMetadata.put(MODE, Register.PAIR);
     customMetadata.put(REV, Revision.REVISION);
     customMetadata.put(STU, String.valueOf(Constants.TIME_UNITS_PER_S));
 
+    //
+    // Each column is scanned once to infer its type and the sizes needed to allocate its vectors
+    //
+
     Map<String, List> columns = (Map<String, List>) input.get(1);
     List<Field> fields = new ArrayList<Field>(columns.size());
-    for (String key: columns.keySet()) {
-      Object first = columns.get(key).get(0);
+    List<PairColumn> pairColumns = new ArrayList<PairColumn>(columns.size());
 
-      if (first instanceof Boolean) {
-        fields.add(Field.nullable(key, new ArrowType.Bool()));
-
-      } else if (first instanceof Long) {
-        fields.add(Field.nullable(key,new ArrowType.Int(64, true)));
-
-      } else if (first instanceof Double) {
-        fields.add(Field.nullable(key, new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)));
-
-      } else if (first instanceof String) {
-        fields.add(Field.nullable(key, new ArrowType.Utf8()));
-
-      } else if (first instanceof byte[]) {
-        fields.add(Field.nullable(key, new ArrowType.Binary()));
+    for (String key: columns.keySet()) {
+      PairColumn column = new PairColumn(key, columns.get(key), fixedSizeBinary);
 
-      } else {
-        throw new WarpScriptException("Unsupported field vector type. Support BOOLEAN, LONG, DOUBLE, STRING or BYTES.");
+      if (column.isEmpty()) {
+        continue;
       }
+
+      fields.add(column.field());
+      pairColumns.add(column);
     }
 
     VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, customMetadata), new RootAllocator(Integer.MAX_VALUE));
 
     //
-    // Feed data to root
+    // Feed data to root, column by column. Vectors are resolved once, in the order of fields.
     //
 
+    List<FieldVector> vectors = root.getFieldVectors();
+
     try (ArrowStreamWriter writer =  new ArrowStreamWriter(root, null, out)) {
 
       writer.start();
-      root.setRowCount(nTicksPerBatch);
-
-      int count = columns.get(columns.keySet().iterator().next()).size();
-      for (int i = 0; i < count; i++) {
-
-        for (Field field : root.getSchema().getFields()) {
-
-          Object value = columns.get(field.getName()).get(i);
 
-          if (value instanceof Boolean) {
-            ((BitVector) root.getVector(field.getName())).setSafe(i % nTicksPerBatch, (boolean) value ? 1 : 0);
+      int count = pairColumns.isEmpty() ? 0 : pairColumns.get(0).values.size();
+      int batchSize = Math.max(1, nTicksPerBatch);
 
-          } else if (value instanceof Long) {
-            ((BigIntVector) root.getVector(field.getName())).setSafe(i % nTicksPerBatch, (long) value);
+      for (int start = 0; start < count; start += batchSize) {
+        int rowCount = Math.min(batchSize, count - start);
 
-          } else if (value instanceof Double) {
-            ((Float8Vector) root.getVector(field.getName())).setSafe(i % nTicksPerBatch, (double) value);
-
-          } else if (value instanceof String) {
-            ((VarCharVector) root.getVector(field.getName())).setSafe(i % nTicksPerBatch, new Text((String) value));
-
-          } else if (value instanceof byte[]) {
-            ((VarBinaryVector) root.getVector(field.getName())).setSafe(i % nTicksPerBatch, ((String) value).getBytes());
-
-          } else {
-            throw new WarpScriptException("Unsupported field vector type. Support BOOLEAN, LONG, DOUBLE, STRING or BYTES.");
-          }
+        for (int c = 0; c < vectors.size(); c++) {
+          pairColumns.get(c).write(vectors.get(c), start, rowCount);
         }
 
-        if (i % nTicksPerBatch == nTicksPerBatch - 1) {
-          writer.writeBatch();
-        }
-      }
-
-      if ((count - 1) % nTicksPerBatch != nTicksPerBatch - 1 ) {
-        root.setRowCount((count - 1) % nTicksPerBatch);
+        root.setRowCount(rowCount);
         writer.writeBatch();
       }
 
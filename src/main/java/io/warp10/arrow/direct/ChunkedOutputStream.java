@@ -0,0 +1,79 @@
+//
+// Copyright 2020 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.direct;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OutputStream that splits its content into byte arrays of at most chunkSize bytes.
+ * Concatenating the chunks gives back the whole content, so outputs larger than the maximum size of a Java array can be produced.
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+  private final int chunkSize;
+  private final List<byte[]> chunks;
+  private ByteArrayOutputStream current;
+
+  public ChunkedOutputStream(int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be strictly positive.");
+    }
+
+    this.chunkSize = chunkSize;
+    chunks = new ArrayList<byte[]>();
+    current = new ByteArrayOutputStream(Math.min(chunkSize, 8192));
+  }
+
+  private void flushChunkIfFull() {
+    if (current.size() == chunkSize) {
+      chunks.add(current.toByteArray());
+      current = new ByteArrayOutputStream(Math.min(chunkSize, 8192));
+    }
+  }
+
+  @Override
+  public void write(int b) {
+    current.write(b);
+    flushChunkIfFull();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    while (len > 0) {
+      int n = Math.min(len, chunkSize - current.size());
+      current.write(b, off, n);
+      flushChunkIfFull();
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * @return the chunks written so far, the last one may be shorter than chunkSize
+   */
+  public List<byte[]> getChunks() {
+    List<byte[]> res = new ArrayList<byte[]>(chunks);
+    if (current.size() > 0) {
+      res.add(current.toByteArray());
+    }
+
+    return res;
+  }
+}
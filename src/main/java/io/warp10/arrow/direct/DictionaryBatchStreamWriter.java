@@ -0,0 +1,79 @@
+//
+// Copyright 2020 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.direct;
+
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowDictionaryBatch;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ArrowStreamWriter that can write dictionary batches between record batches, so that dictionaries can grow
+ * while the stream is written instead of being known when it starts.
+ *
+ * Arrow Java readers of this version replace a dictionary with the content of each of its dictionary batches and do
+ * not apply the delta flag, so a dictionary that has been extended is written in full, as a replacement.
+ */
+public class DictionaryBatchStreamWriter extends ArrowStreamWriter {
+
+  public DictionaryBatchStreamWriter(VectorSchemaRoot root, DictionaryProvider provider, OutputStream out) {
+    super(root, provider, out);
+  }
+
+  /**
+   * Write the current content of a dictionary
+   * @param dictionary
+   * @throws IOException
+   */
+  public void writeDictionary(Dictionary dictionary) throws IOException {
+    start();
+
+    FieldVector vector = dictionary.getVector();
+    VectorSchemaRoot dictionaryRoot = new VectorSchemaRoot(Collections.singletonList(vector.getField()), Collections.singletonList(vector), vector.getValueCount());
+    ArrowRecordBatch batch = new VectorUnloader(dictionaryRoot).getRecordBatch();
+
+    try (ArrowDictionaryBatch dictionaryBatch = new ArrowDictionaryBatch(dictionary.getEncoding().getId(), batch, false)) {
+      writeDictionaryBatch(dictionaryBatch);
+    }
+  }
+
+  /**
+   * Write the dictionaries whose number of values changed since they were last written
+   * @param dictionaries
+   * @param written number of values of each dictionary when it was last written, updated by this method
+   * @throws IOException
+   */
+  public void writeExtendedDictionaries(List<Dictionary> dictionaries, int[] written) throws IOException {
+    for (int i = 0; i < dictionaries.size(); i++) {
+      int valueCount = dictionaries.get(i).getVector().getValueCount();
+
+      if (valueCount != written[i]) {
+        writeDictionary(dictionaries.get(i));
+        written[i] = valueCount;
+      }
+    }
+  }
+}
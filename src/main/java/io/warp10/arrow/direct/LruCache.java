@@ -0,0 +1,116 @@
+//
+// Copyright 2020 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.direct;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe LRU cache bounded by its number of entries and by the sum of the estimated sizes of its entries.
+ * Values must not be modified once cached since they are shared by every caller.
+ */
+public class LruCache<K, V> {
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75F, true);
+  private long bytes = 0L;
+  private long hits = 0L;
+  private long misses = 0L;
+
+  private static class Entry<V> {
+    final V value;
+    final long bytes;
+
+    Entry(V value, long bytes) {
+      this.value = value;
+      this.bytes = bytes;
+    }
+  }
+
+  public LruCache(int maxEntries, long maxBytes) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @param key
+   * @return the cached value, or null
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = entries.get(key);
+
+    if (null == entry) {
+      misses++;
+      return null;
+    }
+
+    hits++;
+    return entry.value;
+  }
+
+  /**
+   * Cache a value, then evict the least recently used entries until the cache is within its bounds.
+   * A value larger than the cache itself is not cached.
+   *
+   * @param key
+   * @param value
+   * @param size estimated size of the key and value, in bytes
+   */
+  public synchronized void put(K key, V value, long size) {
+    if (size > maxBytes || maxEntries <= 0) {
+      return;
+    }
+
+    Entry<V> previous = entries.put(key, new Entry<V>(value, size));
+    bytes += size - (null == previous ? 0L : previous.bytes);
+
+    Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+      bytes -= iterator.next().getValue().bytes;
+      iterator.remove();
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0L;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the number of calls to get that found a value
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of calls to get that found no value
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+}
@@ -0,0 +1,56 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.flight;
+
+import io.warp10.arrow.ArrowExtension;
+import io.warp10.warp.sdk.AbstractWarp10Plugin;
+import org.apache.arrow.flight.FlightServer;
+import org.apache.arrow.flight.Location;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Warp 10 plugin serving an Arrow Flight endpoint backed by WarpScript, see WarpScriptFlightProducer.
+ *
+ * Enable it with warp10.plugin.arrowflight = io.warp10.arrow.flight.ArrowFlightPlugin
+ */
+public class ArrowFlightPlugin extends AbstractWarp10Plugin {
+
+  public static final String CONF_HOST = "arrow.flight.host";
+  public static final String CONF_PORT = "arrow.flight.port";
+
+  public static final String DEFAULT_HOST = "127.0.0.1";
+  public static final int DEFAULT_PORT = 8815;
+
+  private FlightServer server;
+
+  @Override
+  public void init(Properties properties) {
+    String host = properties.getProperty(CONF_HOST, DEFAULT_HOST);
+    int port = Integer.parseInt(properties.getProperty(CONF_PORT, Integer.toString(DEFAULT_PORT)));
+
+    WarpScriptFlightProducer producer = new WarpScriptFlightProducer(ArrowExtension.getRootAllocator(), getExposedStoreClient(), getExposedDirectoryClient(), properties);
+    server = FlightServer.builder(ArrowExtension.getRootAllocator(), Location.forGrpcInsecure(host, port), producer).build();
+
+    try {
+      server.start();
+    } catch (IOException ioe) {
+      throw new RuntimeException("Unable to start the Arrow Flight server on " + host + ":" + port, ioe);
+    }
+  }
+}
@@ -0,0 +1,238 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.flight;
+
+import io.warp10.arrow.ArrowExtension;
+import io.warp10.arrow.warpscriptFunctions.ARROWTO;
+import io.warp10.continuum.store.DirectoryClient;
+import io.warp10.continuum.store.StoreClient;
+import io.warp10.script.MemoryWarpScriptStack;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+import io.warp10.script.WarpScriptStackFunction;
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.flight.NoOpFlightProducer;
+import org.apache.arrow.flight.PutResult;
+import org.apache.arrow.flight.Ticket;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Field;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A Flight producer that executes WarpScript.
+ *
+ * The ticket of a DoGet is a WarpScript. The object it leaves on top of the stack is encoded by ->ARROW, unless it is
+ * already an Arrow stream (BYTES or LIST of BYTES), and its record batches are sent as the client consumes them.
+ *
+ * The descriptor of a DoPut is a command holding a WarpScript. The Arrow stream sent by the client is decoded by
+ * ARROW-> and the script is executed with the result on top of the stack, for instance to UPDATE it. If the script
+ * leaves a STRING on top of the stack, it is sent back to the client as the metadata of a PutResult.
+ *
+ * Flight 1.0.1 does not notify a producer when a client becomes ready to receive more batches, so DoGet polls the
+ * readiness of the client, which holds the gRPC thread of the call while the client is slow.
+ */
+public class WarpScriptFlightProducer extends NoOpFlightProducer {
+
+  private final BufferAllocator allocator;
+  private final StoreClient storeClient;
+  private final DirectoryClient directoryClient;
+  private final Properties properties;
+
+  public WarpScriptFlightProducer(BufferAllocator allocator, StoreClient storeClient, DirectoryClient directoryClient, Properties properties) {
+    this.allocator = allocator;
+    this.storeClient = storeClient;
+    this.directoryClient = directoryClient;
+    this.properties = properties;
+  }
+
+  private WarpScriptStack newStack() {
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(storeClient, directoryClient, properties);
+    stack.setAttribute(WarpScriptStack.ATTRIBUTE_NAME, "[ArrowFlight]");
+    return stack;
+  }
+
+  private static void applyFunction(String name, WarpScriptStack stack) throws WarpScriptException {
+    ((WarpScriptStackFunction) ArrowExtension.staticGetFunctions().get(name)).apply(stack);
+  }
+
+  @Override
+  public void getStream(CallContext context, Ticket ticket, ServerStreamListener listener) {
+
+    try {
+      WarpScriptStack stack = newStack();
+      stack.execMulti(new String(ticket.getBytes(), StandardCharsets.UTF_8));
+
+      if (!ARROWTO.isArrowStream(stack.peek())) {
+        applyFunction(ArrowExtension.TOARROW, stack);
+      }
+
+      Object bytes = stack.pop();
+
+      try (ArrowStreamReader reader = new ArrowStreamReader(ARROWTO.getInputStream(ArrowExtension.ARROWTO, bytes), allocator)) {
+
+        VectorSchemaRoot root = reader.getVectorSchemaRoot();
+
+        if (!hasDictionaries(root)) {
+          listener.start(root, reader);
+
+          while (reader.loadNextBatch()) {
+            if (!awaitReady(listener)) {
+              return;
+            }
+            listener.putNext();
+          }
+
+        } else {
+
+          //
+          // Flight sends dictionaries once, before the first batch, while streams written by ->ARROW may extend them
+          // between batches. Dictionaries are only appended to, so the dictionaries of the last batch are valid for every
+          // batch: the batches are read once and kept until the reader holds the last version of the dictionaries.
+          //
+
+          List<ArrowRecordBatch> batches = new ArrayList<ArrowRecordBatch>();
+          try {
+            VectorUnloader unloader = new VectorUnloader(root);
+            while (reader.loadNextBatch()) {
+              batches.add(unloader.getRecordBatch());
+            }
+
+            listener.start(root, reader);
+
+            VectorLoader loader = new VectorLoader(root);
+            for (ArrowRecordBatch batch: batches) {
+              if (!awaitReady(listener)) {
+                return;
+              }
+              loader.load(batch);
+              listener.putNext();
+            }
+          } finally {
+            for (ArrowRecordBatch batch: batches) {
+              batch.close();
+            }
+          }
+        }
+      }
+
+      listener.completed();
+
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      listener.error(CallStatus.CANCELLED.withCause(ie).toRuntimeException());
+    } catch (Exception e) {
+      listener.error(CallStatus.INTERNAL.withDescription(e.getMessage()).withCause(e).toRuntimeException());
+    }
+  }
+
+  @Override
+  public Runnable acceptPut(CallContext context, final FlightStream flightStream, final StreamListener<PutResult> ackStream) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (!flightStream.getDescriptor().isCommand()) {
+            throw new WarpScriptException("DoPut expects a command descriptor holding a WarpScript.");
+          }
+
+          //
+          // Write the received batches as an Arrow stream, once the dictionaries have been received with the first batch
+          //
+
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          VectorSchemaRoot root = flightStream.getRoot();
+          ArrowStreamWriter writer = null;
+
+          try {
+            while (flightStream.next()) {
+              if (null == writer) {
+                writer = new ArrowStreamWriter(root, flightStream.getDictionaryProvider(), out);
+                writer.start();
+              }
+              writer.writeBatch();
+            }
+
+            if (null == writer) {
+              writer = new ArrowStreamWriter(root, flightStream.getDictionaryProvider(), out);
+              writer.start();
+            }
+            writer.end();
+          } finally {
+            if (null != writer) {
+              writer.close();
+            }
+          }
+
+          WarpScriptStack stack = newStack();
+          stack.push(out.toByteArray());
+          applyFunction(ArrowExtension.ARROWTO, stack);
+          stack.execMulti(new String(flightStream.getDescriptor().getCommand(), StandardCharsets.UTF_8));
+
+          if (stack.depth() > 0 && stack.peek() instanceof String) {
+            byte[] result = ((String) stack.peek()).getBytes(StandardCharsets.UTF_8);
+            try (ArrowBuf buf = allocator.buffer(result.length)) {
+              buf.writeBytes(result);
+              ackStream.onNext(PutResult.metadata(buf));
+            }
+          }
+
+          ackStream.onCompleted();
+
+        } catch (Exception e) {
+          ackStream.onError(CallStatus.INTERNAL.withDescription(e.getMessage()).withCause(e).toRuntimeException());
+        }
+      }
+    };
+  }
+
+  /**
+   * Wait until the client is ready to receive a batch. Flight 1.0.1 has no callback for this, so readiness is polled.
+   * @param listener
+   * @return false if the call was cancelled
+   * @throws InterruptedException
+   */
+  private static boolean awaitReady(ServerStreamListener listener) throws InterruptedException {
+    while (!listener.isReady() && !listener.isCancelled()) {
+      Thread.sleep(1L);
+    }
+
+    return !listener.isCancelled();
+  }
+
+  private static boolean hasDictionaries(VectorSchemaRoot root) {
+    for (Field field: root.getSchema().getFields()) {
+      if (null != field.getDictionary()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
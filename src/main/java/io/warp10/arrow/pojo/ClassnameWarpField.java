@@ -28,23 +28,50 @@ import java.util.List;
 public class ClassnameWarpField extends DictionaryEncodedWarpField {
 
   public static final String CLASSNAME_KEY = "classname";
-  private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(16, true); // max 2¹⁵ classes
-  private static final DictionaryEncoding DICTIONARY_ENCODING = new DictionaryEncoding(0, false, INDEX_TYPE);
-  private static final Field INDEX_FIELD = new Field(CLASSNAME_KEY, new FieldType(true, INDEX_TYPE, DICTIONARY_ENCODING), null);
+  private static final ArrowType.Int DEFAULT_INDEX_TYPE = new ArrowType.Int(16, true); // max 2¹⁵ classes
   private static final Field DICTIONARY_FIELD = Field.nullable(CLASSNAME_KEY + "::dictionary", new ArrowType.Utf8());
+  private final DictionaryEncoding encoding;
+  private final Field indexField;
 
-  public ClassnameWarpField(){}
+  public ClassnameWarpField(){
+    this(DEFAULT_INDEX_TYPE);
+  }
+
+  /**
+   * @param indexType index type of the dictionary, or null for a plain Utf8 field, see indexType(int, long)
+   */
+  public ClassnameWarpField(ArrowType.Int indexType){
+    this(indexType, null);
+  }
 
   public ClassnameWarpField(BufferAllocator allocator) {
-    super(allocator);
+    this(DEFAULT_INDEX_TYPE);
+    initialize(allocator);
   }
 
   public ClassnameWarpField(List<Object> initialDictionary){
-    super(initialDictionary);
+    this(DEFAULT_INDEX_TYPE, initialDictionary);
   }
 
   public ClassnameWarpField(BufferAllocator allocator, List<Object> initialDictionary){
-    super(allocator, initialDictionary);
+    this(DEFAULT_INDEX_TYPE, initialDictionary);
+    initialize(allocator);
+  }
+
+  /**
+   * @param indexType index type of the dictionary, or null for a plain Utf8 field, see indexType(int, long)
+   * @param initialDictionary initial values of the dictionary, or null
+   */
+  public ClassnameWarpField(ArrowType.Int indexType, List<Object> initialDictionary) {
+    super(initialDictionary);
+
+    if (null == indexType) {
+      encoding = null;
+      indexField = Field.nullable(CLASSNAME_KEY, new ArrowType.Utf8());
+    } else {
+      encoding = new DictionaryEncoding(0, false, indexType);
+      indexField = new Field(CLASSNAME_KEY, new FieldType(true, indexType, encoding), null);
+    }
   }
 
   public String getKey() {
@@ -52,7 +79,7 @@ public class ClassnameWarpField extends DictionaryEncodedWarpField {
   }
 
   public Field getField() {
-    return INDEX_FIELD;
+    return indexField;
   }
 
   public String getWarpScriptType() {
@@ -64,7 +91,7 @@ public class ClassnameWarpField extends DictionaryEncodedWarpField {
   }
 
   public DictionaryEncoding getDictionaryEncoding() {
-    return DICTIONARY_ENCODING;
+    return encoding;
   }
 
   @Override
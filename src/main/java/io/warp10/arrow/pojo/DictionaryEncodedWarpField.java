@@ -23,16 +23,19 @@ import org.apache.arrow.vector.SmallIntVector;
 import org.apache.arrow.vector.TinyIntVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.util.Text;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * A WarpField of Strings that is dictionary encoded
+ * A WarpField of Strings that is dictionary encoded.
+ * Fields whose dictionary encoding is null are plain Utf8 fields, see indexType.
  */
 public abstract class DictionaryEncodedWarpField extends WarpField {
 
@@ -52,13 +55,45 @@ public abstract class DictionaryEncodedWarpField extends WarpField {
   private Dictionary dictionary;
   private Map<Object, Integer> lookUps;
   private List<Object> initialDictionary;
+  private boolean extended; // true if values were added to the dictionary since it was last written
 
   public abstract Field getDictionaryField();
   public abstract DictionaryEncoding getDictionaryEncoding();
 
+  /**
+   * Choose the index type of a dictionary from the number of distinct values it will hold: the narrowest of 8, 16 and
+   * 32 bits that can index them. Return null, meaning the field is not dictionary encoded, if there are more than
+   * half as many distinct values as rows: the dictionary would then be nearly as large as the column itself.
+   *
+   * @param cardinality number of distinct values
+   * @param rowCount number of rows
+   * @return the index type, or null
+   */
+  public static ArrowType.Int indexType(int cardinality, long rowCount) {
+    if (cardinality > 1 && 2L * cardinality > rowCount) {
+      return null;
+    }
+
+    if (cardinality <= (1 << 7)) {
+      return new ArrowType.Int(8, true);
+    } else if (cardinality <= (1 << 15)) {
+      return new ArrowType.Int(16, true);
+    } else {
+      return new ArrowType.Int(32, true);
+    }
+  }
+
+  public boolean isDictionaryEncoded() {
+    return null != getDictionaryEncoding();
+  }
+
   public void initialize(BufferAllocator allocator) {
     super.initialize(allocator);
 
+    if (!isDictionaryEncoded()) {
+      return;
+    }
+
     if (null != dictionary) {
       throw new RuntimeException("Dictionary field has already been initialized.");
     }
@@ -70,6 +105,10 @@ public abstract class DictionaryEncodedWarpField extends WarpField {
     dictionary = new Dictionary(getDictionaryField().createVector(allocator), getDictionaryEncoding());
     lookUps = new HashMap<Object, Integer>();
 
+    //
+    // The initial dictionary is optional, values are added to the dictionary as they are set
+    //
+
     if (null != initialDictionary) {
       int i = 0;
       for (Object o: initialDictionary) {
@@ -80,12 +119,18 @@ public abstract class DictionaryEncodedWarpField extends WarpField {
         dictionaryVector.setValueCount(dictionaryVector.getValueCount() + 1);
         i++;
       }
+    }
+  }
 
-    } else {
+  /**
+   * @return true if values were added to the dictionary since it was last written, see DictionaryBatchStreamWriter
+   */
+  public boolean isExtended() {
+    return extended;
+  }
 
-      // @see https://github.com/apache/arrow/issues/5527
-      throw new RuntimeException("The dictionary must be provided before reading data due to a bug in current java implementation of Arrow library.");
-    }
+  public void setWritten() {
+    extended = false;
   }
 
   final protected Dictionary getDictionary() {
@@ -105,12 +150,28 @@ public abstract class DictionaryEncodedWarpField extends WarpField {
   }
 
   protected void clearDictionary() {
+    if (!isDictionaryEncoded()) {
+      return;
+    }
+
     getDictionaryVector().clear();
     lookUps.clear();
+    extended = false;
   }
 
   public void setSafe(int index, Object o) {
 
+    if (!isDictionaryEncoded()) {
+      if (null == o) {
+        ((VarCharVector) getVector()).setNull(index);
+      } else if (o instanceof String) {
+        ((VarCharVector) getVector()).setSafe(index, new Text((String) o));
+      } else {
+        throw new RuntimeException(getField() + " field expect to set input of type String.");
+      }
+      return;
+    }
+
     if (null == o) {
       switch (getDictionaryEncoding().getIndexType().getBitWidth()) {
         case 8:
@@ -140,16 +201,17 @@ public abstract class DictionaryEncodedWarpField extends WarpField {
     Integer id = lookUps.get(o);
 
     if (null == id) {
+      if (lookUps.size() >= 1L << (getDictionaryEncoding().getIndexType().getBitWidth() - 1)) {
+        throw new RuntimeException("Dictionary of field " + getKey() + " can not hold more than " + lookUps.size() + " values with its " + getDictionaryEncoding().getIndexType().getBitWidth() + "-bit indices.");
+      }
+
       id = lookUps.size();
       lookUps.put(o, lookUps.size());
 
       VarCharVector dictionaryVector = ((VarCharVector)  getDictionaryVector());
       dictionaryVector.setSafe(id, new Text((String) o));
       dictionaryVector.setValueCount(dictionaryVector.getValueCount() + 1);
-
-      // Right now we can not continue
-      // @see https://github.com/apache/arrow/issues/5527
-      throw new RuntimeException("The dictionary must be provided before reading data due to a bug in current java implementation of Arrow library.");
+      extended = true;
     }
 
     switch (getDictionaryEncoding().getIndexType().getBitWidth()) {
@@ -170,4 +232,69 @@ public abstract class DictionaryEncodedWarpField extends WarpField {
         throw new RuntimeException("Index type with bit width other than 8, 16 ot 32 are not supported.");
     }
   }
+
+  /**
+   * Set count rows, starting at offset, to the same value. The dictionary lookup is done once.
+   *
+   * @param offset
+   * @param count
+   * @param o
+   */
+  public void setSafeRepeated(int offset, int count, Object o) {
+    if (0 == count) {
+      return;
+    }
+
+    if (!isDictionaryEncoded()) {
+      VarCharVector vector = (VarCharVector) getVector();
+
+      if (null == o) {
+        for (int i = offset; i < offset + count; i++) {
+          vector.setNull(i);
+        }
+      } else {
+        byte[] bytes = ((String) o).getBytes(StandardCharsets.UTF_8);
+        for (int i = offset; i < offset + count; i++) {
+          vector.setSafe(i, bytes);
+        }
+      }
+      return;
+    }
+
+    // set the first row with the regular method, which adds the value to the dictionary if needed
+    setSafe(offset, o);
+
+    if (null == o) {
+      for (int i = offset + 1; i < offset + count; i++) {
+        setSafe(i, null);
+      }
+      return;
+    }
+
+    int id = lookUps.get(o);
+
+    switch (getDictionaryEncoding().getIndexType().getBitWidth()) {
+      case 8:
+        for (int i = offset + 1; i < offset + count; i++) {
+          ((TinyIntVector) getVector()).setSafe(i, id);
+        }
+        break;
+
+      case 16:
+        for (int i = offset + 1; i < offset + count; i++) {
+          ((SmallIntVector) getVector()).setSafe(i, (short) id);
+        }
+        break;
+
+      case 32:
+        for (int i = offset + 1; i < offset + count; i++) {
+          ((IntVector) getVector()).setSafe(i, id);
+        }
+        break;
+
+      case 64:
+      default:
+        throw new RuntimeException("Index type with bit width other than 8, 16 ot 32 are not supported.");
+    }
+  }
 }
@@ -16,6 +16,9 @@
 
 package io.warp10.arrow.pojo;
 
+import io.warp10.continuum.gts.GTSDecoder;
+import io.warp10.continuum.gts.GTSHelper;
+import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.script.functions.TYPEOF;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.BigIntVector;
@@ -59,6 +62,39 @@ public class ElevationWarpField extends WarpField {
     ((BigIntVector)  getVector()).setSafe(index, (long) o);
   }
 
+  @Override
+  public void fillFromGts(int offset, GeoTimeSerie gts, int from, int count) {
+    BigIntVector vector = (BigIntVector) getVector();
+
+    if (!gts.hasElevations()) {
+      for (int i = 0; i < count; i++) {
+        vector.setNull(offset + i);
+      }
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      long elevation = GTSHelper.elevationAtIndex(gts, from + i);
+
+      if (GeoTimeSerie.NO_ELEVATION == elevation) {
+        vector.setNull(offset + i);
+      } else {
+        vector.set(offset + i, elevation);
+      }
+    }
+  }
+
+  @Override
+  public void setFromDecoder(int index, GTSDecoder decoder) {
+    long elevation = decoder.getElevation();
+
+    if (GeoTimeSerie.NO_ELEVATION == elevation) {
+      ((BigIntVector)  getVector()).setNull(index);
+    } else {
+      ((BigIntVector)  getVector()).set(index, elevation);
+    }
+  }
+
   @Override
   public Object get(int index) {
     return getLong(index);
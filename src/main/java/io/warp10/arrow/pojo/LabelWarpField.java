@@ -29,7 +29,7 @@ import java.util.List;
 public class LabelWarpField extends DictionaryEncodedWarpField {
 
   private final String labelKey;
-  private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(16, true); // max 2¹⁵ label keys
+  private static final ArrowType.Int DEFAULT_INDEX_TYPE = new ArrowType.Int(16, true); // max 2¹⁵ label values
   private final DictionaryEncoding encoding;
   private final Field indexField;
   private final Field dictionaryField;
@@ -55,32 +55,35 @@ public class LabelWarpField extends DictionaryEncodedWarpField {
   }
 
   public LabelWarpField(String labelKey, int dictionaryId, Type type){
-    if (reservedFieldNames.contains(labelKey)) {
-      throw new RuntimeException("Label key '" + labelKey + "' is reserved by serialization process. Please rename it.");
-    }
+    this(labelKey, dictionaryId, type, DEFAULT_INDEX_TYPE, null);
+  }
 
-    this.labelKey = labelKey;
-    encoding = new DictionaryEncoding(dictionaryId, false, INDEX_TYPE);
-    indexField = new Field(labelKey, new FieldType(true, INDEX_TYPE, encoding), null);
-    dictionaryField = Field.nullable(labelKey + "::dictionary", new ArrowType.Utf8());
-    this.type = type;
+  /**
+   * @param indexType index type of the dictionary, or null for a plain Utf8 field, see indexType(int, long)
+   */
+  public LabelWarpField(String labelKey, int dictionaryId, Type type, ArrowType.Int indexType){
+    this(labelKey, dictionaryId, type, indexType, null);
   }
 
   public LabelWarpField(BufferAllocator allocator, String labelKey, int dictionaryId, Type type) {
-    super(allocator);
+    this(labelKey, dictionaryId, type, DEFAULT_INDEX_TYPE, null);
+    initialize(allocator);
+  }
 
-    if (reservedFieldNames.contains(labelKey)) {
-      throw new RuntimeException("Label key '" + labelKey + "' is reserved by serialization process. Please rename it.");
-    }
+  public LabelWarpField(String labelKey, int dictionaryId, Type type, List<Object> initialDictionary){
+    this(labelKey, dictionaryId, type, DEFAULT_INDEX_TYPE, initialDictionary);
+  }
 
-    this.labelKey = labelKey;
-    encoding = new DictionaryEncoding(dictionaryId, false, INDEX_TYPE);
-    indexField = new Field(labelKey, new FieldType(true, INDEX_TYPE, encoding), null);
-    dictionaryField = Field.nullable(labelKey + "::dictionary", new ArrowType.Utf8());
-    this.type = type;
+  public LabelWarpField(BufferAllocator allocator, String labelKey, int dictionaryId, Type type, List<Object> initialDictionary) {
+    this(labelKey, dictionaryId, type, DEFAULT_INDEX_TYPE, initialDictionary);
+    initialize(allocator);
   }
 
-  public LabelWarpField(String labelKey, int dictionaryId, Type type, List<Object> initialDictionary){
+  /**
+   * @param indexType index type of the dictionary, or null for a plain Utf8 field, see indexType(int, long)
+   * @param initialDictionary initial values of the dictionary, or null
+   */
+  public LabelWarpField(String labelKey, int dictionaryId, Type type, ArrowType.Int indexType, List<Object> initialDictionary) {
     super(initialDictionary);
 
     if (reservedFieldNames.contains(labelKey)) {
@@ -88,22 +91,15 @@ public class LabelWarpField extends DictionaryEncodedWarpField {
     }
 
     this.labelKey = labelKey;
-    encoding = new DictionaryEncoding(dictionaryId, false, INDEX_TYPE);
-    indexField = new Field(labelKey, new FieldType(true, INDEX_TYPE, encoding), null);
-    dictionaryField = Field.nullable(labelKey + "::dictionary", new ArrowType.Utf8());
-    this.type = type;
-  }
-
-  public LabelWarpField(BufferAllocator allocator, String labelKey, int dictionaryId, Type type, List<Object> initialDictionary) {
-    super(allocator, initialDictionary);
 
-    if (reservedFieldNames.contains(labelKey)) {
-      throw new RuntimeException("Label key '" + labelKey + "' is reserved by serialization process. Please rename it.");
+    if (null == indexType) {
+      encoding = null;
+      indexField = Field.nullable(labelKey, new ArrowType.Utf8());
+    } else {
+      encoding = new DictionaryEncoding(dictionaryId, false, indexType);
+      indexField = new Field(labelKey, new FieldType(true, indexType, encoding), null);
     }
 
-    this.labelKey = labelKey;
-    encoding = new DictionaryEncoding(dictionaryId, false, INDEX_TYPE);
-    indexField = new Field(labelKey, new FieldType(true, INDEX_TYPE, encoding), null);
     dictionaryField = Field.nullable(labelKey + "::dictionary", new ArrowType.Utf8());
     this.type = type;
   }
@@ -16,6 +16,10 @@
 
 package io.warp10.arrow.pojo;
 
+import com.geoxp.GeoXPLib;
+import io.warp10.continuum.gts.GTSDecoder;
+import io.warp10.continuum.gts.GTSHelper;
+import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.script.functions.TYPEOF;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.Float4Vector;
@@ -60,6 +64,39 @@ public class LatitudeWarpField extends WarpField {
     ((Float4Vector)  getVector()).setSafe(index, ((Double) o).floatValue()); // actually cast it to single precision
   }
 
+  @Override
+  public void fillFromGts(int offset, GeoTimeSerie gts, int from, int count) {
+    Float4Vector vector = (Float4Vector) getVector();
+
+    if (!gts.hasLocations()) {
+      for (int i = 0; i < count; i++) {
+        vector.setNull(offset + i);
+      }
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      long location = GTSHelper.locationAtIndex(gts, from + i);
+
+      if (GeoTimeSerie.NO_LOCATION == location) {
+        vector.setNull(offset + i);
+      } else {
+        vector.set(offset + i, (float) GeoXPLib.fromGeoXPPoint(location)[0]);
+      }
+    }
+  }
+
+  @Override
+  public void setFromDecoder(int index, GTSDecoder decoder) {
+    long location = decoder.getLocation();
+
+    if (GeoTimeSerie.NO_LOCATION == location) {
+      ((Float4Vector)  getVector()).setNull(index);
+    } else {
+      ((Float4Vector)  getVector()).set(index, (float) GeoXPLib.fromGeoXPPoint(location)[0]);
+    }
+  }
+
   @Override
   public Object get(int index) {
     return getDouble(index);
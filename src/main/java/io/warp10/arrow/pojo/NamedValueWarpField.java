@@ -85,9 +85,11 @@ public class NamedValueWarpField extends ValueWarpField {
         return Type.BOOLEAN;
 
       case Utf8:
+      case LargeUtf8:
         return Type.STRING;
 
       case Binary:
+      case LargeBinary:
         return Type.BYTES;
 
       default:
@@ -95,8 +97,13 @@ public class NamedValueWarpField extends ValueWarpField {
     }
   }
 
+  public static boolean hasLargeOffsets(FieldVector vector) {
+    ArrowType.ArrowTypeID typeID = vector.getMinorType().getType().getTypeID();
+    return ArrowType.ArrowTypeID.LargeUtf8 == typeID || ArrowType.ArrowTypeID.LargeBinary == typeID;
+  }
+
   public NamedValueWarpField(FieldVector vector) throws WarpScriptException {
-    super(getCorrespondingType(vector));
+    super(getCorrespondingType(vector), hasLargeOffsets(vector));
     this.vector = vector;
     this.field = vector.getField();
     this.name = vector.getName();
@@ -16,6 +16,9 @@
 
 package io.warp10.arrow.pojo;
 
+import io.warp10.continuum.gts.GTSDecoder;
+import io.warp10.continuum.gts.GTSHelper;
+import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.script.WarpScriptException;
 import io.warp10.script.functions.TYPEOF;
 import org.apache.arrow.memory.BufferAllocator;
@@ -77,6 +80,19 @@ public class TimestampWarpField extends WarpField {
     ((BigIntVector)  getVector()).setSafe(index, (long) o);
   }
 
+  @Override
+  public void fillFromGts(int offset, GeoTimeSerie gts, int from, int count) {
+    BigIntVector vector = (BigIntVector) getVector();
+    for (int i = 0; i < count; i++) {
+      vector.set(offset + i, GTSHelper.tickAtIndex(gts, from + i));
+    }
+  }
+
+  @Override
+  public void setFromDecoder(int index, GTSDecoder decoder) {
+    ((BigIntVector)  getVector()).set(index, decoder.getTimestamp());
+  }
+
   @Override
   public Object get(int index) {
     return getLong(index);
@@ -16,12 +16,16 @@
 
 package io.warp10.arrow.pojo;
 
+import io.warp10.continuum.gts.GTSDecoder;
+import io.warp10.continuum.gts.GTSHelper;
 import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.script.functions.TYPEOF;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.BigIntVector;
 import org.apache.arrow.vector.BitVector;
 import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.LargeVarBinaryVector;
+import org.apache.arrow.vector.LargeVarCharVector;
 import org.apache.arrow.vector.VarBinaryVector;
 import org.apache.arrow.vector.VarCharVector;
 import org.apache.arrow.vector.types.FloatingPointPrecision;
@@ -30,6 +34,8 @@ import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.util.Text;
 
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 
 public class ValueWarpField extends WarpField {
 
@@ -45,6 +51,10 @@ public class ValueWarpField extends WarpField {
   private final static Field STRING_VALUES_FIELD = Field.nullable(STRING_VALUES_KEY, new ArrowType.Utf8());
   private final static Field BYTES_VALUES_FIELD = Field.nullable(BYTES_VALUES_KEY, new ArrowType.Binary());
 
+  // variants with 64-bit offsets, used when the data of a batch exceeds 2 GB
+  private final static Field LARGE_STRING_VALUES_FIELD = Field.nullable(STRING_VALUES_KEY, new ArrowType.LargeUtf8());
+  private final static Field LARGE_BYTES_VALUES_FIELD = Field.nullable(BYTES_VALUES_KEY, new ArrowType.LargeBinary());
+
   public enum Type {
     LONG(Long.class),
     DOUBLE(Double.class),
@@ -62,9 +72,19 @@ public class ValueWarpField extends WarpField {
   }
 
   private final Type type;
+  private final boolean largeOffsets;
 
   public ValueWarpField(Type type) {
+    this(type, false);
+  }
+
+  /**
+   * @param type
+   * @param largeOffsets if true, STRING and BYTES values are stored in vectors with 64-bit offsets (LargeUtf8, LargeBinary)
+   */
+  public ValueWarpField(Type type, boolean largeOffsets) {
     this.type = type;
+    this.largeOffsets = largeOffsets;
   }
 
   public ValueWarpField(GeoTimeSerie.TYPE type) {
@@ -74,6 +94,7 @@ public class ValueWarpField extends WarpField {
   public ValueWarpField(BufferAllocator allocator, Type type) {
     super(allocator);
     this.type = type;
+    this.largeOffsets = false;
   }
 
   public ValueWarpField(BufferAllocator allocator, GeoTimeSerie.TYPE type) {
@@ -116,10 +137,10 @@ public class ValueWarpField extends WarpField {
         return BOOLEAN_VALUES_FIELD;
 
       case STRING:
-        return STRING_VALUES_FIELD;
+        return largeOffsets ? LARGE_STRING_VALUES_FIELD : STRING_VALUES_FIELD;
 
       case BYTES:
-        return BYTES_VALUES_FIELD;
+        return largeOffsets ? LARGE_BYTES_VALUES_FIELD : BYTES_VALUES_FIELD;
 
       default:
         throw new RuntimeException("Unrecognized type.");
@@ -134,6 +155,10 @@ public class ValueWarpField extends WarpField {
     return type;
   }
 
+  public boolean hasLargeOffsets() {
+    return largeOffsets;
+  }
+
   private void setSafeLong(int index, Object o) {
 
     if (null == o) {
@@ -179,7 +204,11 @@ public class ValueWarpField extends WarpField {
   private void setSafeString(int index, Object o) {
 
     if (null == o) {
-      ((VarCharVector)  getVector()).setNull(index);
+      if (largeOffsets) {
+        ((LargeVarCharVector)  getVector()).setNull(index);
+      } else {
+        ((VarCharVector)  getVector()).setNull(index);
+      }
       return;
     }
 
@@ -187,13 +216,21 @@ public class ValueWarpField extends WarpField {
       throw new RuntimeException(getField() + " field expect to set input of type String.");
     }
 
-    ((VarCharVector)  getVector()).setSafe(index, new Text((String) o));
+    if (largeOffsets) {
+      ((LargeVarCharVector)  getVector()).setSafe(index, ((String) o).getBytes(StandardCharsets.UTF_8));
+    } else {
+      ((VarCharVector)  getVector()).setSafe(index, new Text((String) o));
+    }
   }
 
   private void setSafeBytes(int index, Object o) {
 
     if (null == o) {
-      ((VarBinaryVector)  getVector()).setNull(index);
+      if (largeOffsets) {
+        ((LargeVarBinaryVector)  getVector()).setNull(index);
+      } else {
+        ((VarBinaryVector)  getVector()).setNull(index);
+      }
       return;
     }
 
@@ -201,7 +238,11 @@ public class ValueWarpField extends WarpField {
       throw new RuntimeException(getField() + " field expect to set input of type byte[].");
     }
 
-    ((VarBinaryVector)  getVector()).setSafe(index, (byte[]) o);
+    if (largeOffsets) {
+      ((LargeVarBinaryVector)  getVector()).setSafe(index, (byte[]) o);
+    } else {
+      ((VarBinaryVector)  getVector()).setSafe(index, (byte[]) o);
+    }
   }
 
   public void setSafe(int index, Object o) {
@@ -232,6 +273,79 @@ public class ValueWarpField extends WarpField {
     }
   }
 
+  /**
+   * The vector must have been allocated for offset + count rows and, for STRING values, their size in UTF-8.
+   * Values of a GTS whose type differs from the type of this field are written as nulls.
+   * Values are read with GTSHelper.valueAtIndex, the only public accessor to GTS values.
+   */
+  @Override
+  public void fillFromGts(int offset, GeoTimeSerie gts, int from, int count) {
+
+    if (!type.name().equals(gts.getType().name())) {
+      for (int i = 0; i < count; i++) {
+        setSafe(offset + i, null);
+      }
+      return;
+    }
+
+    switch (type) {
+      case LONG:
+        BigIntVector longVector = (BigIntVector) getVector();
+        for (int i = 0; i < count; i++) {
+          longVector.set(offset + i, ((Long) GTSHelper.valueAtIndex(gts, from + i)).longValue());
+        }
+        break;
+
+      case DOUBLE:
+        Float8Vector doubleVector = (Float8Vector) getVector();
+        for (int i = 0; i < count; i++) {
+          doubleVector.set(offset + i, ((Double) GTSHelper.valueAtIndex(gts, from + i)).doubleValue());
+        }
+        break;
+
+      case BOOLEAN:
+        BitVector booleanVector = (BitVector) getVector();
+        for (int i = 0; i < count; i++) {
+          booleanVector.set(offset + i, Boolean.TRUE.equals(GTSHelper.valueAtIndex(gts, from + i)) ? 1 : 0);
+        }
+        break;
+
+      case STRING:
+        for (int i = 0; i < count; i++) {
+          byte[] bytes = ((String) GTSHelper.valueAtIndex(gts, from + i)).getBytes(StandardCharsets.UTF_8);
+
+          if (largeOffsets) {
+            ((LargeVarCharVector) getVector()).set(offset + i, bytes);
+          } else {
+            ((VarCharVector) getVector()).set(offset + i, bytes);
+          }
+        }
+        break;
+
+      default:
+        throw new RuntimeException("Unrecognized type.");
+    }
+  }
+
+  /**
+   * The value of the data point is written only if its class matches the type of this field, otherwise the row is null.
+   * BigDecimal values are written as doubles.
+   */
+  @Override
+  public void setFromDecoder(int index, GTSDecoder decoder) {
+    Object value = decoder.getValue();
+
+    if (value instanceof BigDecimal) {
+      value = ((BigDecimal) value).doubleValue();
+    }
+
+    if (type.getCorrespondingClass() == value.getClass()) {
+      setSafe(index, value);
+    } else {
+      setSafe(index, null);
+    }
+  }
+
   @Override
   public Object get(int index) {
 
@@ -250,10 +364,10 @@ public class ValueWarpField extends WarpField {
         return ((BitVector)  getVector()).get(index);
 
       case STRING:
-        return ((VarCharVector)  getVector()).get(index);
+        return largeOffsets ? ((LargeVarCharVector)  getVector()).get(index) : ((VarCharVector)  getVector()).get(index);
 
       case BYTES:
-        return ((VarBinaryVector)  getVector()).get(index);
+        return largeOffsets ? ((LargeVarBinaryVector)  getVector()).get(index) : ((VarBinaryVector)  getVector()).get(index);
 
       default:
         throw new RuntimeException("Unrecognized type.");
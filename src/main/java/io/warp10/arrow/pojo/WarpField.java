@@ -16,6 +16,9 @@
 
 package io.warp10.arrow.pojo;
 
+import io.warp10.arrow.direct.ArrowHelper;
+import io.warp10.continuum.gts.GTSDecoder;
+import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.script.WarpScriptException;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.FieldVector;
@@ -56,6 +59,42 @@ public abstract class WarpField {
   public abstract String getWarpScriptType();
   public abstract void setSafe(int index, Object o);
 
+  /**
+   * Copy count data points of a GTS, starting at index from, into the rows of this field starting at offset.
+   * Fields written for each data point override this method with a typed loop, without capacity checks:
+   * the vector must have been allocated beforehand, see allocateNew.
+   *
+   * @param offset
+   * @param gts
+   * @param from
+   * @param count
+   */
+  public void fillFromGts(int offset, GeoTimeSerie gts, int from, int count) {
+    throw new RuntimeException(getKey() + " field can not be filled from a GTS.");
+  }
+
+  /**
+   * Set the row at given index from the current data point of a decoder.
+   * Fields written for each data point override this method, fixed width values are set without capacity checks.
+   *
+   * @param index
+   * @param decoder
+   */
+  public void setFromDecoder(int index, GTSDecoder decoder) {
+    throw new RuntimeException(getKey() + " field can not be set from a GTS decoder.");
+  }
+
+  /**
+   * Allocate the vector for valueCount values and, for variable width vectors, dataBytes bytes of data.
+   * Previous values are released.
+   *
+   * @param valueCount
+   * @param dataBytes
+   */
+  public void allocateNew(int valueCount, long dataBytes) {
+    ArrowHelper.allocateNew(getVector(), valueCount, dataBytes);
+  }
+
   public void setSafeUpdateValueCount(int index, Object o) {
     setSafe(index, o);
 
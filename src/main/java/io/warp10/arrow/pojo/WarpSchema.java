@@ -16,10 +16,14 @@
 
 package io.warp10.arrow.pojo;
 
-import com.geoxp.GeoXPLib;
 import io.warp10.Revision;
+import io.warp10.WarpConfig;
 import io.warp10.arrow.ArrowExtension;
 import io.warp10.arrow.convert.Register;
+import io.warp10.arrow.direct.ArrowHelper;
+import io.warp10.arrow.direct.ArrowWriters;
+import io.warp10.arrow.direct.DictionaryBatchStreamWriter;
+import io.warp10.arrow.direct.LruCache;
 import io.warp10.arrow.warpscriptFunctions.ARROWTO;
 import io.warp10.continuum.gts.GTSDecoder;
 import io.warp10.continuum.gts.GTSEncoder;
@@ -27,20 +31,32 @@ import io.warp10.continuum.gts.GTSHelper;
 import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.continuum.store.Constants;
 import io.warp10.script.WarpScriptException;
+import io.warp10.script.functions.TYPEOF;
 import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.vector.FieldVector;
 import org.apache.arrow.vector.VectorSchemaRoot;
 import org.apache.arrow.vector.dictionary.DictionaryProvider;
 import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
 import org.apache.arrow.vector.types.pojo.Field;
 import org.apache.arrow.vector.types.pojo.Schema;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * A WarpSchema build the Arrow schema corresponding to WarpScript logics,
@@ -51,6 +67,7 @@ public class WarpSchema {
   public final static String MODE = ARROWTO.MODE;
   public final static String REV = "WarpScriptVersion";
   public final static String STU = "WarpScriptTimeUnitsPerSecond";
+  public final static String SERIES_METADATA = ArrowHelper.SERIES_METADATA;
 
   final private VectorSchemaRoot root;
   final private Schema schema;
@@ -58,7 +75,8 @@ public class WarpSchema {
   final private Map<String, String> metadata;
   final private List<WarpField> warpFields;
   final private DictionaryProvider.MapDictionaryProvider dictionaryProvider;
-  final private Object[] dataPointHolder;
+  final private WarpField[] pointFields; // fields written for each data point, in schema order
+  private EncodersLayout layout; // layout of an ENCODERS schema, or null
 
   public Schema getSchema() {
     return schema;
@@ -95,17 +113,25 @@ public class WarpSchema {
       warpField.initialize(allocator);
       vectors.add(warpField.getVector());
 
-      if (warpField instanceof DictionaryEncodedWarpField) {
+      if (warpField instanceof DictionaryEncodedWarpField && ((DictionaryEncodedWarpField) warpField).isDictionaryEncoded()) {
         dictionaryProvider.put(((DictionaryEncodedWarpField) warpField).getDictionary());
       }
     }
 
     schema = new Schema(fields, metadata);
     root = new VectorSchemaRoot(schema, vectors, 0);
-    dataPointHolder = new Object[warpFields.size()];
-    for (int i = 0; i < dataPointHolder.length; i++) {
-      dataPointHolder[i] = null;
+
+    //
+    // Per-schema plan: classname, labels and attributes are constant per series and are set once per batch
+    //
+
+    List<WarpField> pointFieldList = new ArrayList<WarpField>(warpFields.size());
+    for (WarpField warpField: warpFields) {
+      if (!(warpField instanceof DictionaryEncodedWarpField)) {
+        pointFieldList.add(warpField);
+      }
     }
+    pointFields = pointFieldList.toArray(new WarpField[0]);
   }
 
   public WarpSchema(List<WarpField> warpFields) {
@@ -126,10 +152,49 @@ public class WarpSchema {
     }
   }
 
+  /**
+   * Set the per-point fields at given index. Dictionary-encoded fields (classname, labels and attributes) are
+   * constant per series and are set once per batch by setSeriesMetadata.
+   *
+   * @param index
+   * @param o
+   */
   public void set(int index, Object[] o) {
     int i = 0;
     for(WarpField warpField: warpFields) {
-      warpField.setSafe(index, o[i++]);
+      if (!(warpField instanceof DictionaryEncodedWarpField)) {
+        warpField.setSafe(index, o[i]);
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Set the classname, label and attribute fields of count rows of the current batch, starting at offset.
+   *
+   * @param offset
+   * @param count
+   * @param name
+   * @param labels
+   * @param attributes
+   */
+  public void setSeriesMetadata(int offset, int count, String name, Map<String, String> labels, Map<String, String> attributes) {
+    for (WarpField warpField: warpFields) {
+      if (warpField instanceof ClassnameWarpField) {
+        ((ClassnameWarpField) warpField).setSafeRepeated(offset, count, name);
+
+      } else if (warpField instanceof LabelWarpField) {
+
+        switch (((LabelWarpField) warpField).getType()) {
+          case LABEL:
+            ((LabelWarpField) warpField).setSafeRepeated(offset, count, null == labels ? null : labels.get(warpField.getKey()));
+            break;
+
+          case ATTRIBUTE:
+            ((LabelWarpField) warpField).setSafeRepeated(offset, count, null == attributes ? null : attributes.get(warpField.getKey()));
+            break;
+        }
+      }
     }
   }
 
@@ -216,91 +281,406 @@ public class WarpSchema {
   /**
    * Build a WarpSchema from a list containing GTS and GtsEncoders.
    * Only necessary fields are added, in the order: meta-, time-, geo-, value- fields.
+   * The dictionaries of the classname, label and attribute fields start empty and are filled while the list is written.
    *
    * @param list
    * @return
    * @throws WarpScriptException
    */
   public static WarpSchema GtsOrEncoderListSchema(List<Object> list) throws WarpScriptException {
+    checkGtsOrEncoderList(list);
+    return encodersLayout(list, null).newSchema();
+  }
+
+  //
+  // Layouts of ENCODERS schemas are cached across calls, keyed by a digest of the metadata of the series of the list
+  // Its limits are read from the configuration when the extension is loaded
+  //
+
+  public final static String CONF_LAYOUT_CACHE_MAX_ENTRIES = "arrow.layoutcache.maxentries";
+  public final static String CONF_LAYOUT_CACHE_MAX_BYTES = "arrow.layoutcache.maxbytes";
+  public final static int DEFAULT_LAYOUT_CACHE_MAX_ENTRIES = 256;
+  public final static long DEFAULT_LAYOUT_CACHE_MAX_BYTES = 64L * 1024L * 1024L;
+  private final static LruCache<String, EncodersLayout> layoutCache = new LruCache<String, EncodersLayout>(
+    Integer.parseInt(WarpConfig.getProperty(CONF_LAYOUT_CACHE_MAX_ENTRIES, String.valueOf(DEFAULT_LAYOUT_CACHE_MAX_ENTRIES))),
+    Long.parseLong(WarpConfig.getProperty(CONF_LAYOUT_CACHE_MAX_BYTES, String.valueOf(DEFAULT_LAYOUT_CACHE_MAX_BYTES))));
+
+  public static LruCache<String, EncodersLayout> getLayoutCache() {
+    return layoutCache;
+  }
+
+  /**
+   * Same as GtsOrEncoderListSchema, but the layout of the schema is taken from a cache if the same set of series was
+   * converted before. Once the list is written with writeListToStream, the layout is cached with the content of its
+   * dictionaries, which are then written once when the stream starts instead of being extended while it is written.
+   *
+   * @param list
+   * @return
+   * @throws WarpScriptException
+   */
+  public static WarpSchema cachedGtsOrEncoderListSchema(List<Object> list) throws WarpScriptException {
+    checkGtsOrEncoderList(list);
+
+    String key = layoutKey(list);
+    EncodersLayout layout = layoutCache.get(key);
+
+    // the layout of a list whose STRING or BYTES data now exceeds 2 GB is built again, with 64-bit offsets
+    if (null == layout || (!layout.largeOffsets && requiresLargeOffsets(list))) {
+      layout = encodersLayout(list, key);
+    }
+
+    return layout.newSchema();
+  }
+
+  /**
+   * Build a WarpSchema in ENCODERS conversion mode for series whose data points are not known yet, such as the series
+   * found in the directory before they are fetched. Fields for the classname, labels and attributes of the series are
+   * added, with every index and value field. Dictionaries are used whatever the number of rows, which is not known.
+   *
+   * @param series GTS or GTSEncoders that hold the metadata of the series
+   * @return
+   * @throws WarpScriptException
+   */
+  public static WarpSchema pendingGtsOrEncoderListSchema(List<Object> series) throws WarpScriptException {
+    checkGtsOrEncoderList(series);
+    return encodersLayout(series, null, true).newSchema();
+  }
+
+  private static void checkGtsOrEncoderList(List<Object> list) throws WarpScriptException {
     for (Object o: list) {
       if (!(o instanceof GeoTimeSerie) && !(o instanceof GTSEncoder)) {
         throw new WarpScriptException("Input list should contain only GTS or GTSENCODER.");
       }
     }
+  }
+
+  /**
+   * SipHash key of the ids of classnames, labels and attributes in layout keys. These ids only need to be the same across
+   * calls, not to match the ids of the platform.
+   */
+  private final static long[] LAYOUT_KEY_SIPHASH_KEY = new long[] { 0x5761727053636865L, 0x6D614C61796F7574L };
+
+  /**
+   * Key of a list of GTS and GTSEncoders in the layout cache: a SHA-256 digest of the sorted signatures of its elements,
+   * so that it has a fixed size and does not depend on the order of the list. The signature of an element is made of the
+   * ids of its classname, labels and attributes, and of what determines its index and value fields (GTS type, presence of
+   * data points, locations and elevations).
+   *
+   * @param list
+   * @return the digest, as an hexadecimal string
+   * @throws WarpScriptException
+   */
+  public static String layoutKey(List<Object> list) throws WarpScriptException {
+    long[][] signatures = new long[list.size()][];
+
+    for (int i = 0; i < list.size(); i++) {
+      Object o = list.get(i);
+      String name;
+      Map<String, String> labels;
+      Map<String, String> attributes;
+      long fields;
+
+      if (o instanceof GeoTimeSerie) {
+        GeoTimeSerie gts = (GeoTimeSerie) o;
+        name = gts.getName();
+        labels = gts.getLabels();
+        attributes = gts.getMetadata().getAttributes();
+        fields = gts.size() > 0 ? 1L + gts.getType().ordinal() * 4L + (gts.hasLocations() ? 1L : 0L) + (gts.hasElevations() ? 2L : 0L) : 0L;
+
+      } else {
+        GTSEncoder encoder = (GTSEncoder) o;
+        name = encoder.getName();
+        labels = null == encoder.getRawMetadata() ? null : encoder.getLabels();
+        attributes = null == encoder.getRawMetadata() ? null : encoder.getMetadata().getAttributes();
+        fields = encoder.getCount() > 0 ? -1L : 0L;
+      }
+
+      signatures[i] = new long[] {
+        GTSHelper.classId(LAYOUT_KEY_SIPHASH_KEY, null == name ? "" : name),
+        GTSHelper.labelsId(LAYOUT_KEY_SIPHASH_KEY, null == labels ? Collections.<String, String>emptyMap() : labels),
+        GTSHelper.labelsId(LAYOUT_KEY_SIPHASH_KEY, null == attributes ? Collections.<String, String>emptyMap() : attributes),
+        fields
+      };
+    }
+
+    Arrays.sort(signatures, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] s1, long[] s2) {
+        for (int j = 0; j < s1.length; j++) {
+          if (s1[j] != s2[j]) {
+            return Long.compare(s1[j], s2[j]);
+          }
+        }
+        return 0;
+      }
+    });
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new WarpScriptException(nsae);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(4 * Long.BYTES);
+    for (long[] signature: signatures) {
+      buffer.clear();
+      for (long value: signature) {
+        buffer.putLong(value);
+      }
+      digest.update(buffer.array());
+    }
+
+    StringBuilder sb = new StringBuilder(64);
+    for (byte b: digest.digest()) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+      sb.append(Character.forDigit(b & 0xF, 16));
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Choose the fields of the ENCODERS schema of a list.
+   *
+   * @param list
+   * @param cacheKey key of the layout in the layout cache, or null if it is not to be cached
+   * @return
+   */
+  private static EncodersLayout encodersLayout(List<Object> list, String cacheKey) {
+    return encodersLayout(list, cacheKey, false);
+  }
+
+  /**
+   * Choose the fields of the ENCODERS schema of a list.
+   *
+   * @param list
+   * @param cacheKey key of the layout in the layout cache, or null if it is not to be cached
+   * @param pending true if the data points of the elements of the list are not known yet
+   * @return
+   */
+  private static EncodersLayout encodersLayout(List<Object> list, String cacheKey, boolean pending) {
 
     //
     // We loop through the list to choose which non-empty fields to add to the schema.
     //
 
     List<String> namePool = new ArrayList<>(); // The pool of fields already picked by name
-    List<WarpField> fields = new ArrayList<>(); // The fields to make up for a schema
-    int nLabelsOrAttributes = 0;
 
     //
     // Metadata fields (classname, labels and attributes)
+    // Their distinct values are counted to choose the index type of their dictionaries, see DictionaryEncodedWarpField.indexType
     //
 
+    Map<String, LabelWarpField.Type> types = new HashMap<>(); // whether a key is a label or an attribute key
+    Map<String, Set<String>> distinctValues = new HashMap<>();
+    long rowCount = 0;
+
     for (Object o: list) {
+      rowCount += rowCount(o);
 
       if (o instanceof GeoTimeSerie) {
         GeoTimeSerie gts = (GeoTimeSerie) o;
 
-        if (!namePool.contains(ClassnameWarpField.CLASSNAME_KEY)) {
-          fields.add(new ClassnameWarpField(createClassnameDictionary(list)));
-          namePool.add(ClassnameWarpField.CLASSNAME_KEY);
+        addMetadataValue(namePool, distinctValues, ClassnameWarpField.CLASSNAME_KEY, gts.getName());
+        addMetadataValues(namePool, types, distinctValues, LabelWarpField.Type.LABEL, gts.getLabels());
+        addMetadataValues(namePool, types, distinctValues, LabelWarpField.Type.ATTRIBUTE, gts.getMetadata().getAttributes());
+
+      } else if (o instanceof GTSEncoder) {
+        GTSEncoder encoder = (GTSEncoder) o;
+
+        if (null != encoder.getName() && encoder.getName().length() > 0) {
+          addMetadataValue(namePool, distinctValues, ClassnameWarpField.CLASSNAME_KEY, encoder.getName());
         }
 
-        Map<String, String> labels = gts.getLabels();
-        for (String key: labels.keySet()) {
+        if (null != encoder.getRawMetadata()) {
+          addMetadataValues(namePool, types, distinctValues, LabelWarpField.Type.LABEL, encoder.getLabels());
+          addMetadataValues(namePool, types, distinctValues, LabelWarpField.Type.ATTRIBUTE, encoder.getMetadata().getAttributes());
+        }
+      }
+    }
+
+    Map<String, ArrowType.Int> indexTypes = new HashMap<String, ArrowType.Int>();
+    for (Map.Entry<String, Set<String>> entry: distinctValues.entrySet()) {
+      indexTypes.put(entry.getKey(), DictionaryEncodedWarpField.indexType(entry.getValue().size(), pending ? Long.MAX_VALUE : rowCount));
+    }
+
+    // index and value fields are created by the layout, only the names they add to the pool are used here
+    boolean largeOffsets;
+    if (pending) {
+      addAllIndexAndValueFields(namePool, new ArrayList<WarpField>(), false);
+      largeOffsets = false;
+    } else {
+      largeOffsets = addIndexAndValueFields(list, namePool, new ArrayList<WarpField>());
+    }
+
+    return new EncodersLayout(cacheKey, namePool, types, indexTypes, largeOffsets, null);
+  }
+
+  /**
+   * The fields of an ENCODERS schema, from which schemas with new vectors are built
+   */
+  public static final class EncodersLayout {
+
+    private final String cacheKey;
+    private final List<String> keys;
+    private final Map<String, LabelWarpField.Type> types;
+    private final Map<String, ArrowType.Int> indexTypes;
+    private final boolean largeOffsets;
+    private final Map<String, List<Object>> dictionaries; // initial content of the dictionaries, or null
+
+    private EncodersLayout(String cacheKey, List<String> keys, Map<String, LabelWarpField.Type> types, Map<String, ArrowType.Int> indexTypes, boolean largeOffsets, Map<String, List<Object>> dictionaries) {
+      this.cacheKey = cacheKey;
+      this.keys = keys;
+      this.types = types;
+      this.indexTypes = indexTypes;
+      this.largeOffsets = largeOffsets;
+      this.dictionaries = dictionaries;
+    }
 
-          if(!namePool.contains(key)) {
-            fields.add(new LabelWarpField(key, ++nLabelsOrAttributes, LabelWarpField.Type.LABEL, createLabelorAttributeValueDictionary(list, key))); // id 0 is reserved for classname if field is used
-            namePool.add(key);
+    private WarpSchema newSchema() {
+      List<WarpField> fields = new ArrayList<WarpField>(keys.size());
+      int nLabelsOrAttributes = 0;
+
+      for (String key: keys) {
+        List<Object> dictionary = null == dictionaries ? null : dictionaries.get(key);
+
+        if (types.containsKey(key)) {
+          fields.add(new LabelWarpField(key, ++nLabelsOrAttributes, types.get(key), indexTypes.get(key), dictionary)); // id 0 is reserved for classname if field is used
+        } else if (ClassnameWarpField.CLASSNAME_KEY.equals(key)) {
+          fields.add(new ClassnameWarpField(indexTypes.get(key), dictionary));
+        } else if (TimestampWarpField.TIMESTAMPS_KEY.equals(key)) {
+          fields.add(new TimestampWarpField());
+        } else if (LatitudeWarpField.LATITUDE_KEY.equals(key)) {
+          fields.add(new LatitudeWarpField());
+        } else if (LongitudeWarpField.LONGITUDE_KEY.equals(key)) {
+          fields.add(new LongitudeWarpField());
+        } else if (ElevationWarpField.ELEVATION_KEY.equals(key)) {
+          fields.add(new ElevationWarpField());
+        } else {
+          for (ValueWarpField.Type type: ValueWarpField.Type.values()) {
+            if (TYPEOF.typeof(type.getCorrespondingClass()).equals(key)) {
+              fields.add(new ValueWarpField(type, largeOffsets));
+            }
           }
         }
+      }
 
-        Map<String, String> attributes = gts.getMetadata().getAttributes();
-        for (String key: attributes.keySet()) {
+      Map<String, String> metadata = new HashMap<String, String>(2);
+      metadata.put(MODE, Register.ENCODERS);
+      metadata.put(REV, Revision.REVISION);
+      metadata.put(STU, String.valueOf(Constants.TIME_UNITS_PER_S));
 
-          if(!namePool.contains(key)) {
-            fields.add(new LabelWarpField(key, ++nLabelsOrAttributes, LabelWarpField.Type.ATTRIBUTE, createLabelorAttributeValueDictionary(list, key)));
-            namePool.add(key);
-          }
+      WarpSchema schema = new WarpSchema(metadata, fields);
+      schema.layout = this;
+      return schema;
+    }
+
+    /**
+     * @return a copy of this layout whose dictionaries are initialized with the current values of the dictionaries of
+     * a schema, and its estimated size in bytes
+     */
+    private EncodersLayout withDictionaries(List<WarpField> warpFields) throws WarpScriptException {
+      Map<String, List<Object>> values = new HashMap<String, List<Object>>();
+
+      for (WarpField warpField: warpFields) {
+        if (warpField instanceof DictionaryEncodedWarpField && ((DictionaryEncodedWarpField) warpField).isDictionaryEncoded()) {
+          values.put(warpField.getKey(), Arrays.<Object>asList(ArrowHelper.decodeDictionary(((DictionaryEncodedWarpField) warpField).getDictionary())));
         }
+      }
 
-      } else if (o instanceof GTSEncoder) {
-        GTSEncoder encoder = (GTSEncoder) o;
+      return new EncodersLayout(cacheKey, keys, types, indexTypes, largeOffsets, values);
+    }
 
-        if (null != encoder.getName() && encoder.getName().length() > 0) {
-          if (!namePool.contains(ClassnameWarpField.CLASSNAME_KEY)) {
-            fields.add(new ClassnameWarpField(createClassnameDictionary(list)));
-            namePool.add(ClassnameWarpField.CLASSNAME_KEY);
+    /**
+     * @return an estimate of the memory held by this layout and its cache key, in bytes
+     */
+    private long size() {
+      long size = 2L * cacheKey.length() + 64L * keys.size();
+
+      if (null != dictionaries) {
+        for (List<Object> dictionary: dictionaries.values()) {
+          for (Object value: dictionary) {
+            size += 48L + (null == value ? 0L : 2L * ((String) value).length());
           }
         }
+      }
 
-        if (null != encoder.getRawMetadata()) {
+      return size;
+    }
+  }
 
-          Map<String, String> labels = encoder.getLabels();
-          for (String key: labels.keySet()) {
+  private static void addMetadataValue(List<String> namePool, Map<String, Set<String>> distinctValues, String key, String value) {
+    if (!namePool.contains(key)) {
+      namePool.add(key);
+      distinctValues.put(key, new HashSet<String>());
+    }
 
-            if(!namePool.contains(key)) {
-              fields.add(new LabelWarpField(key, ++nLabelsOrAttributes, LabelWarpField.Type.LABEL, createLabelorAttributeValueDictionary(list, key))); // id 0 is reserved for classname if field is used
-              namePool.add(key);
-            }
-          }
+    if (null != value) {
+      distinctValues.get(key).add(value);
+    }
+  }
 
-          Map<String, String> attributes = encoder.getMetadata().getAttributes();
-          for (String key: attributes.keySet()) {
+  /**
+   * Add the keys of labels or attributes to the pool of fields. A key that is both a label and an attribute key, or
+   * that is already used by another field, keeps its first use and the values of its other uses are ignored.
+   */
+  private static void addMetadataValues(List<String> namePool, Map<String, LabelWarpField.Type> types, Map<String, Set<String>> distinctValues, LabelWarpField.Type type, Map<String, String> values) {
+    for (Map.Entry<String, String> entry: values.entrySet()) {
+      if (!namePool.contains(entry.getKey())) {
+        types.put(entry.getKey(), type);
+      }
 
-            if(!namePool.contains(key)) {
-              fields.add(new LabelWarpField(key, ++nLabelsOrAttributes, LabelWarpField.Type.ATTRIBUTE, createLabelorAttributeValueDictionary(list, key)));
-              namePool.add(key);
-            }
-          }
-        }
+      if (type == types.get(entry.getKey())) {
+        addMetadataValue(namePool, distinctValues, entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Build a WarpSchema from a list containing GTS and GtsEncoders, for the SERIES conversion mode.
+   * Each GTS or GTSEncoder is written in its own batch, so its classname, labels and attributes are not written as columns.
+   * They are stored once in the schema metadata, as a JSON list indexed by batch.
+   *
+   * @param list
+   * @return
+   * @throws WarpScriptException
+   */
+  public static WarpSchema seriesListSchema(List<Object> list) throws WarpScriptException {
+    List<Map<String, String>> seriesMetadata = new ArrayList<>(list.size());
+    for (Object o: list) {
+      if (o instanceof GeoTimeSerie) {
+        seriesMetadata.add(ArrowWriters.extractGtsMetadata(((GeoTimeSerie) o).getMetadata()));
+      } else if (o instanceof GTSEncoder) {
+        seriesMetadata.add(ArrowWriters.extractGtsMetadata(((GTSEncoder) o).getMetadata()));
+      } else {
+        throw new WarpScriptException("Input list should contain only GTS or GTSENCODER.");
       }
     }
 
+    List<String> namePool = new ArrayList<>();
+    List<WarpField> fields = new ArrayList<>();
+    addIndexAndValueFields(list, namePool, fields);
+
+    Map<String, String> metadata = new HashMap<String, String>(4);
+    metadata.put(MODE, Register.SERIES);
+    metadata.put(REV, Revision.REVISION);
+    metadata.put(STU, String.valueOf(Constants.TIME_UNITS_PER_S));
+    metadata.put(SERIES_METADATA, ArrowWriters.toJson(seriesMetadata));
+
+    return new WarpSchema(metadata, fields);
+  }
+
+  /**
+   * Add the non-empty index fields (time-, geo-) then value fields needed by a list of GTS and GTSEncoders.
+   *
+   * @param list
+   * @param namePool
+   * @param fields
+   * @return true if STRING and BYTES fields use vectors with 64-bit offsets
+   */
+  private static boolean addIndexAndValueFields(List<Object> list, List<String> namePool, List<WarpField> fields) {
+
     //
     // Index fields
     //
@@ -348,33 +728,19 @@ public class WarpSchema {
           // Here we must add every fields since we don't know yet if they would be empty
           //
 
-          if (!namePool.contains(TimestampWarpField.TIMESTAMPS_KEY)) {
-            fields.add(new TimestampWarpField());
-            namePool.add(TimestampWarpField.TIMESTAMPS_KEY);
-          }
-
-          if (!namePool.contains(LatitudeWarpField.LATITUDE_KEY)) {
-            fields.add(new LatitudeWarpField());
-            namePool.add(LatitudeWarpField.LATITUDE_KEY);
-          }
-
-          if (!namePool.contains(LongitudeWarpField.LONGITUDE_KEY)) {
-            fields.add(new LongitudeWarpField());
-            namePool.add(LongitudeWarpField.LONGITUDE_KEY);
-          }
-
-          if (!namePool.contains(ElevationWarpField.ELEVATION_KEY)) {
-            fields.add(new ElevationWarpField());
-            namePool.add(ElevationWarpField.ELEVATION_KEY);
-          }
+          addIndexFields(namePool, fields);
         }
       }
     }
 
     //
     // Value fields
+    // A record batch holds several GTS or GTSEncoders only if their STRING or BYTES data fits in 2 GB. If a single one
+    // holds more, these fields use vectors with 64-bit offsets.
     //
 
+    boolean largeOffsets = requiresLargeOffsets(list);
+
     for (Object o: list) {
 
       if (o instanceof GeoTimeSerie) {
@@ -406,7 +772,7 @@ public class WarpSchema {
 
             case STRING:
               if (!namePool.contains(ValueWarpField.STRING_VALUES_KEY)) {
-                fields.add(new ValueWarpField(ValueWarpField.Type.STRING));
+                fields.add(new ValueWarpField(ValueWarpField.Type.STRING, largeOffsets));
                 namePool.add(ValueWarpField.STRING_VALUES_KEY);
               }
               break;
@@ -422,214 +788,309 @@ public class WarpSchema {
           // Here we must add every possible field since we don't know yet the values
           //
 
-          if(!namePool.contains(ValueWarpField.LONG_VALUES_KEY)) {
-            fields.add(new ValueWarpField(ValueWarpField.Type.LONG));
-            namePool.add(ValueWarpField.LONG_VALUES_KEY);
-          }
-          if(!namePool.contains(ValueWarpField.DOUBLE_VALUES_KEY)) {
-            fields.add(new ValueWarpField(ValueWarpField.Type.DOUBLE));
-            namePool.add(ValueWarpField.DOUBLE_VALUES_KEY);
-          }
-          if(!namePool.contains(ValueWarpField.BOOLEAN_VALUES_KEY)) {
-            fields.add(new ValueWarpField(ValueWarpField.Type.BOOLEAN));
-            namePool.add(ValueWarpField.BOOLEAN_VALUES_KEY);
-          }
-          if(!namePool.contains(ValueWarpField.STRING_VALUES_KEY)) {
-            fields.add(new ValueWarpField(ValueWarpField.Type.STRING));
-            namePool.add(ValueWarpField.STRING_VALUES_KEY);
-          }
-          if(!namePool.contains(ValueWarpField.BYTES_VALUES_KEY)) {
-            fields.add(new ValueWarpField(ValueWarpField.Type.BYTES));
-            namePool.add(ValueWarpField.BYTES_VALUES_KEY);
-          }
+          addValueFields(namePool, fields, largeOffsets);
         }
       }
     }
 
-    Map<String, String> metadata = new HashMap<String, String>(2);
-    metadata.put(MODE, Register.ENCODERS);
-    metadata.put(REV, Revision.REVISION);
-    metadata.put(STU, String.valueOf(Constants.TIME_UNITS_PER_S));
-
-    return new WarpSchema(metadata, fields);
+    return largeOffsets;
   }
 
   /**
-   * Populate dataPointHolder with data from input GTS at given index in order given by the schema.
+   * Add every index field, then every value field, that are not in the pool yet. They are the fields of a GTSEncoder,
+   * whose data points are not known before being decoded.
    *
-   * @param index
-   * @param gts
+   * @param namePool
+   * @param fields
+   * @param largeOffsets true if STRING and BYTES fields use vectors with 64-bit offsets
    */
-  public void prepareGtsDataPoint(int index, GeoTimeSerie gts) throws WarpScriptException {
+  private static void addAllIndexAndValueFields(List<String> namePool, List<WarpField> fields, boolean largeOffsets) {
+    addIndexFields(namePool, fields);
+    addValueFields(namePool, fields, largeOffsets);
+  }
 
-    double[] geoPointHolder = null;
-    if (gts.size() > 0 && gts.hasLocations()) {
-      long location = GTSHelper.locationAtIndex(gts, index);
-      if (GeoTimeSerie.NO_LOCATION != location) {
-        geoPointHolder = GeoXPLib.fromGeoXPPoint(location);
-      }
+  private static void addIndexFields(List<String> namePool, List<WarpField> fields) {
+    if (!namePool.contains(TimestampWarpField.TIMESTAMPS_KEY)) {
+      fields.add(new TimestampWarpField());
+      namePool.add(TimestampWarpField.TIMESTAMPS_KEY);
     }
 
-    for (int i = 0; i < warpFields.size(); i++) {
-      WarpField warpField = warpFields.get(i);
+    if (!namePool.contains(LatitudeWarpField.LATITUDE_KEY)) {
+      fields.add(new LatitudeWarpField());
+      namePool.add(LatitudeWarpField.LATITUDE_KEY);
+    }
 
-      if (warpField instanceof ClassnameWarpField) {
-        dataPointHolder[i] = gts.getName();
+    if (!namePool.contains(LongitudeWarpField.LONGITUDE_KEY)) {
+      fields.add(new LongitudeWarpField());
+      namePool.add(LongitudeWarpField.LONGITUDE_KEY);
+    }
 
-      } else if (warpField instanceof LabelWarpField) {
+    if (!namePool.contains(ElevationWarpField.ELEVATION_KEY)) {
+      fields.add(new ElevationWarpField());
+      namePool.add(ElevationWarpField.ELEVATION_KEY);
+    }
+  }
 
-        switch (((LabelWarpField) warpField).getType()) {
+  private static void addValueFields(List<String> namePool, List<WarpField> fields, boolean largeOffsets) {
+    if(!namePool.contains(ValueWarpField.LONG_VALUES_KEY)) {
+      fields.add(new ValueWarpField(ValueWarpField.Type.LONG));
+      namePool.add(ValueWarpField.LONG_VALUES_KEY);
+    }
+    if(!namePool.contains(ValueWarpField.DOUBLE_VALUES_KEY)) {
+      fields.add(new ValueWarpField(ValueWarpField.Type.DOUBLE));
+      namePool.add(ValueWarpField.DOUBLE_VALUES_KEY);
+    }
+    if(!namePool.contains(ValueWarpField.BOOLEAN_VALUES_KEY)) {
+      fields.add(new ValueWarpField(ValueWarpField.Type.BOOLEAN));
+      namePool.add(ValueWarpField.BOOLEAN_VALUES_KEY);
+    }
+    if(!namePool.contains(ValueWarpField.STRING_VALUES_KEY)) {
+      fields.add(new ValueWarpField(ValueWarpField.Type.STRING, largeOffsets));
+      namePool.add(ValueWarpField.STRING_VALUES_KEY);
+    }
+    if(!namePool.contains(ValueWarpField.BYTES_VALUES_KEY)) {
+      fields.add(new ValueWarpField(ValueWarpField.Type.BYTES, largeOffsets));
+      namePool.add(ValueWarpField.BYTES_VALUES_KEY);
+    }
+  }
 
-          case LABEL:
-            dataPointHolder[i] = gts.getLabels().get(warpField.getKey());
-            break;
+  /**
+   * A record batch holds the STRING or BYTES data of a single GTS or GTSEncoder if it does not fit in 2 GB.
+   *
+   * @param list
+   * @return true if the STRING or BYTES data of an element of the list exceeds 2 GB
+   */
+  private static boolean requiresLargeOffsets(List<Object> list) {
+    for (Object o: list) {
+      if (o instanceof GeoTimeSerie && ArrowHelper.exceedsVariableWidthCapacity((GeoTimeSerie) o)
+        || o instanceof GTSEncoder && ArrowHelper.exceedsVariableWidthCapacity((GTSEncoder) o)) {
+        return true;
+      }
+    }
 
-          case ATTRIBUTE:
-            dataPointHolder[i] = gts.getMetadata().getAttributes().get(warpField.getKey());
-            break;
-        }
+    return false;
+  }
 
-      } else if (warpField instanceof TimestampWarpField) {
-        dataPointHolder[i] = gts.size() > 0 ? GTSHelper.tickAtIndex(gts, index) : null;
+  /**
+   * Maximum number of rows of a record batch written in WIDE conversion mode.
+   */
+  public final static int WIDE_BATCH_SIZE = 65536;
 
-      } else if (warpField instanceof LatitudeWarpField) {
-        if (null == geoPointHolder) {
-          dataPointHolder[i] = null;
-        } else {
-          dataPointHolder[i] = geoPointHolder[0];
-        }
+  /**
+   * Name of the column of a GTS in WIDE conversion mode, made of its classname and labels.
+   * Labels are sorted by key so that the name does not depend on the label map implementation.
+   *
+   * @param gts
+   * @return
+   */
+  public static String wideColumnName(GeoTimeSerie gts) {
+    StringBuilder sb = new StringBuilder(gts.getName());
+    sb.append('{');
+    boolean first = true;
+    for (Map.Entry<String, String> label: new TreeMap<String, String>(gts.getLabels()).entrySet()) {
+      if (!first) {
+        sb.append(',');
+      }
+      sb.append(label.getKey());
+      sb.append('=');
+      sb.append(label.getValue());
+      first = false;
+    }
+    sb.append('}');
 
-      } else if (warpField instanceof LongitudeWarpField) {
-        if (null == geoPointHolder) {
-          dataPointHolder[i] = null;
-        } else {
-          dataPointHolder[i] = geoPointHolder[1];
-        }
+    return sb.toString();
+  }
 
-      } else if (warpField instanceof ElevationWarpField) {
-        if (gts.size() == 0) {
-          dataPointHolder[i] = null;
+  /**
+   * Build a WarpSchema for the WIDE conversion mode: a timestamp field followed by one value field per non-empty GTS.
+   * The full metadata of each GTS is stored in the metadata of its field.
+   *
+   * @param list
+   * @return
+   * @throws WarpScriptException
+   */
+  public static WarpSchema wideGtsListSchema(List<Object> list) throws WarpScriptException {
+    List<WarpField> fields = new ArrayList<>(list.size() + 1);
+    fields.add(new TimestampWarpField());
 
-        } else {
-          long elevation = GTSHelper.elevationAtIndex(gts, index);
+    List<String> namePool = new ArrayList<>(list.size() + 1);
+    namePool.add(TimestampWarpField.TIMESTAMPS_KEY);
 
-          if (GeoTimeSerie.NO_ELEVATION == elevation) {
-            dataPointHolder[i] = null;
-          } else {
-            dataPointHolder[i] = elevation;
-          }
-        }
+    for (Object o: list) {
+      if (!(o instanceof GeoTimeSerie)) {
+        throw new WarpScriptException("Input list should contain only GTS.");
+      }
 
-      } else if (warpField instanceof ValueWarpField) {
-        if (gts.size() > 0) {
+      GeoTimeSerie gts = (GeoTimeSerie) o;
+      if (0 == gts.size()) {
+        continue;
+      }
 
-          Object value = GTSHelper.valueAtIndex(gts, index);
+      //
+      // Series with the same classname and labels are disambiguated by a suffix
+      //
 
-          if (((ValueWarpField) warpField).getType().getCorrespondingClass() == value.getClass()) {
-            dataPointHolder[i] = value;
-          } else {
-            dataPointHolder[i] = null;
-          }
-        } else {
-          dataPointHolder[i] = null;
+      String name = wideColumnName(gts);
+      if (namePool.contains(name)) {
+        int suffix = 1;
+        while (namePool.contains(name + "#" + suffix)) {
+          suffix++;
         }
-      } else {
-        throw new WarpScriptException("Unrecognized field.");
+        name = name + "#" + suffix;
       }
+      namePool.add(name);
+
+      fields.add(new NamedValueWarpField(gts.getType(), name, ArrowWriters.extractGtsMetadata(gts.getMetadata())));
     }
+
+    Map<String, String> metadata = new HashMap<String, String>(3);
+    metadata.put(MODE, Register.WIDE);
+    metadata.put(REV, Revision.REVISION);
+    metadata.put(STU, String.valueOf(Constants.TIME_UNITS_PER_S));
+
+    return new WarpSchema(metadata, fields);
   }
 
   /**
-   * Populate dataPointHolder with data from input GtsDecoder in order given by the schema.
+   * Write a list of GTS to a Stream in WIDE conversion mode, wrt this schema.
+   * Rows are produced by a k-way merge over the sorted ticks of the GTS, a cell is null if its GTS has no value at this tick.
+   * GTS are sorted in place. Locations and elevations are not written.
    *
-   * @param decoder
+   * @param out
+   * @param list
+   * @throws WarpScriptException
    */
-  public void prepareGtsEncoderDataPoint(GTSDecoder decoder) throws WarpScriptException {
+  public void writeWideListToStream(OutputStream out, List<Object> list) throws WarpScriptException {
+    final List<GeoTimeSerie> series = new ArrayList<>(list.size());
+    for (Object o: list) {
+      GeoTimeSerie gts = (GeoTimeSerie) o;
+      if (gts.size() > 0) {
+        GTSHelper.sort(gts);
+        series.add(gts);
+      }
+    }
 
-    double[] geoPointHolder = null;
-    long location = decoder.getLocation();
-    if (GeoTimeSerie.NO_LOCATION != location) {
-      geoPointHolder = GeoXPLib.fromGeoXPPoint(location);
+    if (series.size() != warpFields.size() - 1) {
+      throw new WarpScriptException("Input list does not match the schema.");
     }
 
-    for (int i = 0; i < warpFields.size(); i++) {
-      WarpField warpField = warpFields.get(i);
+    //
+    // The queue holds the index of each series which is not exhausted, ordered by its current tick
+    //
 
-      if (warpField instanceof ClassnameWarpField) {
-        dataPointHolder[i] = decoder.getName();
+    final int[] positions = new int[series.size()];
+    PriorityQueue<Integer> queue = new PriorityQueue<Integer>(Math.max(1, series.size()), new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        return Long.compare(GTSHelper.tickAtIndex(series.get(i1), positions[i1]), GTSHelper.tickAtIndex(series.get(i2), positions[i2]));
+      }
+    });
 
-      } else if (warpField instanceof LabelWarpField) {
+    for (int i = 0; i < series.size(); i++) {
+      queue.add(i);
+    }
 
-        switch (((LabelWarpField) warpField).getType()) {
+    WarpField timestampField = warpFields.get(0);
+    List<Integer> pending = new ArrayList<>();
 
-          case LABEL:
-            dataPointHolder[i] = decoder.getLabels().get(warpField.getKey());
-            break;
+    try (ArrowStreamWriter writer = new ArrowStreamWriter(root, dictionaryProvider, out)) {
 
-          case ATTRIBUTE:
-            dataPointHolder[i] = decoder.getMetadata().getAttributes().get(warpField.getKey());
-            break;
+      writer.start();
+      int row = 0;
+      while (!queue.isEmpty()) {
+        long tick = GTSHelper.tickAtIndex(series.get(queue.peek()), positions[queue.peek()]);
+        timestampField.setSafe(row, tick);
+
+        //
+        // Series are put back in the queue only once the row is complete, so duplicate ticks within a series
+        // are kept in their own rows
+        //
+
+        while (!queue.isEmpty() && GTSHelper.tickAtIndex(series.get(queue.peek()), positions[queue.peek()]) == tick) {
+          int i = queue.poll();
+          warpFields.get(i + 1).setSafe(row, GTSHelper.valueAtIndex(series.get(i), positions[i]));
+          positions[i]++;
+
+          if (positions[i] < series.get(i).size()) {
+            pending.add(i);
+          }
         }
 
-      } else if (warpField instanceof TimestampWarpField) {
-        dataPointHolder[i] = decoder.getTimestamp();
+        queue.addAll(pending);
+        pending.clear();
 
-      } else if (warpField instanceof LatitudeWarpField) {
-        if (null == geoPointHolder) {
-          dataPointHolder[i] = null;
-        } else {
-          dataPointHolder[i] = geoPointHolder[0];
-        }
+        row++;
 
-      } else if (warpField instanceof LongitudeWarpField) {
-        if (null == geoPointHolder) {
-          dataPointHolder[i] = null;
-        } else {
-          dataPointHolder[i] = geoPointHolder[1];
+        if (WIDE_BATCH_SIZE == row) {
+          root.setRowCount(row);
+          writer.writeBatch();
+          clear();
+          row = 0;
         }
+      }
 
-      } else if (warpField instanceof ElevationWarpField) {
-        long elevation = decoder.getElevation();
+      if (row > 0) {
+        root.setRowCount(row);
+        writer.writeBatch();
+      }
 
-        if (GeoTimeSerie.NO_ELEVATION == elevation) {
-          dataPointHolder[i] = null;
-        } else {
-          dataPointHolder[i] = elevation;
-        }
+    } catch (IOException e) {
+      throw new WarpScriptException(e);
+    } finally {
+      root.close();
+    }
+  }
 
-      } else if (warpField instanceof ValueWarpField) {
-        Object value = decoder.getValue();
+  /**
+   * Number of rows of a GTS or GTSEncoder, an empty one is written as a single row holding its metadata.
+   * @param o
+   * @return
+   */
+  private static int rowCount(Object o) {
+    long count = o instanceof GeoTimeSerie ? ((GeoTimeSerie) o).size() : ((GTSEncoder) o).getCount();
+    return 0 == count ? 1 : (int) count;
+  }
 
-        if (((ValueWarpField) warpField).getType().getCorrespondingClass() == value.getClass()) {
-          dataPointHolder[i] = value;
-        } else {
-          dataPointHolder[i] = null;
-        }
+  /**
+   * Size of the STRING and BYTES values of a GTS or GTSEncoder. It is exact for a GTS, for a GTSEncoder the values are
+   * only known once decoded so its encoded size is used as an upper bound.
+   * @param o
+   * @return
+   */
+  private static long variableWidthBytes(Object o) {
+    if (o instanceof GeoTimeSerie) {
+      GeoTimeSerie gts = (GeoTimeSerie) o;
+      return ArrowHelper.utf8Length(gts, 0, gts.size());
+    } else {
+      return ((GTSEncoder) o).size();
+    }
+  }
 
-      } else {
-        throw new WarpScriptException("Unrecognized field.");
-      }
+  /**
+   * Allocate the vectors of this schema before filling them, so that fixed width values are set without capacity checks
+   * @param rowCount
+   * @param variableWidthBytes
+   */
+  private void allocateNew(int rowCount, long variableWidthBytes) {
+    for (WarpField warpField: warpFields) {
+      warpField.allocateNew(rowCount, variableWidthBytes);
     }
   }
 
-  public void writeGTS(ArrowStreamWriter writer, GeoTimeSerie gts) throws IOException, WarpScriptException {
+  /**
+   * Fill the rows of a GTS starting at offset. The vectors must have been allocated.
+   * @param offset
+   * @param gts
+   * @return the number of rows written
+   */
+  private int fillGTS(int offset, GeoTimeSerie gts) {
 
     if (gts.size() > 0) {
-
-      for (int i = 0; i < gts.size(); i++) {
-        prepareGtsDataPoint(i, gts);
-        set(i, dataPointHolder);
+      setSeriesMetadata(offset, gts.size(), gts.getName(), gts.getLabels(), gts.getMetadata().getAttributes());
+      for (WarpField warpField: pointFields) {
+        warpField.fillFromGts(offset, gts, 0, gts.size());
       }
-
-      //
-      // dictionaries
-      // This part is skipped since right now Java arrow library does not support interleaved dictionary batch messages (this is a bug)
-      //
-      //writer.writeDictionaryBatch();
-      //clearDictionaries();
-
-      // records
-      root.setRowCount(gts.size());
+      return gts.size();
 
     } else {
 
@@ -637,61 +1098,90 @@ public class WarpSchema {
       // Empty GTS (only convert metadata)
       //
 
-      prepareGtsDataPoint(-1, gts);
-      set(0, dataPointHolder);
-      root.setRowCount(1);
+      setSeriesMetadata(offset, 1, gts.getName(), gts.getLabels(), gts.getMetadata().getAttributes());
+      for (WarpField warpField: pointFields) {
+        warpField.setSafe(offset, null);
+      }
+      return 1;
     }
-
-    writer.writeBatch();
   }
 
-  public void writeGtsEncoder(ArrowStreamWriter writer, GTSEncoder encoder) throws IOException, WarpScriptException {
+  /**
+   * Fill the rows of a GTSEncoder starting at offset. The vectors must have been allocated.
+   * @param offset
+   * @param encoder
+   * @return the number of rows written
+   */
+  private int fillGtsEncoder(int offset, GTSEncoder encoder) throws IOException {
     GTSDecoder decoder = encoder.getDecoder(true);
 
     if (decoder.getCount() > 0) {
-      int i = 0;
+      int i = offset;
       while (decoder.next()) {
-        prepareGtsEncoderDataPoint(decoder);
-
-        set(i++, dataPointHolder);
+        for (WarpField warpField: pointFields) {
+          warpField.setFromDecoder(i, decoder);
+        }
+        i++;
       }
-
-      //
-      // dictionaries
-      // This part is skipped since right now Java arrow library does not support interlevead dictionary batch messages (this is a bug)
-      //
-      //writer.writeDictionaryBatch();
-      //clearDictionaries();
-
-      // records
-      root.setRowCount(i);
-      writer.writeBatch();
+      setSeriesMetadata(offset, i - offset, decoder.getName(), decoder.getLabels(), decoder.getMetadata().getAttributes());
+      return i - offset;
 
     } else {
       GeoTimeSerie gts = new GeoTimeSerie();
       gts.setMetadata(decoder.getMetadata());
-      writeGTS(writer, gts);
+      return fillGTS(offset, gts);
     }
   }
 
   /**
-   * Write a list of GTS, GTSEncoder to the a Stream, wrt this schema.
+   * Write the dictionaries that were extended since they were last written
+   * @param writer
+   * @throws IOException
+   */
+  private void writeExtendedDictionaries(DictionaryBatchStreamWriter writer) throws IOException {
+    for (WarpField warpField: warpFields) {
+      if (warpField instanceof DictionaryEncodedWarpField && ((DictionaryEncodedWarpField) warpField).isExtended()) {
+        writer.writeDictionary(((DictionaryEncodedWarpField) warpField).getDictionary());
+        ((DictionaryEncodedWarpField) warpField).setWritten();
+      }
+    }
+  }
+
+  public void writeGTS(ArrowStreamWriter writer, GeoTimeSerie gts) throws IOException, WarpScriptException {
+    allocateNew(rowCount(gts), variableWidthBytes(gts));
+    root.setRowCount(fillGTS(0, gts));
+    writer.writeBatch();
+  }
+
+  public void writeGtsEncoder(ArrowStreamWriter writer, GTSEncoder encoder) throws IOException, WarpScriptException {
+    allocateNew(rowCount(encoder), variableWidthBytes(encoder));
+    root.setRowCount(fillGtsEncoder(0, encoder));
+    writer.writeBatch();
+  }
+
+  /**
+   * Write a list of GTS, GTSEncoder to a Stream in SERIES conversion mode, wrt this schema.
+   * Each element is written in its own batch, even if it is empty, so that batch i matches the metadata of element i.
    * @param out
    * @param list
    * @throws WarpScriptException
    */
-  public void writeListToStream(OutputStream out, List<Object> list) throws WarpScriptException {
+  public void writeSeriesListToStream(OutputStream out, List<Object> list) throws WarpScriptException {
     try (ArrowStreamWriter writer =  new ArrowStreamWriter(root, dictionaryProvider, out)) {
 
       writer.start();
       for (Object o : list) {
 
-        if (o instanceof GeoTimeSerie) {
+        if (o instanceof GeoTimeSerie && ((GeoTimeSerie) o).size() > 0) {
           writeGTS(writer, (GeoTimeSerie) o);
 
-        } else if (o instanceof GTSEncoder) {
+        } else if (o instanceof GTSEncoder && ((GTSEncoder) o).getCount() > 0) {
           writeGtsEncoder(writer, (GTSEncoder) o);
 
+        } else if (o instanceof GeoTimeSerie || o instanceof GTSEncoder) {
+          root.setRowCount(0);
+          writer.writeBatch();
+
         } else {
           throw new WarpScriptException("Input list should contain only GTS or GTSENCODER.");
         }
@@ -702,4 +1192,130 @@ public class WarpSchema {
       root.close();
     }
   }
+
+  /**
+   * Maximum number of rows of a record batch holding several GTS or GTSEncoders in ENCODERS conversion mode.
+   * A GTS or GTSEncoder with more data points is written in its own batch.
+   */
+  public final static int ENCODERS_BATCH_SIZE = 65536;
+
+  /**
+   * Source of the successive lists of GTS and GTSEncoders that writeListsToStream writes in a single stream
+   */
+  public interface ListSource {
+
+    /**
+     * @return the next list, or null once every list was returned
+     * @throws WarpScriptException
+     */
+    List<Object> next() throws WarpScriptException;
+  }
+
+  /**
+   * Write a list of GTS, GTSEncoder to the a Stream, wrt this schema.
+   * Consecutive elements are grouped into record batches of at most ENCODERS_BATCH_SIZE rows. The list is written as
+   * it is read: values of classname, labels and attributes are added to the dictionaries as they are met, and the
+   * dictionaries that were extended are written before the record batch that uses them.
+   *
+   * @param out
+   * @param list
+   * @throws WarpScriptException
+   */
+  public void writeListToStream(OutputStream out, final List<Object> list) throws WarpScriptException {
+    writeListsToStream(out, new ListSource() {
+      private boolean done = false;
+
+      @Override
+      public List<Object> next() {
+        if (done) {
+          return null;
+        }
+        done = true;
+        return list;
+      }
+    });
+  }
+
+  /**
+   * Write successive lists of GTS, GTSEncoder to a single Stream, wrt this schema, as writeListToStream does for one list.
+   * A list is only requested once the previous one has been written, and its elements are never grouped in the same
+   * record batch as those of another list, so that a list can be released as soon as it has been written.
+   *
+   * @param out
+   * @param source
+   * @throws WarpScriptException
+   */
+  public void writeListsToStream(OutputStream out, ListSource source) throws WarpScriptException {
+
+    try (DictionaryBatchStreamWriter writer =  new DictionaryBatchStreamWriter(root, dictionaryProvider, out)) {
+
+      writer.start();
+
+      List<Object> list;
+      while (null != (list = source.next())) {
+
+        for (Object o : list) {
+          if (!(o instanceof GeoTimeSerie) && !(o instanceof GTSEncoder)) {
+            throw new WarpScriptException("Input list should contain only GTS or GTSENCODER.");
+          }
+        }
+
+        // a schema built before the list was known has STRING and BYTES fields with 32-bit offsets
+        if (null != layout && !layout.largeOffsets && requiresLargeOffsets(list)) {
+          throw new WarpScriptException("The STRING or BYTES data of a GTS or GTSENCODER exceeds 2 GB.");
+        }
+
+        int first = 0;
+        while (first < list.size()) {
+
+          //
+          // Group consecutive elements into a batch
+          //
+
+          int last = first;
+          int rowCount = rowCount(list.get(first));
+          long bytes = variableWidthBytes(list.get(first));
+
+          while (last + 1 < list.size()
+            && rowCount + rowCount(list.get(last + 1)) <= ENCODERS_BATCH_SIZE
+            && bytes + variableWidthBytes(list.get(last + 1)) <= ArrowHelper.VARIABLE_WIDTH_CAPACITY) {
+            last++;
+            rowCount += rowCount(list.get(last));
+            bytes += variableWidthBytes(list.get(last));
+          }
+
+          allocateNew(rowCount, bytes);
+
+          int offset = 0;
+          for (int i = first; i <= last; i++) {
+            if (list.get(i) instanceof GeoTimeSerie) {
+              offset += fillGTS(offset, (GeoTimeSerie) list.get(i));
+            } else {
+              offset += fillGtsEncoder(offset, (GTSEncoder) list.get(i));
+            }
+          }
+
+          writeExtendedDictionaries(writer);
+          root.setRowCount(offset);
+          writer.writeBatch();
+
+          first = last + 1;
+        }
+      }
+
+      //
+      // Cache the layout of a schema built by cachedGtsOrEncoderListSchema, with the content of its dictionaries
+      //
+
+      if (null != layout && null != layout.cacheKey) {
+        EncodersLayout cached = layout.withDictionaries(warpFields);
+        layoutCache.put(cached.cacheKey, cached, cached.size());
+      }
+
+    } catch (IOException e) {
+      throw new WarpScriptException(e);
+    } finally {
+      root.close();
+    }
+  }
 }
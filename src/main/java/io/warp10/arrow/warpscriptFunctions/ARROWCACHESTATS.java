@@ -0,0 +1,80 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.direct.LruCache;
+import io.warp10.arrow.pojo.WarpSchema;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Report the state of the caches of the extension
+ */
+public class ARROWCACHESTATS extends FormattedWarpScriptFunction {
+
+  public static final String RESULT = "result";
+  public static final String DECODED = "decoded";
+  public static final String LAYOUTS = "layouts";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWCACHESTATS(String name) {
+    super(name);
+
+    getDocstring().append("Report the number of entries, estimated size in bytes, hits and misses of the cache of decoded results of ARROW-> " +
+      "(key " + DECODED + ") and of the cache of ENCODERS schema layouts of ->ARROW (key " + LAYOUTS + ").");
+
+    args = new ArgumentsBuilder()
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(Map.class, RESULT, "A MAP of MAPs with keys entries, bytes, hits and misses.")
+      .build();
+  }
+
+  private static Map<String, Object> stats(LruCache cache) {
+    Map<String, Object> stats = new HashMap<String, Object>();
+    stats.put("entries", (long) cache.size());
+    stats.put("bytes", cache.getBytes());
+    stats.put("hits", cache.getHits());
+    stats.put("misses", cache.getMisses());
+    return stats;
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+
+    Map<String, Object> result = new HashMap<String, Object>();
+    result.put(DECODED, stats(ARROWTO.getCache()));
+    result.put(LAYOUTS, stats(WarpSchema.getLayoutCache()));
+    stack.push(result);
+
+    return stack;
+  }
+}
@@ -0,0 +1,80 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.direct.ArrowStreams;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Concatenate Arrow streams without decoding their rows
+ */
+public class ARROWCONCAT extends FormattedWarpScriptFunction {
+
+  public static final String STREAMS = "streams";
+  public static final String RESULT = "result";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWCONCAT(String name) {
+    super(name);
+
+    getDocstring().append("Concatenate Arrow streams (BYTES) with compatible schemas into a single Arrow stream. " +
+      "Their record batches are copied without being decoded. Dictionary-encoded columns (such as classname and labels) are merged into a single dictionary. " +
+      "The metadata of the first stream is kept.");
+
+    args = new ArgumentsBuilder()
+      .addListArgument(byte[].class, STREAMS, "Arrow streams to be concatenated. They must have the same fields, in the same order, the same WarpScriptConversionMode and the same time units. In GTS mode, they must hold the same series.")
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(byte[].class, RESULT, "The concatenated Arrow stream.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+
+    List<byte[]> streams = (List<byte[]>) params.get(STREAMS);
+    List<InputStream> inputs = new ArrayList<InputStream>(streams.size());
+    for (byte[] stream: streams) {
+      inputs.add(new ByteArrayInputStream(stream));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowStreams.concat(inputs, out);
+    stack.push(out.toByteArray());
+
+    return stack;
+  }
+}
@@ -0,0 +1,121 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.WarpConfig;
+import io.warp10.arrow.ArrowExtension;
+import io.warp10.arrow.direct.ArrowDataset;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read a partitioned directory of Arrow stream files and Parquet files
+ */
+public class ARROWDATASET extends FormattedWarpScriptFunction {
+
+  public static final String CONF_ROOT = "arrow.dataset.root";
+  public static final String CONF_READERS = "arrow.dataset.readers";
+  public static final int DEFAULT_READERS = 4;
+
+  public static final String PATH = "path";
+  public static final String START = "start";
+  public static final String END = "end";
+  public static final String CLASSNAMES = "classnames";
+  public static final String COLUMNS = "columns";
+  public static final String MODE = ARROWTO.MODE;
+  public static final String RESULT = "result";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWDATASET(String name) {
+    super(name);
+
+    getDocstring().append("Decode the Arrow stream files and the Parquet files of a directory, relative to the directory set by " + CONF_ROOT + " in the configuration. " +
+      "Subdirectories named " + ArrowDataset.DAY_PARTITION + "=YYYY-MM-DD or " + ArrowDataset.CLASSNAME_PARTITION + "=name are partitions, skipped if they can not hold data points of the time range or of the classnames. " +
+      "Arrow stream files are also skipped if the bounds of their timestamps, stored in their metadata by ->ARROW for GTS, are outside of the time range, and the row groups of Parquet files if the statistics of their timestamps are. " +
+      "Files in ENCODERS mode can only be read with another " + MODE + ". " +
+      "At most " + CONF_READERS + " files (default " + DEFAULT_READERS + ") are read at the same time by all the calls to " + name + ".");
+
+    args = new ArgumentsBuilder()
+      .addArgument(String.class, PATH, "Path of the dataset, relative to " + CONF_ROOT + ".")
+      .addOptionalArgument(Long.class, START, "First timestamp of the range, in platform time units.", Long.MIN_VALUE)
+      .addOptionalArgument(Long.class, END, "Last timestamp of the range, in platform time units.", Long.MAX_VALUE)
+      .addOptionalArgument(List.class, CLASSNAMES, "Classnames of the " + ArrowDataset.CLASSNAME_PARTITION + " partitions to read. All partitions are read if empty.", new ArrayList<Object>())
+      .addOptionalArgument(List.class, COLUMNS, "Names of the columns to decode. All columns are decoded if empty.", new ArrayList<Object>())
+      .addOptionalArgument(String.class, MODE, "WarpScriptConversionMode to use. If not set, the mode stored in the metadata of each file is used, or PAIR.", "")
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(List.class, RESULT, "The decoded content of each file that was not skipped, in the order of their paths.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+
+    String rootPath = WarpConfig.getProperty(CONF_ROOT);
+    if (null == rootPath) {
+      throw new WarpScriptException(getName() + " is disabled, " + CONF_ROOT + " is not set.");
+    }
+
+    File dataset;
+    try {
+      File root = new File(rootPath).getCanonicalFile();
+      dataset = new File(root, (String) params.get(PATH)).getCanonicalFile();
+
+      if (!dataset.toPath().startsWith(root.toPath())) {
+        throw new WarpScriptException(getName() + " can only read datasets under " + CONF_ROOT + ".");
+      }
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    }
+
+    Set<String> classnames = new HashSet<String>();
+    for (Object classname: (List) params.get(CLASSNAMES)) {
+      classnames.add(String.valueOf(classname));
+    }
+
+    List<String> columns = new ArrayList<String>();
+    for (Object column: (List) params.get(COLUMNS)) {
+      columns.add(String.valueOf(column));
+    }
+
+    long start = (Long) params.get(START);
+    long end = (Long) params.get(END);
+    List<File> files = new ArrowDataset(dataset).listFiles(start, end, classnames);
+    stack.push(ArrowDataset.read(files, columns, start, end, (String) params.get(MODE), ArrowExtension.getDatasetReaders()));
+
+    return stack;
+  }
+}
@@ -0,0 +1,148 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.direct.ChunkedOutputStream;
+import io.warp10.arrow.pojo.WarpSchema;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptLib;
+import io.warp10.script.WarpScriptStack;
+import io.warp10.script.WarpScriptStackFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FETCH data points and encode them as an Arrow stream, chunk of series by chunk of series
+ */
+public class ARROWFETCH extends FormattedWarpScriptFunction {
+
+  public static final String PARAMS = "params";
+  public static final String SERIES_PER_FETCH = "seriesPerFetch";
+  public static final String CHUNK_SIZE = TOARROW.CHUNK_SIZE;
+  public static final String OUT = "out";
+
+  public static final long DEFAULT_SERIES_PER_FETCH = 1000L;
+
+  // FETCH parameters that make it return GTS encoders, and that give it the series to fetch
+  private static final String FETCH_ENCODERS = "encoders";
+  private static final String FETCH_GTS = "gts";
+
+  // Parameters of FETCH that select the series, they are given to FIND
+  private static final String TOKEN = "token";
+  private static final String[] SELECTION_PARAMS = new String[] { "class", "labels", "selector", "selectors", "active.after", "quiet.after" };
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWFETCH(String name) {
+    super(name);
+
+    getDocstring().append("Fetch data points with FETCH and encode them as an Arrow stream (BYTES) in the ENCODERS conversion mode. " +
+      "The series are first found with FIND, then fetched as GTS encoders by chunks of " + SERIES_PER_FETCH + " series. " +
+      "Each chunk is decoded straight into the Arrow vectors of its record batches, and released before the next chunk is fetched, so no GTS is built " +
+      "and at most one chunk of encoders is held in memory.");
+
+    args = new ArgumentsBuilder()
+      .addArgument(Map.class, PARAMS, "Parameters of FETCH. See the documentation of FETCH. The series are selected with the token, class, labels, selector, selectors, active.after and quiet.after parameters.")
+      .addOptionalArgument(Long.class, SERIES_PER_FETCH, "Number of series fetched at once.", DEFAULT_SERIES_PER_FETCH)
+      .addOptionalArgument(Long.class, CHUNK_SIZE, "If strictly positive, the output is split into a LIST of BYTES of at most this size. Their concatenation is the Arrow stream.", 0L)
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(Object.class, OUT, "The resulting byte array, or list of byte arrays if " + CHUNK_SIZE + " is set.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, final WarpScriptStack stack) throws WarpScriptException {
+    long chunkSize = (Long) params.get(CHUNK_SIZE);
+    final long seriesPerFetch = (Long) params.get(SERIES_PER_FETCH);
+
+    if (chunkSize < 0 || chunkSize > Integer.MAX_VALUE - 8) {
+      throw new WarpScriptException(getName() + " expects " + CHUNK_SIZE + " to be positive and less than 2 GB.");
+    }
+
+    if (seriesPerFetch <= 0 || seriesPerFetch > Integer.MAX_VALUE) {
+      throw new WarpScriptException(getName() + " expects " + SERIES_PER_FETCH + " to be strictly positive.");
+    }
+
+    //
+    // FIND does the authentication and the directory lookup, the selection parameters are then replaced by the series
+    //
+
+    final Map<Object, Object> fetchParams = new HashMap<Object, Object>((Map<Object, Object>) params.get(PARAMS));
+    Map<Object, Object> findParams = new HashMap<Object, Object>();
+    findParams.put(TOKEN, fetchParams.get(TOKEN));
+    for (String key: SELECTION_PARAMS) {
+      if (fetchParams.containsKey(key)) {
+        findParams.put(key, fetchParams.remove(key));
+      }
+    }
+
+    stack.push(findParams);
+    ((WarpScriptStackFunction) WarpScriptLib.getFunction(WarpScriptLib.FIND)).apply(stack);
+    final List<Object> series = (List<Object>) stack.pop();
+
+    //
+    // The schema is built from the metadata of the series, then each chunk is fetched when the previous one is written
+    //
+
+    OutputStream out = chunkSize > 0 ? new ChunkedOutputStream((int) chunkSize) : new ByteArrayOutputStream();
+
+    WarpSchema.pendingGtsOrEncoderListSchema(series).writeListsToStream(out, new WarpSchema.ListSource() {
+      private int next = 0;
+
+      @Override
+      public List<Object> next() throws WarpScriptException {
+        if (next >= series.size()) {
+          return null;
+        }
+
+        int end = (int) Math.min(series.size(), next + seriesPerFetch);
+        Map<Object, Object> chunkParams = new HashMap<Object, Object>(fetchParams);
+        chunkParams.put(FETCH_GTS, new ArrayList<Object>(series.subList(next, end)));
+        chunkParams.put(FETCH_ENCODERS, true);
+        next = end;
+
+        stack.push(chunkParams);
+        ((WarpScriptStackFunction) WarpScriptLib.getFunction(WarpScriptLib.FETCH)).apply(stack);
+        return (List<Object>) stack.pop();
+      }
+    });
+
+    if (out instanceof ChunkedOutputStream) {
+      stack.push(((ChunkedOutputStream) out).getChunks());
+    } else {
+      stack.push(((ByteArrayOutputStream) out).toByteArray());
+    }
+
+    return stack;
+  }
+}
@@ -0,0 +1,99 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.convert.Register;
+import io.warp10.arrow.direct.ArrowHelper;
+import io.warp10.arrow.direct.ArrowReaders;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+import io.warp10.script.WarpScriptStack.Macro;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Decode the record batches of an Arrow stream one at a time and execute a macro on each of them
+ */
+public class ARROWFOREACH extends FormattedWarpScriptFunction {
+
+  public static final String BYTES = "bytes";
+  public static final String MACRO = "macro";
+  public static final String MODE = "WarpScriptConversionMode";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWFOREACH(String name) {
+    super(name);
+
+    getDocstring().append("Decode the record batches of an Arrow stream one at a time and execute a macro with each decoded batch on top of the stack. " +
+      "Only one batch is decoded at a time, so arbitrarily large streams can be processed in constant memory. " +
+      "A batch of a stream written in GTS conversion mode is decoded as a GTS holding the data points of this batch, any other batch is decoded as a PAIR list [metadata, columns].");
+
+    args = new ArgumentsBuilder()
+      .addArgument(Object.class, BYTES, "Arrow stream to be decoded (BYTES), or LIST of BYTES chunks whose concatenation is an Arrow stream.")
+      .addArgument(Macro.class, MACRO, "Macro executed with each decoded batch.")
+      .addOptionalArgument(String.class, MODE, "Either GTS or PAIR. If not set, GTS is used for streams written in GTS conversion mode and PAIR otherwise.", "")
+      .build();
+
+    output = new ArgumentsBuilder()
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+
+    String mode = (String) params.get(MODE);
+    if (!"".equals(mode) && !Register.PAIR.equals(mode) && !Register.GTS.equals(mode)) {
+      throw new WarpScriptException(getName() + " only supports the GTS and PAIR conversion modes.");
+    }
+
+    final Macro macro = (Macro) params.get(MACRO);
+    final WarpScriptStack macroStack = stack;
+
+    try (ArrowStreamReader reader = new ArrowStreamReader(ARROWTO.getInputStream(getName(), params.get(BYTES)), new RootAllocator(Integer.MAX_VALUE))) {
+
+      if (Register.GTS.equals(mode) && !Register.GTS.equals(reader.getVectorSchemaRoot().getSchema().getCustomMetadata().get(ArrowHelper.MODE))) {
+        throw new WarpScriptException("Tried to convert a GTS but input is not a GTS.");
+      }
+
+      ArrowReaders.forEachBatch(reader, Register.PAIR.equals(mode), new ArrowReaders.BatchConsumer() {
+        @Override
+        public void accept(Object batch) throws WarpScriptException {
+          macroStack.push(batch);
+          macroStack.exec(macro);
+        }
+      });
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    }
+
+    return stack;
+  }
+}
@@ -0,0 +1,105 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.direct.ArrowStreams;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Join Arrow streams on their timestamp column
+ */
+public class ARROWJOIN extends FormattedWarpScriptFunction {
+
+  public static final String STREAMS = "streams";
+  public static final String TYPE = "type";
+  public static final String PREFIXES = "prefixes";
+  public static final String RESULT = "result";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWJOIN(String name) {
+    super(name);
+
+    getDocstring().append("Join Arrow streams (BYTES) on their timestamp column into a wide Arrow stream of conversion mode PAIR. " +
+      "Each input must be sorted by increasing timestamps, this is verified while its record batches are merged. " +
+      "The output has a timestamp column, then the other columns of each input with their name prefixed by the prefix of the input and a dot. " +
+      "An inner join outputs a row for each timestamp present in all inputs. " +
+      "An outer join outputs a row for each timestamp present in any input, with null values for the inputs that lack it. " +
+      "An asof join outputs a row for each row of the first input, with the values of the last row of each other input whose timestamp is lower or equal. " +
+      "Rows that share a timestamp within an input are joined in order rather than combined: the n-th row of each input at a given timestamp are joined together. " +
+      "An inner join leaves out the rows of an input that has more rows at this timestamp than another input, an outer join outputs them with null values for the other inputs.");
+
+    args = new ArgumentsBuilder()
+      .addListArgument(byte[].class, STREAMS, "Arrow streams to be joined. Each must have a timestamp column of 64-bit integers.")
+      .addArgument(String.class, TYPE, "Type of join: inner, outer or asof.")
+      .addOptionalListArgument(String.class, PREFIXES, "Prefixes of the column names of each input. Default to the index of the input in the list.", new ArrayList<String>())
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(byte[].class, RESULT, "The joined Arrow stream.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+
+    List<byte[]> streams = (List<byte[]>) params.get(STREAMS);
+    List<InputStream> inputs = new ArrayList<InputStream>(streams.size());
+    for (byte[] stream: streams) {
+      inputs.add(new ByteArrayInputStream(stream));
+    }
+
+    ArrowStreams.JoinType type;
+    try {
+      type = ArrowStreams.JoinType.valueOf(((String) params.get(TYPE)).toUpperCase());
+    } catch (IllegalArgumentException iae) {
+      throw new WarpScriptException(getName() + " expects a type of join among " + Arrays.toString(ArrowStreams.JoinType.values()) + ".");
+    }
+
+    List<String> prefixes = (List<String>) params.get(PREFIXES);
+    if (prefixes.isEmpty()) {
+      prefixes = new ArrayList<String>(streams.size());
+      for (int i = 0; i < streams.size(); i++) {
+        prefixes.add(String.valueOf(i));
+      }
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowStreams.join(inputs, prefixes, type, out);
+    stack.push(out.toByteArray());
+
+    return stack;
+  }
+}
@@ -0,0 +1,75 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.direct.ArrowStreams;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+/**
+ * Extract a range of rows of an Arrow stream without decoding it
+ */
+public class ARROWSLICE extends FormattedWarpScriptFunction {
+
+  public static final String BYTES = "bytes";
+  public static final String OFFSET = "offset";
+  public static final String LENGTH = "length";
+  public static final String RESULT = "result";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public ARROWSLICE(String name) {
+    super(name);
+
+    getDocstring().append("Extract the rows [offset, offset + length) of an Arrow stream (BYTES) into a new Arrow stream. " +
+      "Record batches outside of the range are skipped and only the batches at the boundaries of the range are split, so the rows are not decoded. " +
+      "The metadata and dictionaries of the input are kept.");
+
+    args = new ArgumentsBuilder()
+      .addArgument(byte[].class, BYTES, "Arrow stream to be sliced.")
+      .addArgument(Long.class, OFFSET, "Index of the first row to extract.")
+      .addArgument(Long.class, LENGTH, "Number of rows to extract. The result has less rows if the input ends before.")
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(byte[].class, RESULT, "The sliced Arrow stream.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowStreams.slice(new ByteArrayInputStream((byte[]) params.get(BYTES)), (Long) params.get(OFFSET), (Long) params.get(LENGTH), out);
+    stack.push(out.toByteArray());
+
+    return stack;
+  }
+}
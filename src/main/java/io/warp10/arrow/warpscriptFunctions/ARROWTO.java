@@ -16,16 +16,29 @@
 
 package io.warp10.arrow.warpscriptFunctions;
 
+import io.warp10.WarpConfig;
 import io.warp10.arrow.convert.Register;
+import io.warp10.arrow.direct.ArrowHelper;
+import io.warp10.arrow.direct.LruCache;
+import io.warp10.continuum.gts.GTSEncoder;
+import io.warp10.continuum.gts.GeoTimeSerie;
+import io.warp10.continuum.store.thrift.data.Metadata;
+import io.warp10.crypto.SipHashInline;
 import io.warp10.script.WarpScriptException;
 import io.warp10.script.WarpScriptStack;
 import io.warp10.ext.formatted.FormattedWarpScriptFunction;
 import org.apache.arrow.memory.RootAllocator;
 import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.commons.math3.linear.RealVector;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -36,6 +49,30 @@ public class ARROWTO extends FormattedWarpScriptFunction {
   private final Arguments args;
   public static final String BYTES = "bytes";
   public static final String MODE = "WarpScriptConversionMode";
+  public static final String CACHE = "cache";
+
+  //
+  // Cache of decoded results, keyed by a hash of the input bytes and the requested conversion mode
+  // Its limits are read from the configuration when the extension is loaded
+  //
+
+  public static final String CONF_CACHE_MAX_ENTRIES = "arrow.cache.maxentries";
+  public static final String CONF_CACHE_MAX_BYTES = "arrow.cache.maxbytes";
+  public static final int DEFAULT_CACHE_MAX_ENTRIES = 64;
+  public static final long DEFAULT_CACHE_MAX_BYTES = 256L * 1024L * 1024L;
+  private static final LruCache<String, Object> cache = new LruCache<String, Object>(
+    Integer.parseInt(WarpConfig.getProperty(CONF_CACHE_MAX_ENTRIES, String.valueOf(DEFAULT_CACHE_MAX_ENTRIES))),
+    Long.parseLong(WarpConfig.getProperty(CONF_CACHE_MAX_BYTES, String.valueOf(DEFAULT_CACHE_MAX_BYTES))));
+
+  // SipHash keys of the two halves of the 128-bit hash of the input
+  private static final long K0 = 0x5741525031304152L;
+  private static final long K1 = 0x524f574341434845L;
+  private static final long K2 = 0x4445434f4445444bL;
+  private static final long K3 = 0x45595345434f4e44L;
+
+  public static LruCache<String, Object> getCache() {
+    return cache;
+  }
 
   private final Arguments output;
   private static final String RESULT = "result";
@@ -54,8 +91,9 @@ public class ARROWTO extends FormattedWarpScriptFunction {
       "If the input has no value for the metadata *WarpScriptType*, it will use the default value PAIR.");
 
     args = new ArgumentsBuilder()
-      .addArgument(byte[].class, BYTES, "Arrow stream to be decoded." )
+      .addArgument(Object.class, BYTES, "Arrow stream to be decoded (BYTES), or LIST of BYTES chunks whose concatenation is an Arrow stream." )
       .addOptionalArgument(String.class, MODE, "WarpScriptConversionMode to use. If set, this value takes precedence for the choice of the conversion mode.", "")
+      .addOptionalArgument(Boolean.class, CACHE, "If true, the result is kept in a cache shared by the scripts of the platform, keyed by a hash of the input, and the next decodings of the same input with the same conversion mode return a copy of it.", false)
       .build();
 
     output = new ArgumentsBuilder()
@@ -64,9 +102,67 @@ public class ARROWTO extends FormattedWarpScriptFunction {
 
   }
 
+  /**
+   * @return true if o is an Arrow stream, as BYTES or as a non-empty LIST of BYTES chunks
+   */
+  public static boolean isArrowStream(Object o) {
+    if (o instanceof byte[]) {
+      return true;
+    }
+
+    if (!(o instanceof List) || ((List) o).isEmpty()) {
+      return false;
+    }
+
+    for (Object chunk: (List) o) {
+      if (!(chunk instanceof byte[])) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Create an input stream from BYTES or from a LIST of BYTES chunks
+   */
+  public static InputStream getInputStream(String name, Object bytes) throws WarpScriptException {
+
+    if (bytes instanceof byte[]) {
+      return new ByteArrayInputStream((byte[]) bytes);
+    }
+
+    if (bytes instanceof List) {
+      List<InputStream> chunks = new ArrayList<InputStream>(((List) bytes).size());
+
+      for (Object chunk: (List) bytes) {
+        if (!(chunk instanceof byte[])) {
+          throw new WarpScriptException(name + " expects a BYTES or a LIST of BYTES.");
+        }
+
+        chunks.add(new ByteArrayInputStream((byte[]) chunk));
+      }
+
+      return new SequenceInputStream(Collections.enumeration(chunks));
+    }
+
+    throw new WarpScriptException(name + " expects a BYTES or a LIST of BYTES.");
+  }
+
   public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
 
-    InputStream in = new ByteArrayInputStream((byte[]) params.get(BYTES));
+    String key = null;
+    if (Boolean.TRUE.equals(params.get(CACHE))) {
+      key = cacheKey(params.get(BYTES), (String) params.get(MODE));
+      Object cached = cache.get(key);
+
+      if (null != cached) {
+        stack.push(copy(cached));
+        return stack;
+      }
+    }
+
+    InputStream in = getInputStream(getName(), params.get(BYTES));
 
     Object res = null;
 
@@ -96,8 +192,90 @@ public class ARROWTO extends FormattedWarpScriptFunction {
       throw new WarpScriptException(ioe);
     }
 
+    // the cached result is a copy, so that the pushed result can be modified
+    if (null != key) {
+      cache.put(key, copy(res), 2L * key.length() + ArrowHelper.estimateSize(res));
+    }
+
     stack.push(res);
 
     return stack;
   }
+
+  /**
+   * Cache key of an input: its length and 128-bit SipHash, chained over chunks, and the requested conversion mode
+   */
+  private String cacheKey(Object bytes, String mode) throws WarpScriptException {
+    List<byte[]> chunks = new ArrayList<byte[]>();
+
+    if (bytes instanceof byte[]) {
+      chunks.add((byte[]) bytes);
+    } else if (bytes instanceof List) {
+      for (Object chunk: (List) bytes) {
+        if (!(chunk instanceof byte[])) {
+          throw new WarpScriptException(getName() + " expects a BYTES or a LIST of BYTES.");
+        }
+        chunks.add((byte[]) chunk);
+      }
+    } else {
+      throw new WarpScriptException(getName() + " expects a BYTES or a LIST of BYTES.");
+    }
+
+    long length = 0L;
+    long h1 = 0L;
+    long h2 = 0L;
+    for (byte[] chunk: chunks) {
+      h1 = SipHashInline.hash24(K0, K1 ^ h1, chunk, 0, chunk.length);
+      h2 = SipHashInline.hash24(K2, K3 ^ h2, chunk, 0, chunk.length);
+      length += chunk.length;
+    }
+
+    return mode + ":" + length + ":" + String.format("%016x%016x", h1, h2);
+  }
+
+  /**
+   * Copy a decoded result, so that the cached one is never modified.
+   * Lists, maps, GTS, GTS encoders, vectors and arrays are copied, other values are immutable.
+   */
+  private static Object copy(Object o) throws WarpScriptException {
+    if (o instanceof List) {
+      List<Object> copy = new ArrayList<Object>(((List) o).size());
+      for (Object element: (List) o) {
+        copy.add(copy(element));
+      }
+      return copy;
+
+    } else if (o instanceof Map) {
+      Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+      for (Map.Entry<Object, Object> entry: ((Map<Object, Object>) o).entrySet()) {
+        copy.put(entry.getKey(), copy(entry.getValue()));
+      }
+      return copy;
+
+    } else if (o instanceof GeoTimeSerie) {
+      return ((GeoTimeSerie) o).clone();
+
+    } else if (o instanceof GTSEncoder) {
+      try {
+        GTSEncoder copy = new GTSEncoder(0L);
+        copy.setMetadata(new Metadata(((GTSEncoder) o).getMetadata()));
+        copy.merge((GTSEncoder) o);
+        return copy;
+      } catch (IOException ioe) {
+        throw new WarpScriptException(ioe);
+      }
+
+    } else if (o instanceof RealVector) {
+      return ((RealVector) o).copy();
+
+    } else if (o instanceof byte[]) {
+      return ((byte[]) o).clone();
+
+    } else if (o instanceof double[]) {
+      return ((double[]) o).clone();
+
+    } else {
+      return o;
+    }
+  }
 }
@@ -0,0 +1,134 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.arrow.convert.Register;
+import io.warp10.arrow.direct.ArrowParquet;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.parquet.io.InputFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decode a Parquet file
+ */
+public class PARQUETTO extends FormattedWarpScriptFunction {
+
+  public static final String IN = "in";
+  public static final String COLUMNS = "columns";
+  public static final String START = "start";
+  public static final String END = "end";
+  public static final String MODE = ARROWTO.MODE;
+  public static final String ARROW = "arrow";
+  public static final String RESULT = "result";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public PARQUETTO(String name) {
+    super(name);
+
+    getDocstring().append("Decode the rows of a Parquet file whose timestamp is in [start, end], as ARROW-> decodes an Arrow stream. " +
+      "Row groups whose timestamp statistics are outside of the range are skipped and only the listed columns are read. " +
+      "Files written by ->PARQUET are decoded with the schema and the conversion mode of their Arrow stream, the schema of other files is derived from the types of their columns.");
+
+    args = new ArgumentsBuilder()
+      .addArgument(Object.class, IN, "The Parquet file (BYTES), or its path (STRING) relative to the directory set by " + TOPARQUET.CONF_ROOT + " in the configuration.")
+      .addOptionalArgument(List.class, COLUMNS, "Names of the columns to decode, in this order. All columns are decoded if empty.", new ArrayList<Object>())
+      .addOptionalArgument(Long.class, START, "First timestamp of the range, in platform time units.", Long.MIN_VALUE)
+      .addOptionalArgument(Long.class, END, "Last timestamp of the range, in platform time units.", Long.MAX_VALUE)
+      .addOptionalArgument(String.class, MODE, "WarpScriptConversionMode to use. If not set, the mode stored in the metadata of the file is used, or PAIR.", "")
+      .addOptionalArgument(Boolean.class, ARROW, "If true, the Arrow stream (BYTES) is output instead of being decoded.", false)
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(Object.class, RESULT, "The decoded content of the file, or its Arrow stream if " + ARROW + " is true.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+    Object in = params.get(IN);
+
+    InputFile file;
+    if (in instanceof byte[]) {
+      file = new ArrowParquet.BytesInputFile((byte[]) in);
+    } else if (in instanceof String) {
+      File local = TOPARQUET.resolve(getName(), (String) in);
+      if (!local.isFile()) {
+        throw new WarpScriptException(getName() + " found no file at " + in + ".");
+      }
+      file = new ArrowParquet.LocalInputFile(local);
+    } else {
+      throw new WarpScriptException(getName() + " expects " + IN + " to be BYTES or a STRING path.");
+    }
+
+    List<String> columns = new ArrayList<String>();
+    for (Object column: (List) params.get(COLUMNS)) {
+      if (!(column instanceof String)) {
+        throw new WarpScriptException(getName() + " expects " + COLUMNS + " to be a LIST of STRING.");
+      }
+      columns.add((String) column);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowParquet.read(file, columns, (Long) params.get(START), (Long) params.get(END), out);
+
+    if (Boolean.TRUE.equals(params.get(ARROW))) {
+      stack.push(out.toByteArray());
+      return stack;
+    }
+
+    try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), new RootAllocator(Integer.MAX_VALUE))) {
+
+      Map<String, String> metadata = reader.getVectorSchemaRoot().getSchema().getCustomMetadata();
+
+      String conversionMode = (String) params.get(MODE);
+      if ("".equals(conversionMode)) {
+        conversionMode = null == metadata || null == metadata.get(MODE) ? Register.PAIR : metadata.get(MODE);
+      }
+
+      if (!Register.isSupportedMode(conversionMode)) {
+        throw new WarpScriptException("WarpScriptConversionMode " + conversionMode + " is not supported.");
+      }
+
+      stack.push(Register.getConverter(conversionMode).read(reader));
+
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    }
+
+    return stack;
+  }
+}
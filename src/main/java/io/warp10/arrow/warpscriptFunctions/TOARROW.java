@@ -17,11 +17,14 @@
 package io.warp10.arrow.warpscriptFunctions;
 
 import io.warp10.arrow.convert.Register;
+import io.warp10.arrow.direct.ChunkedOutputStream;
 import io.warp10.script.WarpScriptException;
 import io.warp10.script.WarpScriptStack;
 import io.warp10.ext.formatted.FormattedWarpScriptFunction;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -30,6 +33,9 @@ import java.util.Map;
 public class TOARROW extends FormattedWarpScriptFunction {
 
   public static final String IN = "in";
+  public static final String CHUNK_SIZE = "chunkSize";
+  public static final String FIXED_SIZE_BINARY = "fixedSizeBinary";
+  public static final String MODE = ARROWTO.MODE;
   public static final String OUT = "out";
 
   private final Arguments args;
@@ -45,36 +51,85 @@ public class TOARROW extends FormattedWarpScriptFunction {
   public TOARROW(String name) {
     super(name);
 
-    getDocstring().append("Encode input into Arrow columnar format (BYTES). The conversion table is in the extension's README.");
+    getDocstring().append("Encode input into Arrow columnar format (BYTES). The conversion table is in the extension's README. " +
+      "Outputs too large for a single byte array can be split into a LIST of BYTES using the optional argument " + CHUNK_SIZE + ".");
 
     args =  new ArgumentsBuilder()
       .addArgument(Object.class, IN, "See the README of the extension for supported types.")
+      .addOptionalArgument(String.class, MODE, "WarpScriptConversionMode to use. If not set, the first mode that supports the input is used. Some modes, such as WIDE, are only used if set.", "")
+      .addOptionalArgument(Long.class, CHUNK_SIZE, "If strictly positive, the output is split into a LIST of BYTES of at most this size. Their concatenation is the Arrow stream.", 0L)
+      .addOptionalArgument(Boolean.class, FIXED_SIZE_BINARY, "In PAIR mode, encode the BYTES columns whose values all have the same length, such as UUIDs, as FixedSizeBinary columns instead of Binary columns.", false)
       .build();
 
     output = new ArgumentsBuilder()
-      .addArgument(byte[].class, OUT, "The resulting byte array.")
+      .addArgument(Object.class, OUT, "The resulting byte array, or list of byte arrays if " + CHUNK_SIZE + " is set.")
       .build();
   }
 
   @Override
   public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
     Object in = params.get(IN);
-    ByteArrayOutputStream out =  new ByteArrayOutputStream();
-    boolean found = false;
-    for (String type: Register.getKnownConversionModes()) {
-      if (Register.getConverter(type).isConvertible(in)) {
-        Register.getConverter(type).write(in, out);
-        found = true;
-        break;
-      }
-    }
+    long chunkSize = (Long) params.get(CHUNK_SIZE);
 
-    if (!found) {
-      throw new WarpScriptException("Input is not convertible to Arrow columnar format.");
+    if (chunkSize < 0 || chunkSize > Integer.MAX_VALUE - 8) {
+      throw new WarpScriptException(getName() + " expects " + CHUNK_SIZE + " to be positive and less than 2 GB.");
     }
 
-    stack.push(out.toByteArray());
+    OutputStream out = chunkSize > 0 ? new ChunkedOutputStream((int) chunkSize) : new ByteArrayOutputStream();
+    Map<String, Object> options = new HashMap<String, Object>();
+    options.put(FIXED_SIZE_BINARY, params.get(FIXED_SIZE_BINARY));
+
+    write(in, (String) params.get(MODE), options, out);
+
+    if (out instanceof ChunkedOutputStream) {
+      stack.push(((ChunkedOutputStream) out).getChunks());
+    } else {
+      stack.push(((ByteArrayOutputStream) out).toByteArray());
+    }
 
     return stack;
   }
+
+  /**
+   * Encode input as an Arrow stream with a conversion mode, or with the first mode that supports it if mode is empty
+   * @param in
+   * @param mode
+   * @param out
+   * @throws WarpScriptException
+   */
+  public static void write(Object in, String mode, OutputStream out) throws WarpScriptException {
+    write(in, mode, new HashMap<String, Object>(), out);
+  }
+
+  /**
+   * Same as above, with conversion options
+   * @param in
+   * @param mode
+   * @param options arguments of ->ARROW that set how the input is encoded, such as fixedSizeBinary
+   * @param out
+   * @throws WarpScriptException
+   */
+  public static void write(Object in, String mode, Map<String, Object> options, OutputStream out) throws WarpScriptException {
+    if (!"".equals(mode)) {
+      if (!Register.isSupportedMode(mode)) {
+        throw new WarpScriptException("WarpScriptConversionMode " + mode + " is not supported.");
+      }
+
+      if (!Register.getConverter(mode).isConvertible(in)) {
+        throw new WarpScriptException("Input is not convertible to Arrow columnar format with WarpScriptConversionMode " + mode + ".");
+      }
+
+      Register.getConverter(mode).write(in, options, out);
+      return;
+    }
+
+    for (String type: Register.getKnownConversionModes()) {
+      if (!Register.getConverter(type).requiresExplicitMode() && Register.getConverter(type).isConvertible(in)) {
+        Register.getConverter(type).write(in, options, out);
+        return;
+      }
+    }
+
+    throw new WarpScriptException("Input is not convertible to Arrow columnar format.");
+  }
 }
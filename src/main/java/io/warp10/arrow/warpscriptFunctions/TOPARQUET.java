@@ -0,0 +1,150 @@
+//
+// Copyright 2020-23 SenX
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package io.warp10.arrow.warpscriptFunctions;
+
+import io.warp10.WarpConfig;
+import io.warp10.arrow.direct.ArrowParquet;
+import io.warp10.ext.formatted.FormattedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
+import io.warp10.script.WarpScriptStack;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Encode an Object as a Parquet file
+ */
+public class TOPARQUET extends FormattedWarpScriptFunction {
+
+  public static final String CONF_ROOT = "arrow.parquet.root";
+
+  public static final String IN = TOARROW.IN;
+  public static final String MODE = ARROWTO.MODE;
+  public static final String COMPRESSION = "compression";
+  public static final String ROW_GROUP_SIZE = "rowGroupSize";
+  public static final String PATH = "path";
+  public static final String OUT = "out";
+
+  private final Arguments args;
+  private final Arguments output;
+
+  public Arguments getArguments() {
+    return args;
+  }
+  public Arguments getOutput() {
+    return output;
+  }
+
+  public TOPARQUET(String name) {
+    super(name);
+
+    getDocstring().append("Encode input into a Parquet file, through the Arrow stream that ->ARROW would output, or directly from an Arrow stream. " +
+      "The fields and the metadata of the Arrow stream are stored in the metadata of the file, so that PARQUET-> decodes it as ARROW-> would decode the Arrow stream. " +
+      "Columns of LIST, MAP and VECTOR values and streams in conversion mode SERIES are not supported.");
+
+    args = new ArgumentsBuilder()
+      .addArgument(Object.class, IN, "An Arrow stream (BYTES or LIST of BYTES), or any input of ->ARROW.")
+      .addOptionalArgument(String.class, MODE, "WarpScriptConversionMode used to encode input that is not an Arrow stream, as with ->ARROW.", "")
+      .addOptionalArgument(String.class, COMPRESSION, "Compression of the pages: UNCOMPRESSED, SNAPPY, GZIP or ZSTD.", CompressionCodecName.SNAPPY.name())
+      .addOptionalArgument(Long.class, ROW_GROUP_SIZE, "Size in bytes above which a row group is closed. The statistics of each row group are used to skip it when reading a time range.", (long) ParquetWriter.DEFAULT_BLOCK_SIZE)
+      .addOptionalArgument(String.class, PATH, "If set, the file is written at this path, relative to the directory set by " + CONF_ROOT + " in the configuration, instead of being output.", "")
+      .build();
+
+    output = new ArgumentsBuilder()
+      .addArgument(byte[].class, OUT, "The Parquet file, if " + PATH + " is not set.")
+      .build();
+  }
+
+  @Override
+  public WarpScriptStack apply(Map<String, Object> params, WarpScriptStack stack) throws WarpScriptException {
+    Object in = params.get(IN);
+    long rowGroupSize = (Long) params.get(ROW_GROUP_SIZE);
+    String path = (String) params.get(PATH);
+
+    if (rowGroupSize <= 0 || rowGroupSize > Integer.MAX_VALUE) {
+      throw new WarpScriptException(getName() + " expects " + ROW_GROUP_SIZE + " to be strictly positive and less than 2 GB.");
+    }
+
+    CompressionCodecName codec;
+    try {
+      codec = CompressionCodecName.valueOf(((String) params.get(COMPRESSION)).toUpperCase());
+    } catch (IllegalArgumentException iae) {
+      throw new WarpScriptException(getName() + " does not support compression " + params.get(COMPRESSION) + ".");
+    }
+
+    //
+    // Arrow stream to write
+    //
+
+    InputStream arrow;
+    if (ARROWTO.isArrowStream(in)) {
+      arrow = ARROWTO.getInputStream(getName(), in);
+    } else {
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+      TOARROW.write(in, (String) params.get(MODE), encoded);
+      arrow = new ByteArrayInputStream(encoded.toByteArray());
+    }
+
+    if ("".equals(path)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ArrowParquet.write(arrow, out, codec, (int) rowGroupSize);
+      stack.push(out.toByteArray());
+
+    } else {
+      File file = resolve(getName(), path);
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+        ArrowParquet.write(arrow, out, codec, (int) rowGroupSize);
+      } catch (IOException ioe) {
+        throw new WarpScriptException(ioe);
+      }
+    }
+
+    return stack;
+  }
+
+  /**
+   * @return a file under the directory set by CONF_ROOT
+   */
+  static File resolve(String function, String path) throws WarpScriptException {
+    String rootPath = WarpConfig.getProperty(CONF_ROOT);
+    if (null == rootPath) {
+      throw new WarpScriptException(function + " can not access files, " + CONF_ROOT + " is not set.");
+    }
+
+    try {
+      File root = new File(rootPath).getCanonicalFile();
+      File file = new File(root, path).getCanonicalFile();
+
+      if (!file.toPath().startsWith(root.toPath())) {
+        throw new WarpScriptException(function + " can only access files under " + CONF_ROOT + ".");
+      }
+
+      return file;
+    } catch (IOException ioe) {
+      throw new WarpScriptException(ioe);
+    }
+  }
+}
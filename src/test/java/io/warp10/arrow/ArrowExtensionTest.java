@@ -19,33 +19,99 @@ package io.warp10.arrow;
 import com.geoxp.GeoXPLib;
 import com.vividsolutions.jts.util.Assert;
 import io.warp10.WarpConfig;
+import io.warp10.arrow.convert.Register;
+import io.warp10.arrow.direct.ArrowDataset;
 import io.warp10.arrow.direct.ArrowHelper;
+import io.warp10.arrow.direct.ArrowWriters;
+import io.warp10.arrow.flight.WarpScriptFlightProducer;
 import io.warp10.arrow.pojo.ClassnameWarpField;
 import io.warp10.arrow.pojo.ElevationWarpField;
 import io.warp10.arrow.pojo.LatitudeWarpField;
 import io.warp10.arrow.pojo.LongitudeWarpField;
 import io.warp10.arrow.pojo.TimestampWarpField;
 import io.warp10.arrow.pojo.ValueWarpField;
+import io.warp10.arrow.pojo.WarpSchema;
 import io.warp10.arrow.warpscriptFunctions.ARROWTO;
 import io.warp10.arrow.warpscriptFunctions.TOARROW;
+import io.warp10.continuum.gts.GTSDecoder;
 import io.warp10.continuum.gts.GTSHelper;
+import io.warp10.continuum.gts.GTSEncoder;
 import io.warp10.continuum.gts.GeoTimeSerie;
 import io.warp10.continuum.store.Constants;
 import io.warp10.script.MemoryWarpScriptStack;
+import io.warp10.script.NamedWarpScriptFunction;
+import io.warp10.script.WarpScriptException;
 import io.warp10.script.WarpScriptLib;
+import io.warp10.script.WarpScriptStack;
 import io.warp10.script.WarpScriptStackFunction;
 import io.warp10.script.functions.ASENCODERS;
+import io.warp10.script.functions.TYPEOF;
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.FlightDescriptor;
+import org.apache.arrow.flight.FlightServer;
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.flight.Location;
+import org.apache.arrow.flight.PutResult;
+import org.apache.arrow.flight.SyncPutListener;
+import org.apache.arrow.flight.Ticket;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.DurationVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntervalDayVector;
+import org.apache.arrow.vector.IntervalYearVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.UInt1Vector;
+import org.apache.arrow.vector.UInt2Vector;
+import org.apache.arrow.vector.UInt4Vector;
+import org.apache.arrow.vector.UInt8Vector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.BaseRepeatedValueVector;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.IntervalUnit;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.commons.math3.linear.RealVector;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 public class ArrowExtensionTest {
 
@@ -441,4 +507,1296 @@ public class ArrowExtensionTest {
 
     System.out.println(stack.dump(100));
   }
+
+  @Test
+  public void pairTemporalColumnsToTicks() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    int size = 10;
+    List<Field> fields = new ArrayList<>();
+    fields.add(Field.nullable("ts", new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC")));
+    fields.add(Field.nullable("date", new ArrowType.Date(DateUnit.DAY)));
+    fields.add(Field.nullable("duration", new ArrowType.Duration(TimeUnit.NANOSECOND)));
+    fields.add(Field.nullable("timeMilli", new ArrowType.Time(TimeUnit.MILLISECOND, 32)));
+    fields.add(Field.nullable("timeMicro", new ArrowType.Time(TimeUnit.MICROSECOND, 64)));
+    fields.add(Field.nullable("interval", new ArrowType.Interval(IntervalUnit.DAY_TIME)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      TimeStampMilliTZVector ts = (TimeStampMilliTZVector) root.getVector("ts");
+      DateDayVector date = (DateDayVector) root.getVector("date");
+      DurationVector duration = (DurationVector) root.getVector("duration");
+      TimeMilliVector timeMilli = (TimeMilliVector) root.getVector("timeMilli");
+      TimeMicroVector timeMicro = (TimeMicroVector) root.getVector("timeMicro");
+      IntervalDayVector interval = (IntervalDayVector) root.getVector("interval");
+
+      for (int i = 0; i < size; i++) {
+        ts.setSafe(i, i * 1000L);
+        date.setSafe(i, i);
+        if (0 == i % 2) {
+          duration.setSafe(i, i * 1000L);
+        } else {
+          duration.setNull(i);
+        }
+        timeMilli.setSafe(i, i * 1000);
+        timeMicro.setSafe(i, i * 1000000L);
+        if (0 == i % 2) {
+          interval.setNull(i);
+        } else {
+          interval.setSafe(i, i, 500);
+        }
+      }
+      root.setRowCount(size);
+
+      writer.start();
+      writer.writeBatch();
+      writer.end();
+    }
+
+    stack.push(out.toByteArray());
+    stack.exec(ArrowExtension.ARROWTO);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    for (int i = 0; i < size; i++) {
+      Assert.equals(i * Constants.TIME_UNITS_PER_S, cols.get("ts").get(i));
+      Assert.equals(i * 86400L * Constants.TIME_UNITS_PER_S, cols.get("date").get(i));
+      if (0 == i % 2) {
+        Assert.equals((long) i, cols.get("duration").get(i));
+      } else {
+        Assert.isTrue(null == cols.get("duration").get(i));
+      }
+      Assert.equals(i * Constants.TIME_UNITS_PER_S, cols.get("timeMilli").get(i));
+      Assert.equals(i * Constants.TIME_UNITS_PER_S, cols.get("timeMicro").get(i));
+      if (0 == i % 2) {
+        Assert.isTrue(null == cols.get("interval").get(i));
+      } else {
+        Assert.equals((i * 86400000L + 500L) * Constants.TIME_UNITS_PER_S / 1000L, cols.get("interval").get(i));
+      }
+    }
+  }
+
+  @Test
+  public void pairYearMonthIntervalIsRejected() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    List<Field> fields = new ArrayList<>();
+    fields.add(Field.nullable("interval", new ArrowType.Interval(IntervalUnit.YEAR_MONTH)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      ((IntervalYearVector) root.getVector("interval")).setSafe(0, 14);
+      root.setRowCount(1);
+
+      writer.start();
+      writer.writeBatch();
+      writer.end();
+    }
+
+    stack.push(out.toByteArray());
+
+    // months have no fixed length in ticks
+    boolean failed = false;
+    try {
+      stack.exec(ArrowExtension.ARROWTO);
+    } catch (WarpScriptException wse) {
+      failed = true;
+    }
+    Assert.isTrue(failed);
+  }
+
+  @Test
+  public void lastBatchShorterThanBatchSize() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // 25 rows in batches of 10: the last batch holds 5 rows
+    GeoTimeSerie gts = new GeoTimeSerie();
+    gts.setName("remainder");
+    for (int i = 0; i < 25; i++) {
+      GTSHelper.setValue(gts, i, (long) i);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowWriters.gtsToArrowStream(gts, 10, out);
+
+    stack.push(out.toByteArray());
+    stack.exec(ArrowExtension.ARROWTO);
+
+    GeoTimeSerie res = (GeoTimeSerie) stack.pop();
+    Assert.equals(25, res.size());
+    for (int i = 0; i < 25; i++) {
+      Assert.equals((long) i, GTSHelper.tickAtIndex(res, i));
+      Assert.equals((long) i, GTSHelper.valueAtIndex(res, i));
+    }
+  }
+
+  @Test
+  public void nullsAcrossBatches() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // LONG values fill the first batch and DOUBLE values the second one, which must not keep the LONG values of the first
+    GTSEncoder encoder = new GTSEncoder(0L);
+    for (int i = 0; i < 10; i++) {
+      encoder.addValue(i, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, (long) i);
+    }
+    for (int i = 10; i < 15; i++) {
+      encoder.addValue(i, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, i + 0.5D);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowWriters.gtsEncodertoArrowStream(encoder, 10, out);
+
+    stack.push(out.toByteArray());
+    stack.exec(ArrowExtension.ARROWTO);
+
+    GTSDecoder decoder = ((GTSEncoder) stack.pop()).getDecoder(true);
+    int count = 0;
+    while (decoder.next()) {
+      if (count < 10) {
+        Assert.equals((long) count, decoder.getBinaryValue());
+      } else {
+        Assert.equals(count + 0.5D, decoder.getBinaryValue());
+      }
+      count++;
+    }
+    Assert.equals(15, count);
+
+    // in PAIR mode, the nulls of the second batch must not show the values of the first one
+    List<Object> input = new ArrayList<Object>();
+    input.add(new HashMap<String, String>());
+    Map<String, List> columns = new LinkedHashMap<String, List>();
+    columns.put("l", Arrays.asList(1L, 2L, 3L, null, null));
+    columns.put("s", Arrays.asList("a", "b", "c", "d", null));
+    input.add(columns);
+
+    out = new ByteArrayOutputStream();
+    ArrowWriters.columnsToArrowStream(input, 3, out);
+
+    stack.push(out.toByteArray());
+    stack.exec("'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+    Assert.equals(Arrays.asList(1L, 2L, 3L, null, null), cols.get("l"));
+    Assert.equals(Arrays.asList("a", "b", "c", "d", null), cols.get("s"));
+  }
+
+  @Test
+  public void encoderBatchesWithAbsentColumns() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    //
+    // A GTSENCODER stream without location, elevation, nor BOOLEAN, STRING or BYTES columns, written in 3 batches:
+    // LONG values only, then LONG and DOUBLE values, then DOUBLE values only
+    //
+
+    List<Field> fields = new ArrayList<>();
+    fields.add(Field.nullable(TimestampWarpField.TIMESTAMPS_KEY, new ArrowType.Int(64, true)));
+    fields.add(Field.nullable(ValueWarpField.LONG_VALUES_KEY, new ArrowType.Int(64, true)));
+    fields.add(Field.nullable(ValueWarpField.DOUBLE_VALUES_KEY, new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)));
+
+    Map<String, String> metadata = new HashMap<String, String>();
+    metadata.put(ARROWTO.MODE, TYPEOF.typeof(GTSEncoder.class));
+    metadata.put("name", "absent");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, metadata), allocator);
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      BigIntVector timestamps = (BigIntVector) root.getVector(TimestampWarpField.TIMESTAMPS_KEY);
+      BigIntVector longs = (BigIntVector) root.getVector(ValueWarpField.LONG_VALUES_KEY);
+      Float8Vector doubles = (Float8Vector) root.getVector(ValueWarpField.DOUBLE_VALUES_KEY);
+
+      writer.start();
+      for (int batch = 0; batch < 3; batch++) {
+        root.allocateNew();
+        for (int i = 0; i < 4; i++) {
+          int tick = batch * 4 + i;
+          timestamps.setSafe(i, tick);
+          if (0 == batch || (1 == batch && 0 == i % 2)) {
+            longs.setSafe(i, tick);
+          } else {
+            doubles.setSafe(i, tick + 0.5D);
+          }
+        }
+        root.setRowCount(4);
+        writer.writeBatch();
+      }
+      writer.end();
+    }
+
+    stack.push(out.toByteArray());
+    stack.exec(ArrowExtension.ARROWTO);
+
+    GTSEncoder encoder = (GTSEncoder) stack.pop();
+    Assert.equals("absent", encoder.getName());
+
+    GTSDecoder decoder = encoder.getDecoder(true);
+    int count = 0;
+    while (decoder.next()) {
+      Assert.equals((long) count, decoder.getTimestamp());
+      Assert.equals(GeoTimeSerie.NO_LOCATION, decoder.getLocation());
+      Assert.equals(GeoTimeSerie.NO_ELEVATION, decoder.getElevation());
+      if (count < 4 || (count < 8 && 0 == count % 2)) {
+        Assert.equals((long) count, decoder.getBinaryValue());
+      } else {
+        Assert.equals(count + 0.5D, decoder.getBinaryValue());
+      }
+      count++;
+    }
+    Assert.equals(12, count);
+  }
+
+  @Test
+  public void roundTripChunkedOutput() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    stack.exec("NEWGTS 'chunked' RENAME 1 1000 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR 'gts' STORE");
+    stack.exec("{ 'in' $gts 'chunkSize' 1000 } " + ArrowExtension.TOARROW);
+
+    List chunks = (List) stack.peek();
+    Assert.isTrue(chunks.size() > 1);
+    for (int i = 0; i < chunks.size() - 1; i++) {
+      Assert.equals(1000, ((byte[]) chunks.get(i)).length);
+    }
+
+    stack.exec(ArrowExtension.ARROWTO);
+    stack.exec("DUP TYPEOF 'GTS' == ASSERT SIZE 1000 == ASSERT");
+  }
+
+  @Test
+  public void concatWithDictionaryUnification() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'a' RENAME { 'k' 'v' } RELABEL\n" +
+      "0 NaN NaN NaN 1.0 ADDVALUE\n" +
+      "1 NaN NaN NaN 2.0 ADDVALUE\n" +
+      "'a' STORE\n" +
+      "NEWGTS 'b' RENAME { 'k' 'w' } RELABEL\n" +
+      "2 NaN NaN NaN 3.0 ADDVALUE\n" +
+      "'b' STORE\n" +
+      "[ [ $a ] ->ARROW [ $b ] ->ARROW [ $a ] ->ARROW ] " + ArrowExtension.ARROWCONCAT + "\n" +
+      "'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(5, cols.get(ClassnameWarpField.CLASSNAME_KEY).size());
+    Assert.equals("a", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(1));
+    Assert.equals("b", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(2));
+    Assert.equals("a", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(3));
+    Assert.equals("v", cols.get("k").get(0));
+    Assert.equals("w", cols.get("k").get(2));
+    Assert.equals(3.0D, cols.get(ValueWarpField.DOUBLE_VALUES_KEY).get(2));
+  }
+
+  private static byte[] pairStreamWithTimeUnits(long stu) throws Exception {
+    Map<String, String> metadata = new HashMap<String, String>();
+    metadata.put(ArrowHelper.MODE, "PAIR");
+    metadata.put(ArrowHelper.STU, String.valueOf(stu));
+
+    List<Field> fields = new ArrayList<>();
+    fields.add(Field.nullable(TimestampWarpField.TIMESTAMPS_KEY, new ArrowType.Int(64, true)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, metadata), allocator);
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      ((BigIntVector) root.getVector(TimestampWarpField.TIMESTAMPS_KEY)).setSafe(0, stu);
+      root.setRowCount(1);
+
+      writer.start();
+      writer.writeBatch();
+      writer.end();
+    }
+
+    return out.toByteArray();
+  }
+
+  @Test
+  public void concatRejectsIncompatibleStreams() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // streams in GTS mode hold the metadata of their series, which must be the same
+    String script = "NEWGTS 'a' RENAME { 'k' 'v' } RELABEL 0 NaN NaN NaN 1.0 ADDVALUE ->ARROW 'a' STORE\n" +
+      "NEWGTS 'a' RENAME { 'k' 'w' } RELABEL 1 NaN NaN NaN 2.0 ADDVALUE ->ARROW 'b' STORE\n" +
+      "[ $a $a ] " + ArrowExtension.ARROWCONCAT + " DROP";
+    stack.execMulti(script);
+
+    boolean failed = false;
+    try {
+      stack.execMulti("[ $a $b ] " + ArrowExtension.ARROWCONCAT);
+    } catch (WarpScriptException wse) {
+      failed = true;
+    }
+    Assert.isTrue(failed);
+
+    // timestamps in milliseconds and in microseconds can not be mixed
+    stack.push(Arrays.asList(pairStreamWithTimeUnits(1000L), pairStreamWithTimeUnits(1000L)));
+    stack.exec(ArrowExtension.ARROWCONCAT);
+    stack.drop();
+
+    failed = false;
+    try {
+      stack.push(Arrays.asList(pairStreamWithTimeUnits(1000L), pairStreamWithTimeUnits(1000000L)));
+      stack.exec(ArrowExtension.ARROWCONCAT);
+    } catch (WarpScriptException wse) {
+      failed = true;
+    }
+    Assert.isTrue(failed);
+  }
+
+  @Test
+  public void sliceAcrossBatches() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'slice' RENAME 0 99 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR ->ARROW 'batch' STORE\n" +
+      "[ $batch $batch $batch ] " + ArrowExtension.ARROWCONCAT + " 95 10 " + ArrowExtension.ARROWSLICE + "\n" +
+      "'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(10, cols.get(ValueWarpField.LONG_VALUES_KEY).size());
+    for (int i = 0; i < 10; i++) {
+      Assert.equals((long) ((95 + i) % 100), cols.get(ValueWarpField.LONG_VALUES_KEY).get(i));
+    }
+  }
+
+  @Test
+  public void joinOnTimestamps() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'a' RENAME 10 NaN NaN NaN 1 ADDVALUE 20 NaN NaN NaN 2 ADDVALUE 30 NaN NaN NaN 3 ADDVALUE ->ARROW 'a' STORE\n" +
+      "NEWGTS 'b' RENAME 15 NaN NaN NaN 'x' ADDVALUE 20 NaN NaN NaN 'y' ADDVALUE ->ARROW 'b' STORE\n" +
+      "[ $a $b ] 'inner' " + ArrowExtension.ARROWJOIN + " 'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + "\n" +
+      "{ 'streams' [ $a $b ] 'type' 'outer' 'prefixes' [ 'a' 'b' ] } " + ArrowExtension.ARROWJOIN + " 'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + "\n" +
+      "[ $a $b ] 'asof' " + ArrowExtension.ARROWJOIN + " 'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> asof = (Map<String, List>) ((List) stack.pop()).get(1);
+    Map<String, List> outer = (Map<String, List>) ((List) stack.pop()).get(1);
+    Map<String, List> inner = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(1, inner.get(TimestampWarpField.TIMESTAMPS_KEY).size());
+    Assert.equals(20L, inner.get(TimestampWarpField.TIMESTAMPS_KEY).get(0));
+    Assert.equals(2L, inner.get("0." + ValueWarpField.LONG_VALUES_KEY).get(0));
+    Assert.equals("y", inner.get("1." + ValueWarpField.STRING_VALUES_KEY).get(0));
+
+    Assert.equals(4, outer.get(TimestampWarpField.TIMESTAMPS_KEY).size());
+    Assert.equals(15L, outer.get(TimestampWarpField.TIMESTAMPS_KEY).get(1));
+    Assert.isTrue(null == outer.get("a." + ValueWarpField.LONG_VALUES_KEY).get(1));
+    Assert.equals("x", outer.get("b." + ValueWarpField.STRING_VALUES_KEY).get(1));
+
+    Assert.equals(3, asof.get(TimestampWarpField.TIMESTAMPS_KEY).size());
+    Assert.isTrue(null == asof.get("1." + ValueWarpField.STRING_VALUES_KEY).get(0));
+    Assert.equals("y", asof.get("1." + ValueWarpField.STRING_VALUES_KEY).get(2));
+  }
+
+  @Test
+  public void joinWithDuplicateTimestamps() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // rows of the same timestamp are paired in order, not combined: a has two rows at 10, b has two rows at 20
+    String script = "NEWGTS 'a' RENAME 10 NaN NaN NaN 1 ADDVALUE 10 NaN NaN NaN 2 ADDVALUE 20 NaN NaN NaN 3 ADDVALUE ->ARROW 'a' STORE\n" +
+      "NEWGTS 'b' RENAME 10 NaN NaN NaN 'x' ADDVALUE 20 NaN NaN NaN 'y' ADDVALUE 20 NaN NaN NaN 'z' ADDVALUE ->ARROW 'b' STORE\n" +
+      "[ $a $b ] 'inner' " + ArrowExtension.ARROWJOIN + " 'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + "\n" +
+      "[ $a $b ] 'outer' " + ArrowExtension.ARROWJOIN + " 'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> outer = (Map<String, List>) ((List) stack.pop()).get(1);
+    Map<String, List> inner = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(Arrays.asList(10L, 20L), inner.get(TimestampWarpField.TIMESTAMPS_KEY));
+    Assert.equals(3L, inner.get("0." + ValueWarpField.LONG_VALUES_KEY).get(1));
+
+    Assert.equals(Arrays.asList(10L, 10L, 20L, 20L), outer.get(TimestampWarpField.TIMESTAMPS_KEY));
+    Assert.equals("x", outer.get("1." + ValueWarpField.STRING_VALUES_KEY).get(0));
+    Assert.isTrue(null == outer.get("1." + ValueWarpField.STRING_VALUES_KEY).get(1));
+    Assert.equals(3L, outer.get("0." + ValueWarpField.LONG_VALUES_KEY).get(2));
+    Assert.isTrue(null == outer.get("0." + ValueWarpField.LONG_VALUES_KEY).get(3));
+  }
+
+  @Test
+  public void wideRoundTrip() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'a' RENAME { 'k' 'v' } RELABEL 30 NaN NaN NaN 3 ADDVALUE 10 NaN NaN NaN 1 ADDVALUE 'a' STORE\n" +
+      "NEWGTS 'b' RENAME 20 NaN NaN NaN 2.5 ADDVALUE 30 NaN NaN NaN 3.5 ADDVALUE 'b' STORE\n" +
+      "{ 'in' [ $a $b ] 'WarpScriptConversionMode' 'WIDE' } " + ArrowExtension.TOARROW + " 'w' STORE\n" +
+      "{ 'bytes' $w 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + "\n" +
+      "$w " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    List<GeoTimeSerie> list = (List<GeoTimeSerie>) stack.pop();
+    Map<String, List> pair = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(3, pair.get(TimestampWarpField.TIMESTAMPS_KEY).size());
+    Assert.equals(10L, pair.get(TimestampWarpField.TIMESTAMPS_KEY).get(0));
+    Assert.isTrue(null == pair.get("b{}").get(0));
+    Assert.equals(3L, pair.get("a{k=v}").get(2));
+    Assert.equals(3.5D, pair.get("b{}").get(2));
+
+    Assert.equals(2, list.size());
+    Assert.equals("a", list.get(0).getName());
+    Assert.equals("v", list.get(0).getLabels().get("k"));
+    Assert.equals(2, list.get(0).size());
+    Assert.equals(2, list.get(1).size());
+  }
+
+  private static byte[] withTimeUnits(byte[] stream, long stu) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator)) {
+
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      Map<String, String> metadata = new HashMap<String, String>(root.getSchema().getCustomMetadata());
+      metadata.put(ArrowHelper.STU, String.valueOf(stu));
+
+      // the vectors stay owned by the reader, the batches it loads are written as they are
+      VectorSchemaRoot relabeled = new VectorSchemaRoot(new Schema(root.getSchema().getFields(), metadata), root.getFieldVectors(), 0);
+      try (ArrowStreamWriter writer = new ArrowStreamWriter(relabeled, null, out)) {
+        writer.start();
+        while (reader.loadNextBatch()) {
+          relabeled.setRowCount(root.getRowCount());
+          writer.writeBatch();
+        }
+        writer.end();
+      }
+    }
+
+    return out.toByteArray();
+  }
+
+  @Test
+  public void gtsTimeUnits() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    stack.execMulti("NEWGTS 'a' RENAME 10 NaN NaN NaN 1 ADDVALUE 20 NaN NaN NaN 2 ADDVALUE " + ArrowExtension.TOARROW);
+
+    stack.push(withTimeUnits((byte[]) stack.pop(), Constants.TIME_UNITS_PER_S / 1000));
+    stack.exec(ArrowExtension.ARROWTO);
+
+    GeoTimeSerie gts = (GeoTimeSerie) stack.pop();
+    GTSHelper.sort(gts);
+
+    Assert.equals(2, gts.size());
+    Assert.equals(10000L, GTSHelper.tickAtIndex(gts, 0));
+    Assert.equals(20000L, GTSHelper.tickAtIndex(gts, 1));
+  }
+
+  @Test
+  public void wideTimeUnits() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    stack.execMulti("NEWGTS 'a' RENAME 10 NaN NaN NaN 1 ADDVALUE 20 NaN NaN NaN 2 ADDVALUE 'a' STORE\n" +
+      "{ 'in' [ $a ] 'WarpScriptConversionMode' 'WIDE' } " + ArrowExtension.TOARROW);
+
+    // timestamps of the stream are in units 1000 times coarser than the platform ones
+    stack.push(withTimeUnits((byte[]) stack.pop(), Constants.TIME_UNITS_PER_S / 1000));
+    stack.exec(ArrowExtension.ARROWTO);
+
+    GeoTimeSerie gts = ((List<GeoTimeSerie>) stack.pop()).get(0);
+    GTSHelper.sort(gts);
+
+    Assert.equals(2, gts.size());
+    Assert.equals(10000L, GTSHelper.tickAtIndex(gts, 0));
+    Assert.equals(20000L, GTSHelper.tickAtIndex(gts, 1));
+  }
+
+  @Test
+  public void seriesRoundTrip() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'a' RENAME { 'k' 'v' } RELABEL 10 NaN NaN NaN 1 ADDVALUE 20 48.0 -4.5 NaN 2 ADDVALUE 'a' STORE\n" +
+      "NEWGTS 'b' RENAME 'b' STORE\n" +
+      "NEWENCODER 'c' RENAME 30 NaN NaN NaN 'x' ADDVALUE 40 NaN NaN 100 true ADDVALUE 'c' STORE\n" +
+      "{ 'in' [ $a $b $c ] 'WarpScriptConversionMode' 'SERIES' } " + ArrowExtension.TOARROW + " " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    List<GTSEncoder> list = (List<GTSEncoder>) stack.pop();
+
+    Assert.equals(3, list.size());
+    Assert.equals("a", list.get(0).getName());
+    Assert.equals("v", list.get(0).getLabels().get("k"));
+    Assert.equals(2L, list.get(0).getCount());
+    Assert.equals("b", list.get(1).getName());
+    Assert.equals(0L, list.get(1).getCount());
+    Assert.equals("c", list.get(2).getName());
+    Assert.equals(2L, list.get(2).getCount());
+  }
+
+  @Test
+  public void seriesTimeUnits() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    stack.execMulti("NEWGTS 'a' RENAME 10 NaN NaN NaN 1 ADDVALUE 'a' STORE\n" +
+      "NEWGTS 'b' RENAME 20 NaN NaN NaN 2 ADDVALUE 'b' STORE\n" +
+      "{ 'in' [ $a $b ] 'WarpScriptConversionMode' 'SERIES' } " + ArrowExtension.TOARROW);
+
+    stack.push(withTimeUnits((byte[]) stack.pop(), Constants.TIME_UNITS_PER_S / 1000));
+    stack.exec(ArrowExtension.ARROWTO);
+
+    List<GTSEncoder> list = (List<GTSEncoder>) stack.pop();
+
+    Assert.equals(2, list.size());
+    Assert.equals(10000L, list.get(0).getLastTimestamp());
+    Assert.equals(20000L, list.get(1).getLastTimestamp());
+  }
+
+  @Test
+  public void encoderTimeUnits() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    stack.execMulti("NEWENCODER 'c' RENAME 10 NaN NaN NaN 'x' ADDVALUE 20 NaN NaN NaN 2 ADDVALUE " + ArrowExtension.TOARROW);
+
+    stack.push(withTimeUnits((byte[]) stack.pop(), Constants.TIME_UNITS_PER_S / 1000));
+    stack.exec(ArrowExtension.ARROWTO);
+
+    GTSDecoder decoder = ((GTSEncoder) stack.pop()).getDecoder();
+
+    Assert.isTrue(decoder.next());
+    Assert.equals(10000L, decoder.getTimestamp());
+    Assert.isTrue(decoder.next());
+    Assert.equals(20000L, decoder.getTimestamp());
+  }
+
+  @Test
+  public void fetchChunkByChunk() throws Exception {
+
+    //
+    // FIND and FETCH are replaced by stubs that stand for a store of 5 series of 3 data points
+    //
+
+    Object find = WarpScriptLib.getFunction(WarpScriptLib.FIND);
+    Object fetch = WarpScriptLib.getFunction(WarpScriptLib.FETCH);
+    final List<Integer> fetched = new ArrayList<Integer>();
+
+    WarpScriptLib.addNamedWarpScriptFunction(new StubFunction(WarpScriptLib.FIND) {
+      @Override
+      public Object apply(WarpScriptStack stack) throws WarpScriptException {
+        Assert.equals("~.*", ((Map) stack.pop()).get("class"));
+        List<Object> series = new ArrayList<Object>();
+        for (int i = 0; i < 5; i++) {
+          series.add(layoutKeyGts("s" + i, new String[] {"k", "v" + i}, 0L).cloneEmpty());
+        }
+        stack.push(series);
+        return stack;
+      }
+    });
+
+    WarpScriptLib.addNamedWarpScriptFunction(new StubFunction(WarpScriptLib.FETCH) {
+      @Override
+      public Object apply(WarpScriptStack stack) throws WarpScriptException {
+        Map params = (Map) stack.pop();
+        Assert.isTrue(!params.containsKey("class"));
+        Assert.equals(true, params.get("encoders"));
+
+        List<Object> encoders = new ArrayList<Object>();
+        for (Object gts: (List) params.get("gts")) {
+          GTSEncoder encoder = new GTSEncoder(0L);
+          encoder.setMetadata(((GeoTimeSerie) gts).getMetadata());
+          try {
+            for (long t = 0; t < 3; t++) {
+              encoder.addValue(t, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, t);
+            }
+          } catch (IOException ioe) {
+            throw new WarpScriptException(ioe);
+          }
+          encoders.add(encoder);
+        }
+        fetched.add(encoders.size());
+        stack.push(encoders);
+        return stack;
+      }
+    });
+
+    try {
+      MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+      stack.maxLimits();
+
+      String script = "{ 'params' { 'token' 'rt' 'class' '~.*' 'labels' {} 'end' 10 'timespan' 10 } 'seriesPerFetch' 2 } " + ArrowExtension.ARROWFETCH + "\n" +
+        "{ 'bytes' SWAP 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+      stack.execMulti(script);
+
+      // one FETCH per chunk of 2 series, each written in the stream before the next one is fetched
+      Assert.equals(Arrays.asList(2, 2, 1), fetched);
+
+      Map<String, List> columns = (Map<String, List>) ((List) stack.pop()).get(1);
+      Assert.equals(15, columns.get(TimestampWarpField.TIMESTAMPS_KEY).size());
+      Assert.equals("s4", columns.get(ClassnameWarpField.CLASSNAME_KEY).get(14));
+      Assert.equals("v4", columns.get("k").get(14));
+      Assert.equals(2L, columns.get(ValueWarpField.LONG_VALUES_KEY).get(14));
+    } finally {
+      WarpScriptLib.addNamedWarpScriptFunction((NamedWarpScriptFunction) find);
+      WarpScriptLib.addNamedWarpScriptFunction((NamedWarpScriptFunction) fetch);
+    }
+  }
+
+  private static abstract class StubFunction extends NamedWarpScriptFunction implements WarpScriptStackFunction {
+    StubFunction(String name) {
+      super(name);
+    }
+  }
+
+  @Test
+  public void dictionariesExtendedWhileStreaming() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // the first series fills a whole batch, the values of the second one are added to the dictionaries afterwards
+    String script = "NEWGTS 'a' RENAME { 'k' 'v' } RELABEL 0 65535 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR 'a' STORE\n" +
+      "NEWGTS 'b' RENAME { 'k' 'w' } RELABEL 70000 NaN NaN NaN 7 ADDVALUE 'b' STORE\n" +
+      "[ $a $b ] ->ARROW 'in' STORE\n" +
+      "{ 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + "\n" +
+      "[ $in $in ] " + ArrowExtension.ARROWCONCAT + " 65535 3 " + ArrowExtension.ARROWSLICE + "\n" +
+      "'cat' STORE { 'bytes' $cat 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+    Map<String, List> in = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(65537, in.get(ClassnameWarpField.CLASSNAME_KEY).size());
+    // rows share the decoded values of the dictionary
+    Assert.isTrue(in.get(ClassnameWarpField.CLASSNAME_KEY).get(0) == in.get(ClassnameWarpField.CLASSNAME_KEY).get(65535));
+    Assert.equals("b", in.get(ClassnameWarpField.CLASSNAME_KEY).get(65536));
+    Assert.equals("w", in.get("k").get(65536));
+    Assert.equals(7L, in.get(ValueWarpField.LONG_VALUES_KEY).get(65536));
+
+    Assert.equals(3, cols.get(ClassnameWarpField.CLASSNAME_KEY).size());
+    Assert.equals("a", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(0));
+    Assert.equals("b", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(1));
+    Assert.equals("w", cols.get("k").get(1));
+    Assert.equals("a", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(2));
+    Assert.equals("v", cols.get("k").get(2));
+  }
+
+  @Test
+  public void adaptiveDictionaryIndexWidth() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // 300 distinct values of label 'id' for 300 rows are not dictionary encoded, the single classname is
+    String script = "[] 0 299 <% 'i' STORE NEWGTS 'c' RENAME { 'id' $i TOSTRING } RELABEL $i NaN NaN NaN $i ADDVALUE +! %> FOR\n" +
+      "->ARROW 'high' STORE\n" +
+      "[ NEWGTS 'c' RENAME { 'id' 'x' } RELABEL 1000 NaN NaN NaN 42 ADDVALUE ] ->ARROW 'low' STORE\n" +
+      "[ $high $low ] " + ArrowExtension.ARROWCONCAT + " 'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(301, cols.get("id").size());
+    Assert.equals("0", cols.get("id").get(0));
+    Assert.equals("299", cols.get("id").get(299));
+    Assert.equals("x", cols.get("id").get(300));
+    Assert.equals("c", cols.get(ClassnameWarpField.CLASSNAME_KEY).get(300));
+    Assert.equals(42L, cols.get(ValueWarpField.LONG_VALUES_KEY).get(300));
+  }
+
+  @Test
+  public void layoutCacheAcrossCalls() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'cached' RENAME { 'k' 'v' } RELABEL 10 NaN NaN NaN 1 ADDVALUE 'a' STORE\n" +
+      "NEWGTS 'cached' RENAME { 'k' 'w' } RELABEL 20 NaN NaN NaN 2 ADDVALUE 'b' STORE\n" +
+      "[ $a $b ] ->ARROW 'first' STORE\n" +
+      "[ $b $a ] ->ARROW 'second' STORE\n" +
+      "{ 'bytes' $first 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + "\n" +
+      "{ 'bytes' $second 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO;
+    stack.execMulti(script);
+
+    Map<String, List> second = (Map<String, List>) ((List) stack.pop()).get(1);
+    Map<String, List> first = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    // the second call reuses the layout and dictionaries of the first one, the order of the list does not matter
+    Assert.isTrue(WarpSchema.getLayoutCache().size() > 0);
+    Assert.equals("v", first.get("k").get(0));
+    Assert.equals("w", second.get("k").get(0));
+    Assert.equals("v", second.get("k").get(1));
+    Assert.equals(2L, second.get(ValueWarpField.LONG_VALUES_KEY).get(0));
+  }
+
+  private static GeoTimeSerie layoutKeyGts(String name, String[] labels, Object value) {
+    GeoTimeSerie gts = new GeoTimeSerie();
+    gts.setName(name);
+
+    Map<String, String> labelMap = new LinkedHashMap<String, String>();
+    for (int i = 0; i < labels.length; i += 2) {
+      labelMap.put(labels[i], labels[i + 1]);
+    }
+    gts.setLabels(labelMap);
+
+    GTSHelper.setValue(gts, 0L, value);
+    return gts;
+  }
+
+  @Test
+  public void layoutKeyIndependentOfOrder() throws Exception {
+
+    GeoTimeSerie a = layoutKeyGts("a", new String[] {"x", "1", "y", "2"}, 1L);
+    GeoTimeSerie b = layoutKeyGts("b", new String[] {"x", "3"}, 2L);
+    GTSEncoder c = new GTSEncoder(0L);
+    c.setMetadata(layoutKeyGts("c", new String[] {"z", "4"}, 3L).getMetadata());
+    c.addValue(0L, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, 3L);
+
+    String key = WarpSchema.layoutKey(Arrays.<Object>asList(a, b, c));
+
+    // neither the order of the list nor the order of the labels change the key, which has a fixed size
+    Assert.equals(key, WarpSchema.layoutKey(Arrays.<Object>asList(c, a, b)));
+    Assert.equals(key, WarpSchema.layoutKey(Arrays.<Object>asList(layoutKeyGts("a", new String[] {"y", "2", "x", "1"}, 5L), b, c)));
+    Assert.equals(64, key.length());
+
+    // a label value or a value type gives another key
+    Assert.isTrue(!key.equals(WarpSchema.layoutKey(Arrays.<Object>asList(layoutKeyGts("a", new String[] {"x", "1", "y", "3"}, 1L), b, c))));
+    Assert.isTrue(!key.equals(WarpSchema.layoutKey(Arrays.<Object>asList(layoutKeyGts("a", new String[] {"x", "1", "y", "2"}, 1.0D), b, c))));
+  }
+
+  @Test
+  public void decodedResultCache() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'ref' RENAME 0 9 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR ->ARROW 'data' STORE\n" +
+      ArrowExtension.ARROWCACHESTATS + " 'decoded' GET 'hits' GET 'hits' STORE\n" +
+      "{ 'bytes' $data 'cache' true } " + ArrowExtension.ARROWTO + " 'new' RENAME DROP\n" +
+      "{ 'bytes' $data 'cache' true } " + ArrowExtension.ARROWTO + "\n" +
+      ArrowExtension.ARROWCACHESTATS + " 'decoded' GET 'hits' GET $hits -";
+    stack.execMulti(script);
+
+    // the cached result is not modified by the script
+    Assert.equals(1L, stack.pop());
+    GeoTimeSerie gts = (GeoTimeSerie) stack.pop();
+    Assert.equals("ref", gts.getName());
+    Assert.equals(10, gts.size());
+
+    // the vectors of a VECTOR column are copied too
+    script = "[ {} { 'emb' [ [ 1.0 2.0 ] ->VEC ] } ] ->ARROW 'vec' STORE\n" +
+      "{ 'bytes' $vec 'WarpScriptConversionMode' 'PAIR' 'cache' true } " + ArrowExtension.ARROWTO + " 1 GET 'emb' GET 0 GET\n" +
+      "{ 'bytes' $vec 'WarpScriptConversionMode' 'PAIR' 'cache' true } " + ArrowExtension.ARROWTO + " 1 GET 'emb' GET 0 GET";
+    stack.execMulti(script);
+
+    // the second result comes from the cache
+    RealVector hit = (RealVector) stack.pop();
+    stack.drop();
+    hit.setEntry(0, 42.0D);
+
+    stack.execMulti("{ 'bytes' $vec 'WarpScriptConversionMode' 'PAIR' 'cache' true } " + ArrowExtension.ARROWTO + " 1 GET 'emb' GET 0 GET");
+    Assert.equals(1.0D, ((RealVector) stack.pop()).getEntry(0));
+  }
+
+  @Test
+  public void forEachBatch() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // 65537 rows are written in two record batches
+    String script = "NEWGTS 'a' RENAME 0 65536 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR 'a' STORE\n" +
+      "[ $a ] ->ARROW <% 1 GET '" + TimestampWarpField.TIMESTAMPS_KEY + "' GET SIZE %> " + ArrowExtension.ARROWFOREACH + "\n" +
+      "$a ->ARROW <% SIZE %> " + ArrowExtension.ARROWFOREACH;
+    stack.execMulti(script);
+
+    long points = 0L;
+    while (stack.depth() > 2) {
+      points += ((Number) stack.pop()).longValue();
+    }
+    Assert.equals(65537L, points);
+
+    long rows = ((Number) stack.pop()).longValue() + ((Number) stack.pop()).longValue();
+    Assert.equals(65537L, rows);
+  }
+
+  @Test
+  public void flightDoGet() throws Exception {
+
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         FlightServer server = FlightServer.builder(allocator, Location.forGrpcInsecure("localhost", 0), new WarpScriptFlightProducer(allocator, null, null, WarpConfig.getProperties())).build().start();
+         FlightClient client = FlightClient.builder(allocator, Location.forGrpcInsecure("localhost", server.getPort())).build()) {
+
+      String script = "NEWGTS 'a' RENAME { 'k' 'v' } RELABEL 0 99 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR 1 ->LIST";
+
+      long rows = 0L;
+      try (FlightStream stream = client.getStream(new Ticket(script.getBytes(StandardCharsets.UTF_8)))) {
+        while (stream.next()) {
+          rows += stream.getRoot().getRowCount();
+        }
+      }
+
+      Assert.equals(100L, rows);
+    }
+  }
+
+  @Test
+  public void flightDoPut() throws Exception {
+
+    GeoTimeSerie gts = new GeoTimeSerie();
+    gts.setName("put");
+    for (int i = 0; i < 25; i++) {
+      GTSHelper.setValue(gts, i, (long) i);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowWriters.gtsToArrowStream(gts, 10, out);
+
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         FlightServer server = FlightServer.builder(allocator, Location.forGrpcInsecure("localhost", 0), new WarpScriptFlightProducer(allocator, null, null, WarpConfig.getProperties())).build().start();
+         FlightClient client = FlightClient.builder(allocator, Location.forGrpcInsecure("localhost", server.getPort())).build();
+         ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+
+      // the script receives the decoded GTS, the STRING it leaves on the stack is sent back
+      String script = "DUP NAME SWAP SIZE TOSTRING +";
+
+      SyncPutListener putListener = new SyncPutListener();
+      FlightClient.ClientStreamListener listener = client.startPut(FlightDescriptor.command(script.getBytes(StandardCharsets.UTF_8)), reader.getVectorSchemaRoot(), putListener);
+
+      while (reader.loadNextBatch()) {
+        listener.putNext();
+      }
+      listener.completed();
+
+      try (PutResult result = putListener.read()) {
+        ArrowBuf metadata = result.getApplicationMetadata();
+        byte[] bytes = new byte[(int) metadata.readableBytes()];
+        metadata.getBytes(metadata.readerIndex(), bytes);
+        Assert.equals("put25", new String(bytes, StandardCharsets.UTF_8));
+      }
+
+      listener.getResult();
+    }
+  }
+
+  @Test
+  public void parquetRoundTrip() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "NEWGTS 'p' RENAME { 'k' 'v' } RELABEL 0 9 <% 'i' STORE $i 48.0 -4.5 $i $i 0.5 + ADDVALUE %> FOR\n" +
+      ArrowExtension.TOPARQUET + " " + ArrowExtension.PARQUETTO;
+    stack.execMulti(script);
+
+    // the GTS conversion mode and the metadata of the Arrow stream are kept in the Parquet file
+    GeoTimeSerie gts = (GeoTimeSerie) stack.pop();
+    Assert.equals("p", gts.getName());
+    Assert.equals("v", gts.getLabels().get("k"));
+    Assert.equals(10, gts.size());
+    Assert.equals(9L, GTSHelper.tickAtIndex(gts, 9));
+    Assert.equals(9.5D, GTSHelper.valueAtIndex(gts, 9));
+    Assert.equals(9L, GTSHelper.elevationAtIndex(gts, 9));
+
+    // columns of nested values can not be written
+    boolean failed = false;
+    try {
+      stack.execMulti("[ {} { 'l' [ [ 1 2 ] ] } ] " + ArrowExtension.TOPARQUET);
+    } catch (WarpScriptException wse) {
+      failed = true;
+    }
+    Assert.isTrue(failed);
+  }
+
+  @Test
+  public void parquetProjectionAndTimeRange() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // small row groups, so that most of them are skipped by their timestamp statistics
+    String script = "[] 'ts' STORE [] 'v' STORE [] 's' STORE\n" +
+      "0 999 <% 'i' STORE $ts $i +! DROP $v $i 2.0 * +! DROP $s 'x' $i TOSTRING + +! DROP %> FOR\n" +
+      "{ 'in' [ {} { '" + TimestampWarpField.TIMESTAMPS_KEY + "' $ts 'v' $v 's' $s } ] 'rowGroupSize' 1024 'compression' 'UNCOMPRESSED' } " + ArrowExtension.TOPARQUET + " 'parquet' STORE\n" +
+      "{ 'in' $parquet 'columns' [ 's' 'v' ] 'start' 250 'end' 259 } " + ArrowExtension.PARQUETTO + "\n" +
+      "{ 'in' $parquet 'arrow' true } " + ArrowExtension.PARQUETTO + " ARROW->";
+    stack.execMulti(script);
+
+    Map<String, List> all = (Map<String, List>) ((List) stack.pop()).get(1);
+    Assert.equals(3, all.size());
+    Assert.equals(1000, all.get(TimestampWarpField.TIMESTAMPS_KEY).size());
+    Assert.equals("x999", all.get("s").get(999));
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+    Assert.equals(2, cols.size());
+    Assert.equals(10, cols.get("v").size());
+    Assert.equals("x250", cols.get("s").get(0));
+    Assert.equals(518.0D, cols.get("v").get(9));
+  }
+
+  private static void writeGtsFile(File file, String name, long firstTick, int count) throws Exception {
+    GeoTimeSerie gts = new GeoTimeSerie();
+    gts.setName(name);
+    for (int i = 0; i < count; i++) {
+      GTSHelper.setValue(gts, firstTick + i, (long) i);
+    }
+
+    file.getParentFile().mkdirs();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      ArrowWriters.gtsToArrowStream(gts, out);
+    }
+  }
+
+  @Test
+  public void datasetPruning() throws Exception {
+
+    File root = Files.createTempDirectory("dataset").toFile();
+    long day = 86400L * Constants.TIME_UNITS_PER_S;
+    long day2 = 1577923200L * Constants.TIME_UNITS_PER_S; // 2020-01-02
+    long hour = 3600L * Constants.TIME_UNITS_PER_S;
+
+    writeGtsFile(new File(root, "day=2020-01-01/classname=a/0.arrow"), "a", day2 - day, 10);
+    writeGtsFile(new File(root, "day=2020-01-02/classname=a/0.arrow"), "a", day2, 10);
+    writeGtsFile(new File(root, "day=2020-01-02/classname=a/1.arrow"), "a", day2 + 2 * hour, 10);
+    writeGtsFile(new File(root, "day=2020-01-02/classname=b/0.arrow"), "b", day2, 10);
+
+    Set<String> classnames = new HashSet<String>();
+    classnames.add("a");
+
+    // partitions of the other day and classname are pruned, then the second file by its timestamp bounds
+    List<File> files = new ArrowDataset(root).listFiles(day2, day2 + hour, classnames);
+    Assert.equals(2, files.size());
+
+    List<Object> res = ArrowDataset.read(files, new ArrayList<String>(), day2 + 5, day2 + hour, "", ArrowExtension.getDatasetReaders());
+    Assert.equals(1, res.size());
+    Assert.equals("a", ((GeoTimeSerie) res.get(0)).getName());
+    Assert.equals(5, ((GeoTimeSerie) res.get(0)).size());
+  }
+
+  @Test
+  public void datasetEncodersAndParquetFiles() throws Exception {
+
+    File root = Files.createTempDirectory("dataset").toFile();
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // a file in ENCODERS mode, without timestamp bounds, and a Parquet file in small row groups
+    String script = "[ NEWGTS 'e' RENAME 0 9 <% 'i' STORE $i NaN NaN NaN $i ADDVALUE %> FOR ] " + ArrowExtension.TOARROW + "\n" +
+      "[] 'ts' STORE 0 999 <% 'i' STORE $ts $i +! DROP %> FOR\n" +
+      "{ 'in' [ {} { '" + TimestampWarpField.TIMESTAMPS_KEY + "' $ts } ] 'rowGroupSize' 1024 'compression' 'UNCOMPRESSED' } " + ArrowExtension.TOPARQUET;
+    stack.execMulti(script);
+
+    Files.write(new File(root, "1.parquet").toPath(), (byte[]) stack.pop());
+    Files.write(new File(root, "0.arrow").toPath(), (byte[]) stack.pop());
+
+    List<File> files = new ArrowDataset(root).listFiles(250, 259, new HashSet<String>());
+    Assert.equals(2, files.size());
+
+    // files in ENCODERS mode can not be decoded in their own mode
+    boolean failed = false;
+    try {
+      ArrowDataset.read(files, new ArrayList<String>(), 250, 259, "", ArrowExtension.getDatasetReaders());
+    } catch (WarpScriptException wse) {
+      failed = true;
+      Assert.isTrue(wse.getMessage().contains(Register.ENCODERS));
+    }
+    Assert.isTrue(failed);
+
+    List<Object> res = ArrowDataset.read(files, new ArrayList<String>(), 0, 259, Register.PAIR, ArrowExtension.getDatasetReaders());
+    Assert.equals(2, res.size());
+    Assert.equals(10, ((Map<String, List>) ((List) res.get(0)).get(1)).get(TimestampWarpField.TIMESTAMPS_KEY).size());
+    Assert.equals(260, ((Map<String, List>) ((List) res.get(1)).get(1)).get(TimestampWarpField.TIMESTAMPS_KEY).size());
+
+    // all the row groups of the Parquet file are skipped
+    res = ArrowDataset.read(files.subList(1, 2), new ArrayList<String>(), 2000, 3000, "", ArrowExtension.getDatasetReaders());
+    Assert.equals(0, res.size());
+  }
+
+  @Test
+  public void pairWithNulls() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // the type of a column is the one of its first non-null value, a column of nulls is not encoded
+    String script = "[ {} { 'l' [ NULL 1 NULL 3 ] 's' [ 'x' NULL 'zz' NULL ] 'n' [ NULL NULL NULL NULL ] } ] ->ARROW\n" +
+      "'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + " 1 GET";
+    stack.execMulti(script);
+
+    Map<String, List> columns = (Map<String, List>) stack.pop();
+    Assert.equals(2, columns.size());
+    Assert.equals(Arrays.asList(null, 1L, null, 3L), columns.get("l"));
+    Assert.equals(Arrays.asList("x", null, "zz", null), columns.get("s"));
+  }
+
+  @Test
+  public void pairNestedColumns() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    String script = "[ {} {\n" +
+      "  'emb' [ [ 1.0 2.0 ] ->VEC NULL [ 3.0 4.0 ] ->VEC ]\n" +
+      "  'tags' [ [ 'a' 'b' ] NULL [] ]\n" +
+      "  'm' [ { 'x' 1 } { 'y' 'z' } NULL ]\n" +
+      "} ] ->ARROW\n" +
+      "'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + " 1 GET";
+    stack.execMulti(script);
+
+    Map<String, List> columns = (Map<String, List>) stack.pop();
+
+    List emb = columns.get("emb");
+    Assert.isTrue(emb.get(0) instanceof RealVector);
+    Assert.equals(2.0D, ((RealVector) emb.get(0)).getEntry(1));
+    Assert.equals(null, emb.get(1));
+    Assert.equals(3.0D, ((RealVector) emb.get(2)).getEntry(0));
+
+    Assert.equals(Arrays.asList(Arrays.asList("a", "b"), null, new ArrayList<Object>()), columns.get("tags"));
+
+    List m = columns.get("m");
+    Assert.equals(1L, ((Map) m.get(0)).get("x"));
+    Assert.equals(false, ((Map) m.get(0)).containsKey("y"));
+    Assert.equals("z", ((Map) m.get(1)).get("y"));
+    Assert.equals(null, m.get(2));
+  }
+
+  @Test
+  public void decimalAndFixedSizeBinary() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // BigDecimal values of an encoder are stored in a Decimal column if a scale is given, and decoded back exactly
+    GTSEncoder encoder = new GTSEncoder(0L);
+    encoder.addValue(1L, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, new BigDecimal("12345.678"));
+    encoder.addValue(2L, GeoTimeSerie.NO_LOCATION, GeoTimeSerie.NO_ELEVATION, 0.5D);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowWriters.gtsEncodertoArrowStream(encoder, 10, 3, out);
+
+    stack.push(out.toByteArray());
+    stack.exec("'in' STORE { 'bytes' $in }");
+    new ARROWTO("from").apply(stack);
+
+    GTSDecoder decoder = ((GTSEncoder) stack.pop()).getDecoder(true);
+    Assert.isTrue(decoder.next());
+    Assert.equals(0, new BigDecimal("12345.678").compareTo((BigDecimal) decoder.getBinaryValue()));
+    Assert.isTrue(decoder.next());
+    Assert.equals(0.5D, decoder.getBinaryValue());
+
+    // without a scale, the schema has no Decimal column and BigDecimal values are stored as doubles
+    out = new ByteArrayOutputStream();
+    ArrowWriters.gtsEncodertoArrowStream(encoder, 10, out);
+    for (Field field: readSchema(out.toByteArray()).getFields()) {
+      Assert.isTrue(!ArrowHelper.DECIMAL_VALUES_KEY.equals(field.getName()));
+    }
+
+    // BYTES values of the same length are written in a Binary column, or in a FixedSizeBinary column if requested
+    String script = "[ {} { 'id' [ '00112233445566778899aabbccddeeff' HEX-> NULL 'ffeeddccbbaa99887766554433221100' HEX-> ] } ] 'pair' STORE\n" +
+      "$pair " + ArrowExtension.TOARROW + "\n" +
+      "{ 'in' $pair 'fixedSizeBinary' true } " + ArrowExtension.TOARROW;
+    stack.execMulti(script);
+
+    byte[] fixed = (byte[]) stack.pop();
+    byte[] binary = (byte[]) stack.pop();
+    Assert.equals(new ArrowType.Binary(), readSchema(binary).getFields().get(0).getType());
+    Assert.equals(new ArrowType.FixedSizeBinary(16), readSchema(fixed).getFields().get(0).getType());
+
+    stack.push(fixed);
+    stack.execMulti("'in' STORE { 'bytes' $in 'WarpScriptConversionMode' 'PAIR' } " + ArrowExtension.ARROWTO + " 1 GET 'id' GET");
+
+    List ids = (List) stack.pop();
+    Assert.equals(3, ids.size());
+    Assert.equals(Base64.getEncoder().encodeToString(new byte[] {0x00, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff}), ids.get(0));
+    Assert.equals(null, ids.get(1));
+  }
+
+  private static Schema readSchema(byte[] bytes) throws IOException {
+    try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes), new RootAllocator(Integer.MAX_VALUE))) {
+      return reader.getVectorSchemaRoot().getSchema();
+    }
+  }
+
+  @Test
+  public void decimalAroundLongBounds() throws Exception {
+
+    // unscaled values on both sides of the bounds of a long, read either from the low 64 bits or from all 128 bits
+    BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+    BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+    List<BigInteger> unscaled = new ArrayList<BigInteger>();
+    for (long delta = -2; delta <= 2; delta++) {
+      unscaled.add(max.add(BigInteger.valueOf(delta)));
+      unscaled.add(min.add(BigInteger.valueOf(delta)));
+      unscaled.add(BigInteger.valueOf(delta));
+    }
+    unscaled.add(BigInteger.ONE.shiftLeft(64));
+    unscaled.add(BigInteger.ONE.shiftLeft(64).negate());
+
+    for (int scale: new int[] {2, 18}) {
+      try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+           DecimalVector vector = new DecimalVector("d", allocator, ArrowHelper.DECIMAL_PRECISION, scale)) {
+
+        vector.allocateNew(unscaled.size());
+        for (int i = 0; i < unscaled.size(); i++) {
+          vector.set(i, new BigDecimal(unscaled.get(i), scale));
+        }
+        vector.setValueCount(unscaled.size());
+
+        for (int i = 0; i < unscaled.size(); i++) {
+          Assert.equals(vector.getObject(i), ArrowHelper.getDecimal(vector.getDataBuffer(), i, scale));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void pairNarrowAndUnsignedColumns() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    List<Field> fields = new ArrayList<>();
+    fields.add(Field.nullable("i8", new ArrowType.Int(8, true)));
+    fields.add(Field.nullable("u8", new ArrowType.Int(8, false)));
+    fields.add(Field.nullable("u32", new ArrowType.Int(32, false)));
+    fields.add(Field.nullable("u64", new ArrowType.Int(64, false)));
+    fields.add(Field.nullable("f32", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE)));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      ((TinyIntVector) root.getVector("i8")).setSafe(0, -1);
+      ((UInt1Vector) root.getVector("u8")).setSafe(0, 0xFF);
+      ((UInt4Vector) root.getVector("u32")).setSafe(0, 0xFFFFFFFF);
+      ((UInt8Vector) root.getVector("u64")).setSafe(0, Long.MAX_VALUE);
+      ((Float4Vector) root.getVector("f32")).setSafe(0, 0.5F);
+
+      ((TinyIntVector) root.getVector("i8")).setNull(1);
+      ((UInt1Vector) root.getVector("u8")).setSafe(1, 1);
+      ((UInt4Vector) root.getVector("u32")).setNull(1);
+      ((UInt8Vector) root.getVector("u64")).setSafe(1, 2L);
+      ((Float4Vector) root.getVector("f32")).setNull(1);
+
+      root.setRowCount(2);
+
+      writer.start();
+      writer.writeBatch();
+      writer.end();
+    }
+
+    stack.push(out.toByteArray());
+    stack.exec(ArrowExtension.ARROWTO);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(Arrays.asList(-1L, null), cols.get("i8"));
+    Assert.equals(Arrays.asList(255L, 1L), cols.get("u8"));
+    Assert.equals(Arrays.asList(4294967295L, null), cols.get("u32"));
+    Assert.equals(Arrays.asList(Long.MAX_VALUE, 2L), cols.get("u64"));
+    Assert.equals(Arrays.asList(0.5D, null), cols.get("f32"));
+  }
+
+  @Test
+  public void pairNestedUnsignedColumns() throws Exception {
+
+    MemoryWarpScriptStack stack = new MemoryWarpScriptStack(null, null);
+    stack.maxLimits();
+
+    // unsigned values with their high bit set, in a List and in a Struct column
+    stack.push(nestedUnsignedStream(Long.MAX_VALUE));
+    stack.exec(ArrowExtension.ARROWTO);
+
+    Map<String, List> cols = (Map<String, List>) ((List) stack.pop()).get(1);
+
+    Assert.equals(Arrays.asList(255L, 128L), cols.get("l").get(0));
+
+    Map<String, Object> struct = (Map<String, Object>) cols.get("s").get(0);
+    Assert.equals(65535L, struct.get("u16"));
+    Assert.equals(4294967295L, struct.get("u32"));
+    Assert.equals(Long.MAX_VALUE, struct.get("u64"));
+
+    // an unsigned 64-bit value above the range of LONG is an error
+    boolean failed = false;
+    try {
+      stack.push(nestedUnsignedStream(-1L));
+      stack.exec(ArrowExtension.ARROWTO);
+    } catch (WarpScriptException wse) {
+      failed = true;
+    }
+    Assert.isTrue(failed);
+  }
+
+  private static byte[] nestedUnsignedStream(long u64) throws IOException {
+    List<Field> children = new ArrayList<>();
+    children.add(Field.nullable("u16", new ArrowType.Int(16, false)));
+    children.add(Field.nullable("u32", new ArrowType.Int(32, false)));
+    children.add(Field.nullable("u64", new ArrowType.Int(64, false)));
+
+    List<Field> fields = new ArrayList<>();
+    fields.add(new Field("l", FieldType.nullable(ArrowType.List.INSTANCE), Collections.singletonList(Field.nullable(BaseRepeatedValueVector.DATA_VECTOR_NAME, new ArrowType.Int(8, false)))));
+    fields.add(new Field("s", FieldType.nullable(ArrowType.Struct.INSTANCE), children));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RootAllocator allocator = new RootAllocator(Integer.MAX_VALUE);
+         VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+         ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+
+      root.allocateNew();
+
+      ListVector list = (ListVector) root.getVector("l");
+      list.startNewValue(0);
+      ((UInt1Vector) list.getDataVector()).setSafe(0, 0xFF);
+      ((UInt1Vector) list.getDataVector()).setSafe(1, 0x80);
+      list.endValue(0, 2);
+
+      StructVector struct = (StructVector) root.getVector("s");
+      ((UInt2Vector) struct.getChild("u16")).setSafe(0, 0xFFFF);
+      ((UInt4Vector) struct.getChild("u32")).setSafe(0, 0xFFFFFFFF);
+      ((UInt8Vector) struct.getChild("u64")).setSafe(0, u64);
+      struct.setIndexDefined(0);
+
+      root.setRowCount(1);
+
+      writer.start();
+      writer.writeBatch();
+      writer.end();
+    }
+
+    return out.toByteArray();
+  }
 }